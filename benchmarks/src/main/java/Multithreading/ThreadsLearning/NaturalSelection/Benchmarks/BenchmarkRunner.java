@@ -0,0 +1,25 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ *  The main class of "benchmarks.jar". It accepts the usual JMH arguments,
+ *  for ex. {@code java -jar benchmarks.jar MapBenchmark -p side=256 -t 4},
+ *  and always adds the GC profiler, so each result is reported together with
+ *  the allocation rate ({@code gc.alloc.rate.norm} is bytes per operation).
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,102 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Benchmarks;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Kernels.BulkKernels;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.StatisticsCollector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Benchmarks of the scalar and the SIMD {@code BulkKernels} over the columns
+ *  of a population and over a food layer. The SIMD kernels are compared only if
+ *  the forked JVM has the Vector API, otherwise both params measure the scalar ones.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class KernelBenchmark {
+
+    @Param({"1000"})
+    public int side;
+
+    @Param({"1000000"})
+    public int creatures;
+
+    @Param({"false", "true"})
+    public boolean vectorized;
+
+    private BulkKernels kernels;
+    private int[] rows;
+    private int[] columns;
+    private int[] ids;
+    private int[] eaten;
+    private boolean[] alive;
+    private boolean[] aliveCopy;
+    private long[] food;
+
+    @Setup(Level.Trial)
+    public void createColumns() {
+        BulkKernels.setVectorized(vectorized);
+        kernels = BulkKernels.current();
+
+        var random = new SplittableRandom(42);
+        rows = new int[creatures];
+        columns = new int[creatures];
+        ids = new int[creatures];
+        eaten = new int[creatures];
+        alive = new boolean[creatures];
+        aliveCopy = new boolean[creatures];
+        for (int i = 0; i < creatures; i++) {
+            rows[i] = random.nextInt(side);
+            columns[i] = random.nextInt(side);
+            ids[i] = i + 1;
+            eaten[i] = random.nextInt(4);
+            alive[i] = true;
+        }
+        // a food layer of a map with 10% of food;
+        food = new long[(side * side + 63) / 64];
+        for (int i = 0; i < side * side / 10; i++) {
+            int unit = random.nextInt(side * side);
+            food[unit >>> 6] |= 1L << unit;
+        }
+    }
+
+    @Benchmark
+    public int move() {
+        kernels.move(rows, columns, ids, 0, creatures, side - 1, side - 1, 42);
+        return rows[0];
+    }
+
+    @Benchmark
+    public int markDead() {
+        System.arraycopy(alive, 0, aliveCopy, 0, creatures);
+        return kernels.markDead(aliveCopy, eaten, 0, creatures);
+    }
+
+    @Benchmark
+    public int countParents() {
+        return kernels.countAtLeast(alive, eaten, 2, 0, creatures);
+    }
+
+    @Benchmark
+    public long sumEaten() {
+        return kernels.sum(eaten, 0, creatures);
+    }
+
+    @Benchmark
+    public int[] countRegions() {
+        int[] counts = new int[StatisticsCollector.REGIONS];
+        kernels.countRegions(rows, columns, 0, creatures, side, side,
+                StatisticsCollector.REGION_GRID, counts);
+        return counts;
+    }
+
+    @Benchmark
+    public long countFood() {
+        return kernels.countBits(food, 0, food.length);
+    }
+}
@@ -0,0 +1,87 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Benchmarks;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Map.Map;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Benchmarks of the food layer of a {@code Map}: eating through a {@code MapUnit}
+ *  and directly, reading, and the round turnover (clearing and filling).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapBenchmark {
+    // a number of precomputed coordinates; a power of two;
+    private static final int COORDINATES = 1 << 16;
+
+    @Param({"256", "4096"})
+    public int side;
+
+    private Map map;
+
+    @Setup(Level.Trial)
+    public void createMap() {
+        map = new Map(side, side, 42);
+    }
+
+    @Setup(Level.Iteration)
+    public void renewFood() {
+        map.clearMapFood();
+        map.fillMapWithFood();
+    }
+
+    /**
+     *  Random coordinates of each benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Coordinates {
+        private final int[] rows = new int[COORDINATES];
+        private final int[] columns = new int[COORDINATES];
+        private int next;
+
+        @Setup(Level.Trial)
+        public void generate(MapBenchmark benchmark) {
+            var random = new SplittableRandom(Thread.currentThread().threadId());
+            for (int i = 0; i < COORDINATES; i++) {
+                rows[i] = random.nextInt(benchmark.side);
+                columns[i] = random.nextInt(benchmark.side);
+            }
+        }
+
+        int nextIndex() {
+            return next = (next + 1) & (COORDINATES - 1);
+        }
+    }
+
+    @Benchmark
+    public boolean eatFood(Coordinates coordinates) {
+        int i = coordinates.nextIndex();
+        return map.eatFood(coordinates.rows[i], coordinates.columns[i]);
+    }
+
+    @Benchmark
+    public boolean mapUnitEatFood(Coordinates coordinates) {
+        int i = coordinates.nextIndex();
+        return map.getMapUnitWithCoordinates(coordinates.rows[i], coordinates.columns[i]).eatFood();
+    }
+
+    @Benchmark
+    public boolean hasFood(Coordinates coordinates) {
+        int i = coordinates.nextIndex();
+        return map.hasFood(coordinates.rows[i], coordinates.columns[i]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Map clearAndFillMapWithFood() {
+        map.clearMapFood();
+        map.fillMapWithFood();
+        return map;
+    }
+}
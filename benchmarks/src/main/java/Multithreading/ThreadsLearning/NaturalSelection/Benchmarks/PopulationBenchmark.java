@@ -0,0 +1,67 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Benchmarks;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Executors.PopulationSimulationExecutor;
+import Multithreading.ThreadsLearning.NaturalSelection.Executors.TickSimulationExecutor;
+import Multithreading.ThreadsLearning.NaturalSelection.Executors.TiledSimulationExecutor;
+import Multithreading.ThreadsLearning.NaturalSelection.Inhabitants.QuadrantPopulation;
+import Multithreading.ThreadsLearning.NaturalSelection.Map.Map;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.StatisticsCollector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Benchmarks of one round of the engines which run a {@code QuadrantPopulation}.
+ *  A new population is created before each round, so every invocation
+ *  steps the same creatures on the same food.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PopulationBenchmark {
+
+    @Param({"1000"})
+    public int side;
+
+    @Param({"10000", "100000"})
+    public int creatures;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private QuadrantPopulation population;
+    private StatisticsCollector statisticsCollector;
+    private PopulationSimulationExecutor populationExecutor;
+    private TiledSimulationExecutor tiledExecutor;
+
+    @Setup(Level.Trial)
+    public void createExecutors() {
+        populationExecutor = new PopulationSimulationExecutor(threads);
+        tiledExecutor = new TiledSimulationExecutor(threads,
+                TickSimulationExecutor.DEFAULT_STEPS_PER_ROUND,
+                TiledSimulationExecutor.DEFAULT_TILE_SIZE);
+    }
+
+    @Setup(Level.Invocation)
+    public void createPopulation() {
+        Map map = new Map(side, side, 42);
+        population = new QuadrantPopulation(map, creatures, 42);
+        population.spawnOnPerimeter(creatures);
+        statisticsCollector = new StatisticsCollector();
+    }
+
+    @Benchmark
+    public int populationRound() throws InterruptedException {
+        populationExecutor.runRounds(population, statisticsCollector, 1);
+        return population.size();
+    }
+
+    @Benchmark
+    public int tiledRound() {
+        tiledExecutor.runRounds(population, statisticsCollector, 1);
+        return population.size();
+    }
+}
@@ -0,0 +1,56 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Benchmarks;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Inhabitants.Quadrant;
+import Multithreading.ThreadsLearning.NaturalSelection.Map.Map;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.StatisticsCollector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Benchmarks of the per-creature operations of a {@code Quadrant}.
+ *  Each benchmark thread has its own creature.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QuadrantBenchmark {
+
+    @Param({"25", "1000"})
+    public int side;
+
+    private Map map;
+    private Quadrant quadrant;
+
+    @Setup(Level.Trial)
+    public void createQuadrant() {
+        map = new Map(side, side, 42);
+        quadrant = new Quadrant(map, side / 2, side / 2, null, new StatisticsCollector());
+    }
+
+    @Setup(Level.Iteration)
+    public void renewFood() {
+        map.clearMapFood();
+        map.fillMapWithFood();
+    }
+
+    @Benchmark
+    public int move() {
+        quadrant.move();
+        return quadrant.getRow();
+    }
+
+    @Benchmark
+    public int performStep() {
+        quadrant.performStep();
+        return quadrant.numHasEatenCurrentRound();
+    }
+
+    @Benchmark
+    public int quadrantHashCode() {
+        return quadrant.hashCode();
+    }
+}
@@ -0,0 +1,263 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Benchmarks;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Executors.TiledSimulationExecutor;
+import Multithreading.ThreadsLearning.NaturalSelection.Inhabitants.QuadrantPopulation;
+import Multithreading.ThreadsLearning.NaturalSelection.Map.FoodStorage;
+import Multithreading.ThreadsLearning.NaturalSelection.Map.Map;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.StatisticsCollector;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ *  A macro-benchmark: runs end-to-end scenarios of the simulation headless and
+ *  reports the wall time per round, creature-steps per second, peak heap and
+ *  GC time of each of them to a CSV file.
+ *  <p>The scenarios use the setup of {@code MainSimulationCenter} (creatures are
+ *     spawned on the perimeter, a fixed seed), but the rounds are tick-based, so
+ *     they are performed as fast as the CPU allows.</p>
+ *  <p>A scenario is run in passes from the same seed. The passes are repeated as
+ *     a warm-up until they take {@code WARMUP_NANOS}, then the timed passes are
+ *     repeated until they take {@code MEASUREMENT_NANOS}, and the pass of the median
+ *     throughput is reported. A pass which is longer than the warm-up is timed at
+ *     once: the compilation is a small part of it.</p>
+ *  <p>If a baseline file is given, the throughput of each scenario is compared
+ *     with the baseline one, and the runner exits with status 1 if a scenario is
+ *     slower than the baseline by more than the tolerance. The rounds of the reference
+ *     scenario take less than a millisecond, and their throughput varies by 20% between
+ *     JVMs with the decisions of the JIT, so it is reported but not gated.</p>
+ *  <p>With "--off-heap" the food layers of the maps are outside of the heap,
+ *     so the peak heap is the heap of the population only.</p>
+ *  <p>Usage: {@code ScenarioRunner [--output scenarios.csv] [--baseline baseline.csv]
+ *     [--tolerance 0.10] [--off-heap] [scenario names...]}</p>
+ */
+public class ScenarioRunner {
+    private static final String HEADER = "scenario,rows,columns,initial_creatures,rounds," +
+            "final_creatures,wall_ms_per_round,creature_steps_per_second,peak_heap_mb,gc_ms";
+
+    private static final long SEED = 42;
+
+    // a part of the baseline throughput which a scenario can lose;
+    private static final double DEFAULT_TOLERANCE = 0.10;
+
+    // the scenarios whose throughput isn't compared with the baseline;
+    private static final Set<String> UNGATED_SCENARIOS = Set.of("reference");
+
+    // a total time of the warm-up passes and of the timed passes of a scenario;
+    private static final long WARMUP_NANOS = 2_000_000_000L;
+    private static final long MEASUREMENT_NANOS = 3_000_000_000L;
+
+    /**
+     *  A scenario of the simulation.
+     *  @param chunked true if the map is created by {@code Map.chunked};
+     */
+    public record Scenario(String name, int rows, int columns, int creatures, int rounds,
+                           boolean chunked)
+    {
+        public Scenario(String name, int rows, int columns, int creatures, int rounds) {
+            this(name, rows, columns, creatures, rounds, false);
+        }
+    }
+
+    /**
+     *  The README's reference case comes first; its population
+     *  should settle at an equilibrium. The habitat is a nominal
+     *  1M x 1M map where only the perimeter is occupied.
+     */
+    public static final List<Scenario> SCENARIOS = List.of(
+            new Scenario("reference", 25, 25, 130, 9),
+            new Scenario("medium", 1000, 1000, 100_000, 9),
+            new Scenario("large", 10_000, 10_000, 10_000_000, 3),
+            new Scenario("habitat", 1_000_000, 1_000_000, 100_000, 6, true));
+
+    /**
+     *  The results of a scenario.
+     */
+    public record Result(Scenario scenario, int finalCreatures, double wallMillisPerRound,
+                         double creatureStepsPerSecond, double peakHeapMegabytes, long gcMillis)
+    {
+        String toCsv() {
+            return String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%d,%.3f,%.0f,%.1f,%d", scenario.name(),
+                    scenario.rows(), scenario.columns(), scenario.creatures(), scenario.rounds(),
+                    finalCreatures, wallMillisPerRound, creatureStepsPerSecond,
+                    peakHeapMegabytes, gcMillis);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path output = Path.of("scenarios.csv");
+        Path baseline = null;
+        double tolerance = DEFAULT_TOLERANCE;
+        FoodStorage.Allocator foodAllocator = FoodStorage.ON_HEAP;
+        List<String> names = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--output" -> output = Path.of(args[++i]);
+                case "--baseline" -> baseline = Path.of(args[++i]);
+                case "--tolerance" -> tolerance = Double.parseDouble(args[++i]);
+                case "--off-heap" -> foodAllocator = FoodStorage.OFF_HEAP;
+                default -> names.add(args[i]);
+            }
+        }
+
+        List<Result> results = new ArrayList<>();
+        try (var writer = new PrintWriter(Files.newBufferedWriter(output))) {
+            writer.println(HEADER);
+            System.out.println(HEADER);
+            for (var scenario : SCENARIOS) {
+                if (!names.isEmpty() && !names.contains(scenario.name()))
+                    continue;
+                Result result = run(scenario, foodAllocator);
+                results.add(result);
+                writer.println(result.toCsv());
+                writer.flush();
+                System.out.println(result.toCsv());
+            }
+        }
+
+        if (baseline != null && !compareWithBaseline(results, baseline, tolerance))
+            System.exit(1);
+    }
+
+    /**
+     *  Runs a scenario in the current JVM.
+     */
+    public static Result run(Scenario scenario) {
+        return run(scenario, FoodStorage.ON_HEAP);
+    }
+
+    /**
+     *  Runs a scenario in the current JVM with the food layer allocated by {@param foodAllocator}.
+     *  @return the result of the timed pass of the median throughput;
+     */
+    public static Result run(Scenario scenario, FoodStorage.Allocator foodAllocator) {
+        List<Result> timed = new ArrayList<>();
+        long warmupNanos = 0, measuredNanos = 0;
+
+        Pass first = runPass(scenario, foodAllocator, true);
+        if (first.nanos() >= WARMUP_NANOS) {
+            timed.add(first.result());
+            measuredNanos = first.nanos();
+        } else {
+            warmupNanos = first.nanos();
+            while (warmupNanos < WARMUP_NANOS)
+                warmupNanos += runPass(scenario, foodAllocator, false).nanos();
+        }
+        while (measuredNanos < MEASUREMENT_NANOS) {
+            Pass pass = runPass(scenario, foodAllocator, false);
+            timed.add(pass.result());
+            measuredNanos += pass.nanos();
+        }
+
+        timed.sort(Comparator.comparingDouble(Result::creatureStepsPerSecond));
+        System.err.printf("(*) %s: median of %d timed passes after %.0f ms of warm-up%n",
+                scenario.name(), timed.size(), warmupNanos / 1e6);
+        return timed.get(timed.size() / 2);
+    }
+
+    /**
+     *  A pass of a scenario and its duration with the set up.
+     */
+    private record Pass(Result result, long nanos) {}
+
+    /**
+     *  Runs a scenario once.
+     *  @param report true if the set up and the partitions should be printed;
+     */
+    private static Pass runPass(Scenario scenario, FoodStorage.Allocator foodAllocator, boolean report) {
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (var pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+        long gcMillisBefore = totalGcMillis();
+
+        long startTime = System.nanoTime();
+        Map simulationMap = scenario.chunked()
+                ? Map.chunked(scenario.rows(), scenario.columns(), SEED, Map.DEFAULT_FOOD_RATE)
+                : new Map(scenario.rows(), scenario.columns(), SEED, Map.DEFAULT_FOOD_RATE, foodAllocator);
+        QuadrantPopulation population = new QuadrantPopulation(simulationMap,
+                scenario.creatures(), SEED);
+        population.spawnOnPerimeter(scenario.creatures());
+
+        StatisticsCollector statisticsCollector = new StatisticsCollector();
+        TiledSimulationExecutor executor = new TiledSimulationExecutor();
+        long roundsStartTime = System.nanoTime();
+        executor.runRounds(population, statisticsCollector, scenario.rounds());
+        long endTime = System.nanoTime();
+
+        long peakHeapBytes = 0;
+        for (var pool : heapPools)
+            peakHeapBytes += pool.getPeakUsage().getUsed();
+
+        int rounds = Math.max(executor.getRoundsPerformed(), 1);
+        double roundsSeconds = (endTime - roundsStartTime) / 1e9;
+        if (report) {
+            System.err.printf("(*) %s: set up in %.0f ms%n", scenario.name(),
+                    (roundsStartTime - startTime) / 1e6);
+            if (scenario.chunked())
+                System.err.printf("(*) %s: %d chunks allocated%n", scenario.name(),
+                        simulationMap.getNumOfChunks());
+            System.err.printf("(*) %s: partitions imbalance %.3f after %d rebalances%n", scenario.name(),
+                    executor.getImbalance(), executor.getRebalances());
+        }
+
+        var result = new Result(scenario, population.size(), roundsSeconds * 1e3 / rounds,
+                (roundsSeconds == 0) ? 0 : executor.getCreatureSteps() / roundsSeconds,
+                peakHeapBytes / (1024.0 * 1024.0), totalGcMillis() - gcMillisBefore);
+        return new Pass(result, endTime - startTime);
+    }
+
+    /**
+     *  @return true if no scenario is slower than its baseline by more than {@param tolerance}.
+     */
+    private static boolean compareWithBaseline(List<Result> results, Path baseline,
+                                               double tolerance) throws IOException
+    {
+        // a throughput of each scenario of the baseline;
+        var baselineThroughput = new HashMap<String, Double>();
+        for (String line : Files.readAllLines(baseline)) {
+            if (line.isBlank() || line.startsWith("scenario,"))
+                continue;
+            String[] values = line.split(",");
+            baselineThroughput.put(values[0], Double.parseDouble(values[7]));
+        }
+
+        boolean passed = true;
+        for (var result : results) {
+            Double expected = baselineThroughput.get(result.scenario().name());
+            if (expected == null || expected == 0)
+                continue;
+            double ratio = result.creatureStepsPerSecond() / expected;
+            boolean gated = !UNGATED_SCENARIOS.contains(result.scenario().name());
+            boolean regressed = gated && ratio < 1 - tolerance;
+            System.out.printf("(*) %s: %.2fx of baseline%s%n", result.scenario().name(), ratio,
+                    regressed ? " - REGRESSION" : gated ? "" : " (not gated)");
+            passed &= !regressed;
+        }
+        return passed;
+    }
+
+    private static long totalGcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+            millis += Math.max(collector.getCollectionTime(), 0);
+        return millis;
+    }
+}
@@ -0,0 +1,52 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Benchmarks;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.StatisticsCollector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Benchmarks of the counters of a {@code StatisticsCollector} which are
+ *  updated by creatures of all threads. The same collector is shared by all
+ *  the benchmark threads, so the benchmarks with more threads show contention.
+ *  Another number of threads can be given by the "-t" argument of JMH.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatisticsCollectorBenchmark {
+
+    private StatisticsCollector statisticsCollector;
+
+    @Setup(Level.Iteration)
+    public void createCollector() {
+        statisticsCollector = new StatisticsCollector();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void increaseNumOfAliveSingleThread() {
+        statisticsCollector.increaseNumOfAlive();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void increaseNumOfAliveFourThreads() {
+        statisticsCollector.increaseNumOfAlive();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void increaseNumOfAliveAllThreads() {
+        statisticsCollector.increaseNumOfAlive();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void addCreatureRoundAllThreads() {
+        statisticsCollector.addCreatureRound(1, 100, 0, false, false, 0);
+    }
+}
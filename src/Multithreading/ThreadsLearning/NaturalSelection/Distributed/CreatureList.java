@@ -0,0 +1,118 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ *  A growable list of creatures (id, row, column) stored as parallel arrays,
+ *  which is sent between shards.
+ */
+final class CreatureList {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] ids = new int[DEFAULT_CAPACITY];
+    private int[] rows = new int[DEFAULT_CAPACITY];
+    private int[] columns = new int[DEFAULT_CAPACITY];
+    private int size;
+
+    void add(int id, int row, int column) {
+        if (size == ids.length) {
+            int capacity = size + (size >> 1);
+            ids = Arrays.copyOf(ids, capacity);
+            rows = Arrays.copyOf(rows, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+        }
+        ids[size] = id;
+        rows[size] = row;
+        columns[size] = column;
+        size++;
+    }
+
+    void addAll(CreatureList other) {
+        for (int i = 0; i < other.size; i++)
+            add(other.ids[i], other.rows[i], other.columns[i]);
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     *  Sorts the creatures by ids. The ids are positive, so a pair of an id
+     *  and an index is sorted as one long.
+     */
+    void sortById() {
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++)
+            keys[i] = ((long) ids[i] << 32) | i;
+        Arrays.sort(keys);
+
+        int[] sortedIds = new int[ids.length];
+        int[] sortedRows = new int[rows.length];
+        int[] sortedColumns = new int[columns.length];
+        for (int i = 0; i < size; i++) {
+            int index = (int) keys[i];
+            sortedIds[i] = ids[index];
+            sortedRows[i] = rows[index];
+            sortedColumns[i] = columns[index];
+        }
+        ids = sortedIds;
+        rows = sortedRows;
+        columns = sortedColumns;
+    }
+
+    /**
+     *  @return a list of the creatures of two lists sorted by ids.
+     */
+    static CreatureList merge(CreatureList first, CreatureList second) {
+        var merged = new CreatureList();
+        int i = 0, j = 0;
+        while (i < first.size || j < second.size) {
+            if (j == second.size || (i < first.size && first.ids[i] < second.ids[j])) {
+                merged.add(first.ids[i], first.rows[i], first.columns[i]);
+                i++;
+            } else {
+                merged.add(second.ids[j], second.rows[j], second.columns[j]);
+                j++;
+            }
+        }
+        return merged;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(ids[i]);
+            out.writeInt(rows[i]);
+            out.writeInt(columns[i]);
+        }
+    }
+
+    /**
+     *  Replaces the creatures of the list by the ones read from {@param in}.
+     */
+    void read(DataInputStream in) throws IOException {
+        clear();
+        for (int i = 0, count = in.readInt(); i < count; i++)
+            add(in.readInt(), in.readInt(), in.readInt());
+    }
+
+    /* Getters */
+    int size() {
+        return size;
+    }
+
+    int getId(int index) {
+        return ids[index];
+    }
+
+    int getRow(int index) {
+        return rows[index];
+    }
+
+    int getColumn(int index) {
+        return columns[index];
+    }
+}
@@ -0,0 +1,366 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Distributed;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Executors.TickSimulationExecutor;
+import Multithreading.ThreadsLearning.NaturalSelection.Inhabitants.QuadrantPopulation;
+import Multithreading.ThreadsLearning.NaturalSelection.Map.Map;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.StatisticsCollector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static Multithreading.ThreadsLearning.NaturalSelection.Distributed.ShardProtocol.*;
+
+/**
+ *  A coordinator of a simulation which is sharded across several worker processes
+ *  (see {@code ShardWorker}). The rows of the map are split into bands, and each
+ *  worker owns the creatures of one band. The workers are connected to the
+ *  coordinator by TCP sockets; they don't talk to each other.
+ *  <p>In each round the coordinator:</p>
+ *  <ol>
+ *      <li>gets from each worker the creatures near the edges of its band and sends
+ *          each worker the creatures of other bands within its halo;</li>
+ *      <li>waits until the workers perform the round, and reduces their statistics
+ *          into one {@code StatisticsCollector} as the round boundary of
+ *          {@code PopulationSimulationExecutor} does;</li>
+ *      <li>gives ids to the newborns of the round and moves the creatures that have
+ *          left their bands to the workers of the new bands.</li>
+ *  </ol>
+ *  <p>The rules are the ones of {@code PopulationSimulationExecutor}, so the same
+ *     seed gives the same statistics as the single-process engine with any number
+ *     of workers. A dense map is replicated in each worker; a chunked map (see
+ *     {@code Map.chunked}) creates only the chunks visited near the band, so the
+ *     memory of a worker follows its band. The bands of a chunked map start at
+ *     the rows of chunks, so the food placed in a band is counted by its worker.</p>
+ */
+public final class ShardCoordinator implements AutoCloseable {
+    // a time to wait for the workers to connect;
+    private static final int ACCEPT_TIMEOUT_MILLIS = 60_000;
+    // a time to wait for the workers to exit after they are stopped;
+    private static final long EXIT_TIMEOUT_SECONDS = 10;
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    // params of the simulation
+    private final int numberOfWorkers;
+    private final int rows;
+    private final int columns;
+    private final long seed;
+    private final boolean chunked;
+    private final int stepsPerRound;
+    private final int reproduceThreshold;
+
+    // band "b" holds rows [bandStarts[b], bandStarts[b + 1]);
+    private final int[] bandStarts;
+    private final int halo;
+
+    private final ServerSocket serverSocket;
+    private final List<Process> processes = new ArrayList<>();
+    private final Socket[] sockets;
+    private final DataInputStream[] inputs;
+    private final DataOutputStream[] outputs;
+
+    // creatures which are sent to each worker in the current round;
+    private final CreatureList[] ghosts;
+    private final CreatureList[] immigrants;
+    private final CreatureList received = new CreatureList();
+
+    // a number of alive creatures and an id of the next newborn;
+    private int size;
+    private int nextId;
+
+    // a number of connected workers and whether they wait for the next round
+    // after sending their edges;
+    private int connected;
+    private boolean workersWaiting;
+    private int roundsPerformed;
+
+    public ShardCoordinator(int numberOfWorkers, int rows, int columns, long seed, boolean chunked)
+            throws IOException
+    {
+        this(numberOfWorkers, rows, columns, seed, chunked,
+             new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    /**
+     *  Creates a coordinator which waits for the workers on {@param address}.
+     *  @param chunked true if the workers should use chunked maps;
+     *  @throws IOException if the address couldn't be bound;
+     */
+    public ShardCoordinator(int numberOfWorkers, int rows, int columns, long seed, boolean chunked,
+                            InetSocketAddress address) throws IOException
+    {
+        if (numberOfWorkers < 1 || rows < 1 || columns < 1)
+            throw new IllegalArgumentException("Number of workers, rows and columns have to be positive.");
+        this.numberOfWorkers = numberOfWorkers;
+        this.rows = rows;
+        this.columns = columns;
+        this.seed = seed;
+        this.chunked = chunked;
+        this.stepsPerRound = TickSimulationExecutor.DEFAULT_STEPS_PER_ROUND;
+        this.reproduceThreshold = QuadrantPopulation.DEFAULT_REPRODUCE_THRESHOLD;
+
+        // a creature moves by one row per step at most, so the creatures which can
+        // reach the food of a band start the round within two rounds of steps;
+        this.halo = 2 * stepsPerRound;
+        this.bandStarts = new int[numberOfWorkers + 1];
+        for (int band = 0; band < numberOfWorkers; band++) {
+            int start = (int) ((long) rows * band / numberOfWorkers);
+            bandStarts[band] = chunked ? start - start % Map.CHUNK_SIDE : start;
+        }
+        bandStarts[numberOfWorkers] = rows;
+
+        this.sockets = new Socket[numberOfWorkers];
+        this.inputs = new DataInputStream[numberOfWorkers];
+        this.outputs = new DataOutputStream[numberOfWorkers];
+        this.ghosts = new CreatureList[numberOfWorkers];
+        this.immigrants = new CreatureList[numberOfWorkers];
+        for (int band = 0; band < numberOfWorkers; band++) {
+            ghosts[band] = new CreatureList();
+            immigrants[band] = new CreatureList();
+        }
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+    }
+
+    /**
+     *  Starts the workers as processes of this machine with the java
+     *  and the class path of the current process.
+     *  @throws IOException if a process couldn't be started;
+     */
+    public void launchLocalWorkers() throws IOException {
+        String java = ProcessHandle.current().info().command()
+                .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        List<String> command = new ArrayList<>(List.of(java, "-cp", System.getProperty("java.class.path")));
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent())
+            command.addAll(List.of("--add-modules", "jdk.incubator.vector"));
+        command.addAll(List.of(ShardWorker.class.getName(),
+                serverSocket.getInetAddress().getHostAddress(),
+                String.valueOf(serverSocket.getLocalPort())));
+
+        for (int i = 0; i < numberOfWorkers; i++) {
+            processes.add(new ProcessBuilder(command)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start());
+        }
+    }
+
+    /**
+     *  Waits for the workers, gives them the bands in the order of connection
+     *  and spawns the initial creatures.
+     *  @param initialCreatures a number of creatures spawned on the perimeter of the map;
+     *  @throws IOException if a worker didn't connect in time or isn't a worker;
+     */
+    public void connectWorkers(int initialCreatures) throws IOException {
+        if (initialCreatures < 0)
+            throw new IllegalArgumentException("Number of creatures can't be negative.");
+        serverSocket.setSoTimeout(ACCEPT_TIMEOUT_MILLIS);
+        for (int band = 0; band < numberOfWorkers; band++) {
+            Socket socket = serverSocket.accept();
+            socket.setTcpNoDelay(true);
+            sockets[band] = socket;
+            inputs[band] = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_BYTES));
+            outputs[band] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_BYTES));
+            connected++;
+
+            expect(inputs[band], HELLO);
+            if (inputs[band].readInt() != MAGIC || inputs[band].readInt() != VERSION)
+                throw new IOException("A worker of another version has connected.");
+
+            DataOutputStream out = outputs[band];
+            out.writeInt(CONFIG);
+            out.writeInt(rows);
+            out.writeInt(columns);
+            out.writeLong(seed);
+            out.writeDouble(Map.DEFAULT_FOOD_RATE);
+            out.writeBoolean(chunked);
+            out.writeInt(reproduceThreshold);
+            out.writeInt(stepsPerRound);
+            out.writeInt(band);
+            out.writeInt(bandStarts[band]);
+            out.writeInt(bandStarts[band + 1]);
+            out.writeInt(halo);
+            out.writeInt(initialCreatures);
+            out.flush();
+        }
+        size = initialCreatures;
+        nextId = initialCreatures + 1;
+        workersWaiting = true;
+    }
+
+    /**
+     *  Performs {@param rounds} rounds or less if all the creatures die
+     *  or the statistics converge.
+     *  @param statisticsCollector a collector of the simulation statistics;
+     *  @throws IOException if the connection to a worker is broken;
+     */
+    public void runRounds(StatisticsCollector statisticsCollector, int rounds) throws IOException {
+        if (!workersWaiting)
+            throw new IllegalStateException("The workers aren't connected or a round has failed.");
+
+        for (int round = 0; round < rounds && size > 0 && !statisticsCollector.isConverged(); round++) {
+            workersWaiting = false;
+            exchangeHalos();
+            reduceReports(statisticsCollector);
+            workersWaiting = true;
+            roundsPerformed++;
+        }
+    }
+
+    /**
+     *  Receives the creatures near the edges of the bands and sends
+     *  them to the workers of the neighbouring bands.
+     */
+    private void exchangeHalos() throws IOException {
+        for (CreatureList list : ghosts)
+            list.clear();
+        for (int band = 0; band < numberOfWorkers; band++) {
+            expect(inputs[band], EDGES);
+            inputs[band].readInt();
+            received.read(inputs[band]);
+            for (int i = 0; i < received.size(); i++) {
+                int row = received.getRow(i);
+                for (int other = 0; other < numberOfWorkers; other++) {
+                    if (other != band && bandStarts[other] < bandStarts[other + 1]
+                        && row >= bandStarts[other] - halo && row < bandStarts[other + 1] + halo)
+                        ghosts[other].add(received.getId(i), row, received.getColumn(i));
+                }
+            }
+        }
+        for (int band = 0; band < numberOfWorkers; band++) {
+            outputs[band].writeInt(GHOSTS);
+            ghosts[band].write(outputs[band]);
+            outputs[band].flush();
+        }
+    }
+
+    /**
+     *  Reduces the statistics of the workers, then sends them the ids of
+     *  the newborns and the creatures that have entered their bands.
+     */
+    private void reduceReports(StatisticsCollector statisticsCollector) throws IOException {
+        for (CreatureList list : immigrants)
+            list.clear();
+
+        int participants = 0;
+        long eaten = 0;
+        long contested = 0;
+        int died = 0;
+        int born = 0;
+        long foodPlaced = 0;
+        int[] regionCounts = new int[StatisticsCollector.REGIONS];
+        for (int band = 0; band < numberOfWorkers; band++) {
+            DataInputStream in = inputs[band];
+            expect(in, REPORT);
+            participants += in.readInt();
+            eaten += in.readLong();
+            contested += in.readLong();
+            died += in.readInt();
+            born += in.readInt();
+            for (int i = 0; i < regionCounts.length; i++)
+                regionCounts[i] += in.readInt();
+            foodPlaced += in.readLong();
+
+            received.read(in);
+            for (int i = 0; i < received.size(); i++)
+                immigrants[ownerOf(received.getRow(i))]
+                        .add(received.getId(i), received.getRow(i), received.getColumn(i));
+        }
+
+        // the same order as in the round boundary of a single process;
+        statisticsCollector.increaseNumOfAlive(participants);
+        statisticsCollector.addRangeRound(eaten, (long) participants * stepsPerRound,
+                contested, died, born);
+        statisticsCollector.addRegionCounts(regionCounts);
+        statisticsCollector.addFoodPlaced(foodPlaced);
+        statisticsCollector.performStatsCollection();
+        statisticsCollector.notifyWaiters();
+
+        int firstId = nextId;
+        nextId += born;
+        size = participants - died + born;
+        for (int band = 0; band < numberOfWorkers; band++) {
+            DataOutputStream out = outputs[band];
+            out.writeInt(NEXT);
+            out.writeInt(firstId);
+            out.writeInt(born);
+            immigrants[band].write(out);
+            out.flush();
+        }
+    }
+
+    /**
+     *  @return a band which holds {@param row}; the last of equal starts
+     *  is the band which isn't empty.
+     */
+    private int ownerOf(int row) {
+        int band = numberOfWorkers - 1;
+        while (bandStarts[band] > row)
+            band--;
+        return band;
+    }
+
+    /**
+     *  Stops the workers and waits until their processes exit.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            // the workers are waiting after sending the edges of the next round;
+            // after a failed round they get the end of the stream instead;
+            for (int band = 0; band < connected && workersWaiting; band++) {
+                expect(inputs[band], EDGES);
+                inputs[band].readInt();
+                received.read(inputs[band]);
+                outputs[band].writeInt(STOP);
+                outputs[band].flush();
+            }
+        } finally {
+            for (int band = 0; band < connected; band++)
+                sockets[band].close();
+            for (Process process : processes) {
+                try {
+                    if (!process.waitFor(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                        process.destroyForcibly();
+                } catch (InterruptedException e) {
+                    process.destroyForcibly();
+                    Thread.currentThread().interrupt();
+                }
+            }
+            serverSocket.close();
+        }
+    }
+
+    /* Getters */
+    public int getNumberOfWorkers() {
+        return numberOfWorkers;
+    }
+
+    public int getRoundsPerformed() {
+        return roundsPerformed;
+    }
+
+    /**
+     *  @return a number of alive creatures after the last round;
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     *  @return the first row of band {@param band}.
+     */
+    public int getBandStart(int band) {
+        return bandStarts[band];
+    }
+}
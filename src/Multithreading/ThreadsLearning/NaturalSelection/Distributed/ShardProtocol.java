@@ -0,0 +1,47 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Distributed;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ *  The messages between a {@code ShardCoordinator} and its {@code ShardWorker}s.
+ *  Each message starts with its tag; the values are written by {@code DataOutputStream}.
+ *  <pre>
+ *      HELLO     worker -> coordinator: MAGIC, VERSION;
+ *      CONFIG    coordinator -> worker: the map, the population, the band of the
+ *                worker, the depth of the halo and a number of initial creatures;
+ *      EDGES     worker -> coordinator: a number of its creatures and the ones
+ *                within the halo depth of the edges of its band;
+ *      GHOSTS    coordinator -> worker: the creatures of other bands within the
+ *                halo of the band of the worker; the round starts;
+ *      REPORT    worker -> coordinator: the statistics of the round and the
+ *                creatures that have left the band;
+ *      NEXT      coordinator -> worker: the ids of the newborns of the round and
+ *                the creatures that have entered the band;
+ *      STOP      coordinator -> worker: instead of GHOSTS; the worker exits.
+ *  </pre>
+ */
+final class ShardProtocol {
+    static final int MAGIC = 0x51535348; // "QSSH"
+    static final int VERSION = 1;
+
+    static final int HELLO = 1;
+    static final int CONFIG = 2;
+    static final int EDGES = 3;
+    static final int GHOSTS = 4;
+    static final int REPORT = 5;
+    static final int NEXT = 6;
+    static final int STOP = 7;
+
+    private ShardProtocol() {}
+
+    /**
+     *  Reads a tag of the next message.
+     *  @throws IOException if it isn't {@param tag};
+     */
+    static void expect(DataInputStream in, int tag) throws IOException {
+        int actual = in.readInt();
+        if (actual != tag)
+            throw new IOException("Expected a message " + tag + ", but got " + actual + ".");
+    }
+}
@@ -0,0 +1,263 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Distributed;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Inhabitants.QuadrantPopulation;
+import Multithreading.ThreadsLearning.NaturalSelection.Map.Map;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.StatisticsCollector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.IntBuffer;
+
+import static Multithreading.ThreadsLearning.NaturalSelection.Distributed.ShardProtocol.*;
+
+/**
+ *  A worker process of a sharded simulation (see {@code ShardCoordinator}). It owns
+ *  the creatures of a band of rows of the map and performs the rounds for them.
+ *  <p>A creature moves by at most one row per step, so during a round of S steps the
+ *     creatures of the band meet only the creatures which started the round within
+ *     2 * S rows of the band (the halo). The food is filled anew in each round from
+ *     the seed of the map, so the worker knows it on the whole map. At the start of
+ *     a round the worker gets the creatures of the halo (ghosts) and steps them together
+ *     with its own creatures by the rules of {@code PopulationSimulationExecutor}: the
+ *     creatures standing on the same food eat it in the order of ids. So its own
+ *     creatures get the same results as in a single process; the results of the ghosts
+ *     are dropped, because their owners compute them.</p>
+ *  <p>Usage: {@code ShardWorker host port}</p>
+ */
+public final class ShardWorker {
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    // params of the simulation; the map and the population have the same seed;
+    private Map simulationMap;
+    private long populationSeed;
+    private int reproduceThreshold;
+    private int stepsPerRound;
+
+    // the first band of the coordinator reports the food of a dense map;
+    private boolean firstBand;
+
+    // the band [bandFrom, bandTo) of rows of the worker and the depth of its halo;
+    private int bandFrom;
+    private int bandTo;
+    private int halo;
+
+    // a population which isn't stepped; it gives the places of the newborns;
+    private QuadrantPopulation spawner;
+
+    // the creatures of the band sorted by ids;
+    private CreatureList own = new CreatureList();
+
+    private final CreatureList ghosts = new CreatureList();
+    private final CreatureList emigrants = new CreatureList();
+    private final CreatureList immigrants = new CreatureList();
+
+    // a number of completed rounds and an id of the next newborn;
+    private int round;
+    private int nextId;
+
+    ShardWorker(DataInputStream in, DataOutputStream out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ShardWorker host port");
+            System.exit(2);
+        }
+        try (var socket = new Socket(args[0], Integer.parseInt(args[1]))) {
+            socket.setTcpNoDelay(true);
+            new ShardWorker(
+                    new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_BYTES)),
+                    new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_BYTES)))
+                    .run();
+        }
+    }
+
+    /**
+     *  Performs the rounds until the coordinator stops the worker.
+     *  @throws IOException if the connection is broken or a message is unexpected;
+     */
+    void run() throws IOException {
+        out.writeInt(HELLO);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.flush();
+        readConfig();
+
+        while (true) {
+            sendEdges();
+            int tag = in.readInt();
+            if (tag == STOP)
+                return;
+            if (tag != GHOSTS)
+                throw new IOException("Expected a message " + GHOSTS + ", but got " + tag + ".");
+            ghosts.read(in);
+            ghosts.sortById();
+            performRound();
+            finishRound();
+        }
+    }
+
+    private void readConfig() throws IOException {
+        expect(in, CONFIG);
+        int rows = in.readInt(), columns = in.readInt();
+        populationSeed = in.readLong();
+        double foodRate = in.readDouble();
+        boolean chunked = in.readBoolean();
+        reproduceThreshold = in.readInt();
+        stepsPerRound = in.readInt();
+        firstBand = in.readInt() == 0;
+        bandFrom = in.readInt();
+        bandTo = in.readInt();
+        halo = in.readInt();
+        int initialCreatures = in.readInt();
+
+        simulationMap = chunked ? Map.chunked(rows, columns, populationSeed, foodRate)
+                                : new Map(rows, columns, populationSeed, foodRate);
+        spawner = new QuadrantPopulation(simulationMap, 0, populationSeed, reproduceThreshold);
+        nextId = 1;
+        spawn(initialCreatures);
+    }
+
+    /**
+     *  Adds the next {@param count} newborns which are spawned in the band.
+     *  Their ids are greater than the ids of the other creatures, so the
+     *  creatures stay sorted.
+     */
+    private void spawn(int count) {
+        for (int i = 0; i < count; i++, nextId++) {
+            long position = spawner.getSpawnPosition(nextId);
+            int row = (int) (position >>> 32);
+            if (row >= bandFrom && row < bandTo)
+                own.add(nextId, row, (int) position);
+        }
+    }
+
+    /**
+     *  Sends a number of the creatures of the band and the ones which
+     *  can be in the halos of other bands.
+     */
+    private void sendEdges() throws IOException {
+        out.writeInt(EDGES);
+        out.writeInt(own.size());
+        var edges = new CreatureList();
+        for (int i = 0; i < own.size(); i++) {
+            int row = own.getRow(i);
+            if (row < bandFrom + halo || row >= bandTo - halo)
+                edges.add(own.getId(i), row, own.getColumn(i));
+        }
+        edges.write(out);
+        out.flush();
+    }
+
+    /**
+     *  Steps the creatures of the band and the ghosts, and sends
+     *  the statistics of the creatures of the band.
+     */
+    private void performRound() throws IOException {
+        // merge the creatures and the ghosts by ids;
+        int size = own.size() + ghosts.size();
+        int[] rows = new int[size];
+        int[] columns = new int[size];
+        int[] ids = new int[size];
+        boolean[] owned = new boolean[size];
+        for (int i = 0, o = 0, g = 0; i < size; i++) {
+            boolean takeOwn = g == ghosts.size() || (o < own.size() && own.getId(o) < ghosts.getId(g));
+            CreatureList source = takeOwn ? own : ghosts;
+            int index = takeOwn ? o++ : g++;
+            rows[i] = source.getRow(index);
+            columns[i] = source.getColumn(index);
+            ids[i] = source.getId(index);
+            owned[i] = takeOwn;
+        }
+
+        var population = QuadrantPopulation.restore(simulationMap, populationSeed,
+                reproduceThreshold, size, nextId, round);
+        population.copyColumnsFrom(0, IntBuffer.wrap(rows), IntBuffer.wrap(columns),
+                IntBuffer.wrap(new int[size]), IntBuffer.wrap(ids));
+
+        int[] candidates = new int[size];
+        long ownCandidates = 0;
+        for (int step = 0; step < stepsPerRound; step++) {
+            population.move(0, size, population.getStepSeed(step));
+            int count = population.findFoodCandidates(0, size, candidates);
+            for (int i = 0; i < count; i++) {
+                if (owned[candidates[i]])
+                    ownCandidates++;
+            }
+            population.eatCandidates(candidates, count);
+        }
+
+        // the statistics of the creatures of the band as in {@code RoundBoundary};
+        long eaten = 0;
+        int died = 0;
+        int parents = 0;
+        int[] regionCounts = new int[StatisticsCollector.REGIONS];
+        var survivors = new CreatureList();
+        emigrants.clear();
+        for (int i = 0; i < size; i++) {
+            if (!owned[i])
+                continue;
+            int row = population.getRow(i);
+            int column = population.getColumn(i);
+            int creatureEaten = population.numHasEatenCurrentRound(i);
+            eaten += creatureEaten;
+            regionCounts[StatisticsCollector.regionOf(row, column,
+                    simulationMap.getNumOfRows(), simulationMap.getNumOfColumns())]++;
+            if (creatureEaten == 0) {
+                died++;
+                continue;
+            }
+            if (population.canReproduce(i))
+                parents++;
+            if (row >= bandFrom && row < bandTo)
+                survivors.add(population.getId(i), row, column);
+            else
+                emigrants.add(population.getId(i), row, column);
+        }
+        own = survivors;
+
+        // a dense map places the same food in each worker, so it is reported once;
+        long foodPlaced = simulationMap.isChunked() ? simulationMap.getFoodPlaced(bandFrom, bandTo)
+                : firstBand ? simulationMap.getFoodPlaced() : 0;
+
+        out.writeInt(REPORT);
+        out.writeInt(size - ghosts.size());
+        out.writeLong(eaten);
+        out.writeLong(ownCandidates - eaten);
+        out.writeInt(died);
+        out.writeInt(parents);
+        for (int count : regionCounts)
+            out.writeInt(count);
+        out.writeLong(foodPlaced);
+        emigrants.write(out);
+        out.flush();
+    }
+
+    /**
+     *  Takes the creatures that have entered the band and the newborns, and renews the food.
+     */
+    private void finishRound() throws IOException {
+        expect(in, NEXT);
+        int firstId = in.readInt();
+        int born = in.readInt();
+        immigrants.read(in);
+        immigrants.sortById();
+
+        own = CreatureList.merge(own, immigrants);
+        nextId = firstId;
+        spawn(born);
+
+        simulationMap.clearMapFood();
+        simulationMap.fillMapWithFood();
+        round++;
+    }
+}
@@ -0,0 +1,327 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Executors;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Inhabitants.QuadrantPopulation;
+import Multithreading.ThreadsLearning.NaturalSelection.Map.Map;
+
+import java.util.Arrays;
+
+/**
+ *  Resolves the food contention of a round of a {@code QuadrantPopulation} by the rule
+ *  of the lock-step engines: if several creatures stand on the same food-unit in a step,
+ *  the creature with the lowest id eats it, and the others are contested misses.
+ *  <p>The moves don't depend on the food, and the food only disappears during a round,
+ *     so the rule is applied to each map unit on its own after all the steps. A unit
+ *     which has food at the start of the round is eaten at its first visit: the visit
+ *     of the least step and, within the step, of the lowest id. The other creatures
+ *     standing on it in that step are contested misses, and the later visits find no
+ *     food. So each creature can make all the steps of the round at once while its
+ *     place stays in a register, and the result is the same as the one of stepping
+ *     all the creatures one step at a time.</p>
+ *  <p>The food isn't eaten during the steps. A task records the visits of its creatures
+ *     to the units with food into its {@code Visits}, which keep the first visit of each
+ *     unit and a number of the creatures of its step, and publishes them into segments
+ *     of a shared table after each block of {@code BLOCK_CREATURES} creatures. Merging is commutative, so the table doesn't depend on the
+ *     order of the tasks. After the steps the owners of the segments eat the food of
+ *     their units in parallel.</p>
+ */
+final class FoodContention {
+    // a number of creatures whose visits are published together;
+    static final int BLOCK_CREATURES = 1024;
+
+    // a number of segments per worker; a segment is locked while visits are merged into it;
+    private static final int SEGMENTS_PER_WORKER = 8;
+
+    private final int columns;
+    private final int segmentShift;
+    private final Segment[] segments;
+
+    FoodContention(int workers, Map simulationMap) {
+        if (workers < 1)
+            throw new IllegalArgumentException("Number of workers has to be positive.");
+        int count = Integer.highestOneBit(workers * SEGMENTS_PER_WORKER - 1) << 1;
+        this.columns = simulationMap.getNumOfColumns();
+        this.segmentShift = Long.SIZE - Integer.numberOfTrailingZeros(count);
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++)
+            segments[i] = new Segment();
+    }
+
+    /**
+     *  Makes the moves of a round for the creature {@param index} of {@param population}
+     *  (see {@code QuadrantPopulation.walk}) and records its visits to the units with
+     *  food. A creature of a random walk comes back to its units often, and a visit of
+     *  a unit which the creature has already visited is skipped: it can't be the first
+     *  one, so it doesn't change the contention.
+     */
+    void walk(Visits visits, QuadrantPopulation population, int index, long[] stepSeeds) {
+        int steps = stepSeeds.length;
+        visits.startWalk(steps);
+        int[] pathRows = visits.pathRows, pathColumns = visits.pathColumns;
+        population.walk(index, stepSeeds, steps, pathRows, pathColumns);
+
+        Map simulationMap = population.getSimulationMap();
+        int[] firstSteps = visits.firstSteps;
+        int firsts = visits.findFirstVisits(steps, columns);
+        // the first visits to the units with food are moved to the start without branches;
+        int fed = 0;
+        for (int i = 0; i < firsts; i++) {
+            int step = firstSteps[i];
+            firstSteps[fed] = step;
+            fed += simulationMap.hasFood(pathRows[step], pathColumns[step]) ? 1 : 0;
+        }
+        for (int i = 0; i < fed; i++) {
+            int step = firstSteps[i];
+            visits.add((long) pathRows[step] * columns + pathColumns[step], step, index);
+        }
+    }
+
+    /**
+     *  Merges {@param visits} into the shared table and clears them.
+     *  The segments are locked one at a time.
+     */
+    void publish(Visits visits) {
+        int[] order = visits.groupBySegments(segments.length, segmentShift);
+        int[] starts = visits.segmentStarts;
+        for (int s = 0; s < segments.length; s++) {
+            if (starts[s] == starts[s + 1])
+                continue;
+            Segment segment = segments[s];
+            synchronized (segment) {
+                long[] entries = visits.entries;
+                for (int i = starts[s]; i < starts[s + 1]; i++) {
+                    int at = order[i];
+                    segment.add(entries[at], entries[at + 1], entries[at + 2]);
+                }
+            }
+        }
+        visits.clear();
+    }
+
+    /**
+     *  Lets the first visitors of the units of a segment eat their food and clears
+     *  the segment. Must be called after all the visits of the round are published;
+     *  the segments can be resolved in parallel.
+     *  @return a number of eaten food-units;
+     */
+    int resolve(int segment, QuadrantPopulation population) {
+        Segment resolved = segments[segment];
+        int size = resolved.size;
+        if (size == 0)
+            return 0;
+        if (resolved.rows.length < size) {
+            resolved.rows = new int[resolved.capacity / 2];
+            resolved.columns = new int[resolved.capacity / 2];
+            resolved.winners = new int[resolved.capacity / 2];
+        }
+
+        long contested = 0;
+        long[] entries = resolved.entries;
+        for (int at = 0, i = 0; i < size; at += Table.ENTRY) {
+            long cell = entries[at];
+            if (cell < 0)
+                continue;
+            resolved.rows[i] = (int) (cell / columns);
+            resolved.columns[i] = (int) (cell % columns);
+            resolved.winners[i++] = (int) entries[at + 1];
+            contested += entries[at + 2] - 1;
+        }
+        int eatenNow = population.eatClaims(resolved.winners, resolved.rows, resolved.columns,
+                                            size, contested);
+        resolved.clear();
+        return eatenNow;
+    }
+
+    /* Getters */
+    int getSegments() {
+        return segments.length;
+    }
+
+    /**
+     *  @return a mixed hash of a map unit; the high bits choose a segment
+     *  and the low bits choose a slot.
+     */
+    private static long hash(long cell) {
+        long h = cell * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     *  Map units with their first visits as an open-addressing table. An entry is stored
+     *  in its slot as {@code ENTRY} neighbouring longs: the unit, its first visit as
+     *  {@code step << 32 | index} and a number of the creatures standing on it in the
+     *  step of the first visit, so a lookup usually touches one cache line. An empty
+     *  slot has a unit -1, and the table is kept at most half full.
+     */
+    private static class Table {
+        private static final int DEFAULT_CAPACITY = 128;
+        static final int ENTRY = 3;
+
+        long[] entries = newEntries(DEFAULT_CAPACITY);
+        int capacity = DEFAULT_CAPACITY;
+        int size;
+
+        /**
+         *  Adds {@param count} visits of the step of {@param first} to a map unit.
+         */
+        void add(long cell, long first, long count) {
+            long[] entries = this.entries;
+            int mask = capacity - 1;
+            for (int slot = (int) hash(cell) & mask; ; slot = (slot + 1) & mask) {
+                int at = slot * ENTRY;
+                long current = entries[at];
+                if (current == cell) {
+                    long currentFirst = entries[at + 1];
+                    if ((first >>> 32) < (currentFirst >>> 32)) {
+                        entries[at + 1] = first;
+                        entries[at + 2] = count;
+                    } else if ((first >>> 32) == (currentFirst >>> 32)) {
+                        entries[at + 1] = Math.min(first, currentFirst);
+                        entries[at + 2] += count;
+                    }
+                    return;
+                }
+                if (current < 0) {
+                    entries[at] = cell;
+                    entries[at + 1] = first;
+                    entries[at + 2] = count;
+                    if (++size * 2 > capacity)
+                        grow();
+                    return;
+                }
+            }
+        }
+
+        void add(long cell, int step, int index) {
+            add(cell, ((long) step << 32) | index, 1);
+        }
+
+        private void grow() {
+            long[] old = entries;
+            capacity *= 2;
+            entries = newEntries(capacity);
+            int mask = capacity - 1;
+            for (int at = 0; at < old.length; at += ENTRY) {
+                if (old[at] < 0)
+                    continue;
+                int slot = (int) hash(old[at]) & mask;
+                while (entries[slot * ENTRY] >= 0)
+                    slot = (slot + 1) & mask;
+                System.arraycopy(old, at, entries, slot * ENTRY, ENTRY);
+            }
+        }
+
+        void clear() {
+            if (size != 0) {
+                for (int at = 0; at < entries.length; at += ENTRY)
+                    entries[at] = -1L;
+            }
+            size = 0;
+        }
+
+        private static long[] newEntries(int capacity) {
+            long[] entries = new long[capacity * ENTRY];
+            for (int at = 0; at < entries.length; at += ENTRY)
+                entries[at] = -1L;
+            return entries;
+        }
+    }
+
+    /**
+     *  A part of the shared table; it is guarded by itself.
+     */
+    private static final class Segment extends Table {
+        // the places and the eaters of the units; reused between rounds;
+        private int[] rows = new int[0];
+        private int[] columns = new int[0];
+        private int[] winners = new int[0];
+    }
+
+    /**
+     *  The visits of the creatures of a task; a task walks the creatures
+     *  of a block and publishes their visits.
+     */
+    static final class Visits extends Table {
+        // the side of the square of the units which a walk remembers;
+        private static final int WALK_SHIFT = 4;
+        private static final int WALK_MASK = (1 << WALK_SHIFT) - 1;
+        private static final int WALK_UNITS = 1 << (2 * WALK_SHIFT);
+
+        // the places of the entries ordered by segments and the starts of the segments; reused;
+        private int[] order = new int[0];
+        private int[] segmentStarts = new int[0];
+
+        // the places of the walk of a creature and the steps of its first visits; reused;
+        private int[] pathRows = new int[0];
+        private int[] pathColumns = new int[0];
+        private int[] firstSteps = new int[0];
+
+        // the units visited by the current walk, direct-mapped by their low bits of the row
+        // and the column; a walk is a number which tells the visits of different walks apart;
+        private final long[] visitedCells = new long[WALK_UNITS];
+        private final int[] visitedWalks = new int[WALK_UNITS];
+        private int walk;
+
+        private void startWalk(int steps) {
+            if (pathRows.length < steps) {
+                pathRows = new int[steps];
+                pathColumns = new int[steps];
+                firstSteps = new int[steps];
+            }
+            if (++walk == 0) {
+                Arrays.fill(visitedWalks, 0);
+                walk = 1;
+            }
+        }
+
+        /**
+         *  Stores the steps of the current walk which visit a unit for the first time into
+         *  "firstSteps". A unit can be forgotten when another unit takes its place, so
+         *  a revisit isn't always found. The loop has no branches on the places, since
+         *  a walk revisits its units at random.
+         *  @return a number of the stored steps;
+         */
+        private int findFirstVisits(int steps, int columns) {
+            int firsts = 0;
+            for (int step = 0; step < steps; step++) {
+                int row = pathRows[step], column = pathColumns[step];
+                long cell = (long) row * columns + column;
+                int place = ((row & WALK_MASK) << WALK_SHIFT) | (column & WALK_MASK);
+                boolean revisit = visitedWalks[place] == walk & visitedCells[place] == cell;
+                visitedWalks[place] = walk;
+                visitedCells[place] = cell;
+                firstSteps[firsts] = step;
+                firsts += revisit ? 0 : 1;
+            }
+            return firsts;
+        }
+
+        /**
+         *  @return the places of the entries ordered by the segments by a counting sort; the
+         *  entries of a segment "s" are in a range [segmentStarts[s], segmentStarts[s + 1]).
+         */
+        private int[] groupBySegments(int segments, int segmentShift) {
+            if (segmentStarts.length != segments + 1)
+                segmentStarts = new int[segments + 1];
+            else
+                Arrays.fill(segmentStarts, 0);
+            if (order.length < size)
+                order = new int[capacity / 2];
+
+            for (int at = 0; at < entries.length; at += ENTRY) {
+                if (entries[at] >= 0)
+                    segmentStarts[(int) (hash(entries[at]) >>> segmentShift) + 1]++;
+            }
+            for (int s = 0; s < segments; s++)
+                segmentStarts[s + 1] += segmentStarts[s];
+            // "segmentStarts[s]" is used as a cursor and restored afterwards;
+            for (int at = 0; at < entries.length; at += ENTRY) {
+                if (entries[at] >= 0)
+                    order[segmentStarts[(int) (hash(entries[at]) >>> segmentShift)]++] = at;
+            }
+            for (int s = segments; s > 0; s--)
+                segmentStarts[s] = segmentStarts[s - 1];
+            segmentStarts[0] = 0;
+            return order;
+        }
+    }
+}
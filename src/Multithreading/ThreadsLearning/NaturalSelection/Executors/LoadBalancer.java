@@ -0,0 +1,234 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Executors;
+
+/**
+ *  Splits the creatures of {@code TiledSimulationExecutor}, which are ordered by tiles,
+ *  into contiguous partitions of equal predicted cost, one partition per worker.
+ *  <p>The cost model: stepping a partition costs {@code a * creatures + b * tiles},
+ *     where "tiles" is a number of occupied tiles of the partition, because the creatures
+ *     of a tile share the lines of the food layer, and scattered creatures miss the cache
+ *     more often. The coefficients are fitted by least squares to the
+ *     measured costs of the partitions; the moments of the fit decay by {@code SMOOTHING}
+ *     each round, so the model follows a changing population without jumping after
+ *     one noisy round.</p>
+ *  <p>The boundaries are kept in the coordinates of tiles: a tile and a fraction of its
+ *     creatures, so they stay meaningful when the creatures move and the population
+ *     grows. A crowded tile of the perimeter can be split between partitions.</p>
+ *  <p>Hysteresis: the boundaries are moved only when the predicted cost of the
+ *     slowest partition exceeds the mean by more than {@code tolerance}. Then all of
+ *     them are recomputed at once to give the partitions equal shares of the cost.</p>
+ */
+final class LoadBalancer {
+    /**
+     *  A default max excess of the slowest partition over the mean before rebalancing.
+     */
+    static final double DEFAULT_TOLERANCE = 0.03;
+
+    // a partition isn't made of fewer creatures;
+    static final int MIN_PARTITION_CREATURES = 2048;
+
+    // a weight of the last round in the moments of the cost model;
+    private static final double SMOOTHING = 0.3;
+
+    // params of balancing
+    private final int maxPartitions;
+    private final double tolerance;
+
+    // the coefficients of the cost model per creature and per occupied tile;
+    private double creatureCost = 1;
+    private double tileCost = 0;
+
+    // the decayed moments of the least-squares fit: creatures (c), tiles (t)
+    // and measured costs (m) of the partitions;
+    private double cc, ct, tt, cm, tm;
+
+    // partition "p" starts at the tile floor(cuts[p]) after a fraction of its creatures;
+    private double[] cuts;
+    private int tiles;
+
+    // the predicted costs of the tiles as a prefix sum; reused between rounds;
+    private double[] costPrefix = new double[0];
+
+    // the partitions of the current round as ranges of the order of creatures;
+    private int[] starts = new int[0];
+
+    // measurements of the last round;
+    private double imbalance = 1;
+    private int rebalances;
+
+    LoadBalancer(int maxPartitions, double tolerance) {
+        if (maxPartitions < 1 || tolerance < 0)
+            throw new IllegalArgumentException("Number of partitions has to be positive " +
+                    "and tolerance can't be negative.");
+        this.maxPartitions = maxPartitions;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     *  Splits the creatures for the next round; the boundaries of the last round
+     *  are kept if their predicted imbalance is within the tolerance.
+     *  @param tileStarts the creatures of tile "t" are in a range
+     *                    [tileStarts[t], tileStarts[t + 1]) of the order;
+     *  @param tiles a number of tiles;
+     *  @return a number of partitions; partition "p" is a range
+     *  [getStart(p), getStart(p + 1)) of the order;
+     */
+    int plan(int[] tileStarts, int tiles) {
+        int size = tileStarts[tiles];
+        int partitions = Math.max(1, Math.min(maxPartitions, size / MIN_PARTITION_CREATURES));
+
+        if (costPrefix.length < tiles + 1)
+            costPrefix = new double[tiles + 1];
+        for (int t = 0; t < tiles; t++)
+            costPrefix[t + 1] = costPrefix[t] + tileCost(tileStarts[t + 1] - tileStarts[t]);
+
+        if (cuts == null || cuts.length != partitions + 1 || this.tiles != tiles
+            || predictImbalance(tileStarts) > 1 + tolerance)
+        {
+            this.tiles = tiles;
+            rebalance(tileStarts, partitions);
+        }
+
+        if (starts.length != partitions + 1)
+            starts = new int[partitions + 1];
+        for (int p = 0; p <= partitions; p++)
+            starts[p] = positionOf(cuts[p], tileStarts);
+        return partitions;
+    }
+
+    /**
+     *  @return max / mean of the predicted costs of the partitions with the current cuts.
+     */
+    private double predictImbalance(int[] tileStarts) {
+        int partitions = cuts.length - 1;
+        double total = costPrefix[tiles];
+        if (total == 0)
+            return 1;
+        double max = 0;
+        for (int p = 0; p < partitions; p++)
+            max = Math.max(max, costBefore(cuts[p + 1], tileStarts) - costBefore(cuts[p], tileStarts));
+        return max * partitions / total;
+    }
+
+    /**
+     *  Places the cuts so that each partition gets an equal share of the predicted cost.
+     */
+    private void rebalance(int[] tileStarts, int partitions) {
+        cuts = new double[partitions + 1];
+        cuts[partitions] = tiles;
+        double share = costPrefix[tiles] / partitions;
+        for (int p = 1; p < partitions; p++) {
+            double target = share * p;
+
+            // the last tile which starts at a cost not greater than the target;
+            int low = 0, high = tiles - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (costPrefix[middle] <= target)
+                    low = middle;
+                else
+                    high = middle - 1;
+            }
+            int tile = low;
+
+            int count = tileStarts[tile + 1] - tileStarts[tile];
+            double rest = target - costPrefix[tile] - tileCost;
+            double fraction = (count == 0 || rest <= 0) ? 0
+                    : Math.min(1, Math.round(rest / creatureCost) / (double) count);
+            cuts[p] = Math.max(cuts[p - 1], tile + fraction);
+        }
+        rebalances++;
+    }
+
+    /**
+     *  Adds the measured costs of the partitions of the last round to the cost model.
+     *  @param creatures a number of creatures of each partition;
+     *  @param occupiedTiles a number of occupied tiles of each partition;
+     *  @param costs the measured costs of the partitions in nanoseconds;
+     *  @param partitions a number of partitions of the round;
+     */
+    void record(int[] creatures, int[] occupiedTiles, long[] costs, int partitions) {
+        cc *= 1 - SMOOTHING;
+        ct *= 1 - SMOOTHING;
+        tt *= 1 - SMOOTHING;
+        cm *= 1 - SMOOTHING;
+        tm *= 1 - SMOOTHING;
+
+        long max = 0, total = 0;
+        for (int p = 0; p < partitions; p++) {
+            double c = creatures[p], t = occupiedTiles[p], m = costs[p];
+            cc += SMOOTHING * c * c;
+            ct += SMOOTHING * c * t;
+            tt += SMOOTHING * t * t;
+            cm += SMOOTHING * c * m;
+            tm += SMOOTHING * t * m;
+            max = Math.max(max, costs[p]);
+            total += costs[p];
+        }
+        imbalance = (total == 0) ? 1 : (double) max * partitions / total;
+        fit();
+    }
+
+    /**
+     *  Solves the normal equations of the cost model. If the creatures and the tiles
+     *  of the partitions are proportional, the cost is attributed to the creatures.
+     */
+    private void fit() {
+        if (cc == 0)
+            return;
+        double determinant = cc * tt - ct * ct;
+        double a = (tt * cm - ct * tm) / determinant;
+        double b = (cc * tm - ct * cm) / determinant;
+        if (determinant > 1e-9 * cc * tt && a > 0 && b >= 0) {
+            creatureCost = a;
+            tileCost = b;
+        } else if (cm > 0) {
+            creatureCost = cm / cc;
+            tileCost = 0;
+        }
+    }
+
+    private double tileCost(int count) {
+        return (count == 0) ? 0 : tileCost + creatureCost * count;
+    }
+
+    /**
+     *  @return the predicted cost of the creatures before {@param cut}.
+     */
+    private double costBefore(double cut, int[] tileStarts) {
+        int tile = (int) cut;
+        if (tile >= tiles)
+            return costPrefix[tiles];
+        int before = positionOf(cut, tileStarts) - tileStarts[tile];
+        return costPrefix[tile] + tileCost(before);
+    }
+
+    /**
+     *  @return an index in the order of the first creature after {@param cut}.
+     */
+    private int positionOf(double cut, int[] tileStarts) {
+        int tile = (int) cut;
+        if (tile >= tiles)
+            return tileStarts[tiles];
+        int count = tileStarts[tile + 1] - tileStarts[tile];
+        return tileStarts[tile] + (int) Math.round((cut - tile) * count);
+    }
+
+    /* Getters */
+    int getStart(int partition) {
+        return starts[partition];
+    }
+
+    /**
+     *  @return max / mean of the measured costs of the partitions of the last round;
+     */
+    double getImbalance() {
+        return imbalance;
+    }
+
+    /**
+     *  @return a number of times the boundaries have been moved;
+     */
+    int getRebalances() {
+        return rebalances;
+    }
+}
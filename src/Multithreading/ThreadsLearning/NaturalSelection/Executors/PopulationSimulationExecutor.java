@@ -0,0 +1,198 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Executors;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Inhabitants.QuadrantPopulation;
+import Multithreading.ThreadsLearning.NaturalSelection.Persistence.EventLog;
+import Multithreading.ThreadsLearning.NaturalSelection.Profiling.RoundProfiler;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.StatisticsCollector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ *  A tick-based executor (see {@code TickSimulationExecutor}) that runs
+ *  a {@code QuadrantPopulation} instead of {@code Quadrant} objects.
+ *  <p>Each worker applies the stepping kernels to its own range of the population.
+ *     When all the workers arrive at the barrier, the last of them performs the
+ *     round boundary: it applies {@code die} and {@code reproduce} kernels,
+ *     compacts the population, collects statistics and renews the food.</p>
+ *  <p>Runs are reproducible: the same seeds of the map and the population give
+ *     the same statistics with any number of workers. Moves are counter-based
+ *     (see {@code QuadrantPopulation}), and food contention is resolved by a
+ *     defined rule: if several creatures stand on the same food-unit in a step,
+ *     the creature with the lowest id eats it. The moves don't depend on the food,
+ *     so the rule is applied to each map unit after the steps (see
+ *     {@code FoodContention}), and each round has two parts:</p>
+ *  <ol>
+ *      <li>workers make all the steps of the round for each of their creatures
+ *          at once and record the visits to the food without eating it;</li>
+ *      <li>after the step barrier each worker owns a part of the segments of the
+ *          contention and lets the first visitors of their map units eat. The
+ *          segments have disjoint map units, so they are resolved in parallel.</li>
+ *  </ol>
+ */
+public class PopulationSimulationExecutor {
+    // params of execution
+    private final int numberOfWorkers;
+    private final int stepsPerRound;
+
+    // parameters of the current run;
+    private QuadrantPopulation population;
+    private StatisticsCollector statisticsCollector;
+    private int roundsToPerform;
+
+    // a log of the state after each round or null;
+    private EventLog eventLog;
+
+    // resolves the food contention of the rounds; it's created for each run;
+    private FoodContention contention;
+
+    // a number of performed rounds; it is modified only at the round boundary;
+    private volatile int roundsPerformed;
+
+    public PopulationSimulationExecutor(int numberOfWorkers) {
+        this(numberOfWorkers, TickSimulationExecutor.DEFAULT_STEPS_PER_ROUND);
+    }
+
+    public PopulationSimulationExecutor(int numberOfWorkers, int stepsPerRound) {
+        if (numberOfWorkers < 1 || stepsPerRound < 1)
+            throw new IllegalArgumentException("Number of workers and steps per round " +
+                    "have to be positive.");
+        this.numberOfWorkers = numberOfWorkers;
+        this.stepsPerRound = stepsPerRound;
+    }
+
+    /**
+     *  Runs the simulation until {@param rounds} rounds are performed
+     *  or all the creatures die. The calling thread waits until the end of the execution.
+     *  @param population creatures that participate in the simulation;
+     *  @param statisticsCollector a collector of the simulation statistics;
+     *  @param rounds a number of rounds to perform;
+     *  @throws InterruptedException if the calling thread was interrupted while waiting;
+     */
+    public void runRounds(QuadrantPopulation population,
+                          StatisticsCollector statisticsCollector, int rounds)
+            throws InterruptedException
+    {
+        this.population = population;
+        this.statisticsCollector = statisticsCollector;
+        this.roundsToPerform = rounds;
+        this.roundsPerformed = 0;
+
+        if (rounds <= 0 || population.size() == 0)
+            return;
+        this.contention = new FoodContention(numberOfWorkers, population.getSimulationMap());
+
+        // the workers resolve the food contention of a round after this barrier;
+        CyclicBarrier stepBarrier = new CyclicBarrier(numberOfWorkers);
+
+        // the last worker arrived at this barrier performs the round boundary;
+        CyclicBarrier roundBarrier = new CyclicBarrier(numberOfWorkers, this::finishRound);
+
+        // a single worker runs in the calling thread; the barriers of one
+        // party perform their actions immediately;
+        if (numberOfWorkers == 1) {
+            performWork(0, stepBarrier, roundBarrier);
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            return;
+        }
+
+        List<Thread> workers = new ArrayList<>(numberOfWorkers);
+        for (int i = 0; i < numberOfWorkers; i++) {
+            final int workerIndex = i;
+            Thread worker = new Thread(() -> performWork(workerIndex, stepBarrier, roundBarrier),
+                                       "population-worker-" + workerIndex);
+            workers.add(worker);
+            worker.start();
+        }
+
+        try {
+            for (var worker : workers)
+                worker.join();
+        } catch (InterruptedException e) {
+            // stop the workers; they will leave the barriers with an exception;
+            workers.forEach(Thread::interrupt);
+            throw e;
+        }
+    }
+
+    /**
+     *  The main loop of a worker thread.
+     */
+    private void performWork(int workerIndex, CyclicBarrier stepBarrier,
+                             CyclicBarrier roundBarrier)
+    {
+        FoodContention.Visits visits = new FoodContention.Visits();
+        long[] stepSeeds = new long[stepsPerRound];
+        try {
+            while (isRunning()) {
+                // the size of the population isn't changed until the round boundary;
+                int size = population.size();
+                int from = (int) ((long) size * workerIndex / numberOfWorkers);
+                int to = (int) ((long) size * (workerIndex + 1) / numberOfWorkers);
+
+                // the stepping of a worker includes its waiting for the other workers;
+                long start = RoundProfiler.start();
+                population.startRound(from, to);
+                for (int step = 0; step < stepsPerRound; step++)
+                    stepSeeds[step] = population.getStepSeed(step);
+                for (int block = from; block < to; block += FoodContention.BLOCK_CREATURES) {
+                    int blockTo = Math.min(block + FoodContention.BLOCK_CREATURES, to);
+                    for (int i = block; i < blockTo; i++)
+                        contention.walk(visits, population, i, stepSeeds);
+                    contention.publish(visits);
+                }
+                stepBarrier.await();
+
+                long eatingStart = RoundProfiler.start();
+                for (int segment = workerIndex; segment < contention.getSegments();
+                     segment += numberOfWorkers)
+                    contention.resolve(segment, population);
+                RoundProfiler.record(RoundProfiler.Phase.EATING, eatingStart,
+                        population.getRound() + 1, -1);
+                RoundProfiler.record(RoundProfiler.Phase.STEPPING, start, population.getRound() + 1, -1);
+                roundBarrier.await();
+            }
+        } catch (InterruptedException | BrokenBarrierException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     *  This method is performed by one thread when all the workers have finished
+     *  stepping. It applies the simulation rules to the population, collects
+     *  statistics and renews the food on the map.
+     */
+    private void finishRound() {
+        RoundBoundary.finishRound(population, statisticsCollector, stepsPerRound, eventLog);
+        roundsPerformed++;
+    }
+
+    /**
+     *  @return true if there are rounds to perform, creatures that are alive
+     *  and the population hasn't converged.
+     */
+    private boolean isRunning() {
+        return roundsPerformed < roundsToPerform && population.size() > 0
+               && !statisticsCollector.isConverged();
+    }
+
+    /**
+     *  Sets a log which gets the state of the population after each round.
+     *  @param eventLog a log or null to stop logging;
+     */
+    public void setEventLog(EventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    /* Getters */
+    public int getRoundsPerformed() {
+        return roundsPerformed;
+    }
+
+    public int getStepsPerRound() {
+        return stepsPerRound;
+    }
+}
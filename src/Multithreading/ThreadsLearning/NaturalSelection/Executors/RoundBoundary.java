@@ -0,0 +1,84 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Executors;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Inhabitants.QuadrantPopulation;
+import Multithreading.ThreadsLearning.NaturalSelection.Map.Map;
+import Multithreading.ThreadsLearning.NaturalSelection.Persistence.EventLog;
+import Multithreading.ThreadsLearning.NaturalSelection.Profiling.RoundProfiler;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.AsyncLogger;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.StatisticsCollector;
+
+/**
+ *  The round boundary of the executors that run a {@code QuadrantPopulation}.
+ *  It is performed by one thread when all the creatures have finished stepping.
+ */
+final class RoundBoundary {
+    // a logger of the deaths and births of the creatures at the debug level;
+    private static final AsyncLogger logger = AsyncLogger.global();
+
+    private RoundBoundary() {}
+
+    /**
+     *  Applies the simulation rules to the population, collects statistics
+     *  and renews the food on the map.
+     *  @param population creatures that have finished the round;
+     *  @param statisticsCollector a collector of the simulation statistics;
+     *  @param stepsPerRound a number of steps of each creature during the round;
+     *  @param eventLog a log of the state after the round or null;
+     */
+    static void finishRound(QuadrantPopulation population, StatisticsCollector statisticsCollector,
+                            int stepsPerRound, EventLog eventLog)
+    {
+        Map simulationMap = population.getSimulationMap();
+        int size = population.size();
+
+        // count the eaten food and the creatures of each region;
+        long eaten = population.countEaten(0, size);
+        int[] regionCounts = new int[StatisticsCollector.REGIONS];
+        population.countRegions(0, size, regionCounts);
+
+        int round = population.getRound() + 1;
+        long birthsStart = RoundProfiler.start();
+        int died = population.die(0, size);
+        int born = population.reproduce(0, size);
+        if (logger.isEnabled(AsyncLogger.Level.DEBUG))
+            traceRound(population, size, born);
+        population.compact();
+        population.completeRound();
+        RoundProfiler.record(RoundProfiler.Phase.BIRTHS, birthsStart, round, -1);
+
+        long statisticsStart = RoundProfiler.start();
+
+        statisticsCollector.increaseNumOfAlive(size);
+        statisticsCollector.addRangeRound(eaten, (long) size * stepsPerRound,
+                population.takeContestedMisses(), died, born);
+        statisticsCollector.addRegionCounts(regionCounts);
+        statisticsCollector.addFoodPlaced(simulationMap.getFoodPlaced());
+        statisticsCollector.performStatsCollection();
+        statisticsCollector.notifyWaiters();
+        RoundProfiler.record(RoundProfiler.Phase.STATISTICS, statisticsStart, round, -1);
+
+        long foodStart = RoundProfiler.start();
+        simulationMap.clearMapFood();
+        simulationMap.fillMapWithFood();
+        RoundProfiler.record(RoundProfiler.Phase.FOOD_RESET, foodStart, round, -1);
+
+        if (eventLog != null)
+            eventLog.append(population, born, died);
+    }
+
+    /**
+     *  Logs the dead creatures and the newborns of the round. Must be
+     *  called after {@code reproduce} and before {@code compact}.
+     *  @param size a number of creatures which have participated in the round;
+     *  @param born a number of the newborns appended after them;
+     */
+    private static void traceRound(QuadrantPopulation population, int size, int born) {
+        int round = population.getRound() + 1;
+        for (int i = 0; i < size; i++) {
+            if (!population.isAlive(i))
+                logger.log(AsyncLogger.Level.DEBUG, round, population.getId(i), "died", 0);
+        }
+        for (int i = size; i < size + born; i++)
+            logger.log(AsyncLogger.Level.DEBUG, round, population.getId(i), "born", 0);
+    }
+}
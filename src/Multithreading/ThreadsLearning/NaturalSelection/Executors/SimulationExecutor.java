@@ -1,30 +1,43 @@
 package Multithreading.ThreadsLearning.NaturalSelection.Executors;
 
 import Multithreading.ThreadsLearning.NaturalSelection.Inhabitants.Quadrant;
+import Multithreading.ThreadsLearning.NaturalSelection.Profiling.RoundProfiler;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.CreatureRegistry;
 
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  *  A class that executes all {@code Runnable} tasks that
  *  are passed through parameters. Moreover, this class
- *  provides a mechanism for processing new threads
- *  that are added to the blocking queue.
+ *  provides a mechanism for starting creatures that
+ *  were born during a round.
+ *  <p>Each thread of the executor collects the newborns of its creatures in its own
+ *     buffer. Shortly before the next round starts, one task drains all the buffers
+ *     and schedules the newborns at once, so a birth costs an append to a buffer
+ *     instead of a node of a blocking queue and a wake-up of an updater thread.</p>
  */
 public class SimulationExecutor {
+    // the newborns are scheduled this number of milliseconds before the next round starts;
+    private static final long BIRTHS_LEAD_MILLIS = 20;
+
     /**
      *  An executor of threads (creatures).
      */
     private final ScheduledExecutorService ses;
 
-    // a queue that contains new quadrants that have to be added to executor service;
-    private final BlockingQueue<Quadrant> waitingQuadrants =
-            new LinkedBlockingQueue<>();
+    // a buffer of newborns of each thread of the executor;
+    private final ThreadLocal<BirthBuffer> birthBuffer;
+
+    // all the buffers; a buffer is added once when its thread gives the first birth;
+    private final Queue<BirthBuffer> birthBuffers = new ConcurrentLinkedQueue<>();
+
+    // futures of the scheduled creatures by their ids;
+    private CreatureRegistry<ScheduledFuture<?>> scheduledFutures;
 
-    // a flag that is true if an updater of waiting the queue works. Otherwise, it is false;
-    // using an AtomicBoolean to provide non-blocking access
-    private final AtomicBoolean updaterWorks = new AtomicBoolean(false);
+    // a time when the first round has started;
+    private long roundsStartMillis;
+    private volatile long roundsStartNanos;
 
     // params of execution
     private final long initDelay;
@@ -40,22 +53,35 @@ public class SimulationExecutor {
         this.initDelay = initDelay;
         this.periodTime = periodTime;
         this.timeUnit = timeUnit;
+        this.birthBuffer = ThreadLocal.withInitial(() -> {
+            BirthBuffer buffer = new BirthBuffer();
+            birthBuffers.add(buffer);
+            return buffer;
+        });
     }
 
     /**
-     *  Adds a list of commands to execution.
+     *  Adds a list of commands to execution. Moreover, starts a task that
+     *  schedules the newborns before each next round.
      */
     public void addPeriodicExecutorTasks(List<Quadrant> quadrantList) {
-        ConcurrentHashMap<Quadrant, ScheduledFuture<?>> scheduledFutureMap
-                = new ConcurrentHashMap<>();
+        scheduledFutures = new CreatureRegistry<>();
+        roundsStartMillis = System.currentTimeMillis() + timeUnit.toMillis(initDelay);
+        roundsStartNanos = System.nanoTime() + timeUnit.toNanos(initDelay);
+
         for (var quadrant : quadrantList) {
-            // add a future map to quadrant object;
-            quadrant.setScheduledFutureMap(scheduledFutureMap);
+            // add a registry of futures to quadrant object;
+            quadrant.setScheduledFutures(scheduledFutures);
 
             // start an execution;
-            scheduledFutureMap.put(quadrant, ses.scheduleAtFixedRate(
+            scheduledFutures.put(quadrant.UNIQUE_ID, ses.scheduleAtFixedRate(
                     quadrant, initDelay, periodTime, timeUnit));
         }
+
+        long periodMillis = timeUnit.toMillis(periodTime);
+        ses.scheduleAtFixedRate(this::scheduleNewborns,
+                timeUnit.toMillis(initDelay) + periodMillis - BIRTHS_LEAD_MILLIS,
+                periodMillis, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -67,58 +93,68 @@ public class SimulationExecutor {
     }
 
     /**
-     *  Adds a new quadrant object to the waiting queue. Then this object
-     *  will start its execution. Starts a new thread that will operate the
-     *  requests of adding the new {@code Quadrant} objects to {@code ScheduledExecutorService}.
-     *  Moreover, this thread is started once when this method is invoked for the first time.
+     *  Adds a new quadrant object to the buffer of the current thread.
+     *  The newborn will start its execution in the next round.
      */
-    public void addNewQuadrantToQueue(Quadrant quadrantToAdd,
-                                      long timePeriodBeforeStartMillis,
-                                      ConcurrentHashMap<Quadrant, ScheduledFuture<?>>
-                                                                  scheduledFutureMap)
-    {
-        waitingQuadrants.add(quadrantToAdd);
-        // using CAS mechanism
-        if (!updaterWorks.getAndSet(true)) {
-            startUpdating(timePeriodBeforeStartMillis, scheduledFutureMap);
+    public void addNewborn(Quadrant newborn) {
+        birthBuffer.get().add(newborn);
+    }
+
+    /**
+     *  Drains the buffers of all the threads and schedules the newborns,
+     *  so they start with the next round. The delay is computed from the
+     *  start of the rounds, so it doesn't depend on a parent creature.
+     */
+    private void scheduleNewborns() {
+        long start = RoundProfiler.start();
+        List<Quadrant> newborns = new ArrayList<>();
+        for (var buffer : birthBuffers)
+            buffer.drainTo(newborns);
+        if (newborns.isEmpty() || ses.isShutdown())
+            return;
+
+        long periodMillis = timeUnit.toMillis(periodTime);
+        long now = System.currentTimeMillis();
+        long roundsPassed = Math.floorDiv(now - roundsStartMillis, periodMillis) + 1;
+        long delayMillis = Math.max(0, roundsStartMillis + roundsPassed * periodMillis - now);
+
+        for (var newborn : newborns) {
+            // add a pair key - value of an id of the object and a related future object;
+            scheduledFutures.put(newborn.UNIQUE_ID, ses.scheduleAtFixedRate(newborn,
+                    delayMillis, periodMillis, TimeUnit.MILLISECONDS));
         }
+        RoundProfiler.record(RoundProfiler.Phase.BIRTHS, start, (int) roundsPassed, -1);
     }
 
     /**
-     * This method starts a new thread which will operate with new creatures
-     * that are pushed into a blocking queue. This thread will wait until a queue
-     * is empty. Moreover, this thread will run until it is interrupted.
-     *
-     * This field is set once when a method {@code startUpdating(long timePeriodBeforeStart,
-     * TimeUnit timeUnit)} is invoked for the first time. This is made because everything in
-     * a program happens periodically and there is no difference in this param during the
-     * life of the program. In other words, this param is constant.
-     * @param timePeriodBeforeStartMillis time in millis which all
-     *                                    new creatures will wait
-     *                                    until start their execution.
+     *  @return a time between the intended start of the current round and now.
+     *  All the creatures are scheduled at the starts of rounds, so it is the lag
+     *  of a creature's task when it is called at the start of the task. A task
+     *  which has started a bit earlier than its round (the delays of newborns are
+     *  rounded to milliseconds) has no lag.
      */
-    private void startUpdating(long timePeriodBeforeStartMillis,
-                               ConcurrentHashMap<Quadrant, ScheduledFuture<?>>
-                                                           scheduledFutureMap)
-    {
-        new Thread(() -> {
-            while (!Thread.currentThread().isInterrupted() && !ses.isShutdown()) {
-                try {
-                    // Tries to poll the first element in the blocking queue. The thread stops
-                    // waiting if there is no adding of element until the "periodTime" elapses;
-                    Quadrant newQuadrant = waitingQuadrants.poll(periodTime, TimeUnit.MILLISECONDS);
-
-                    if (!ses.isShutdown() && newQuadrant != null) {
-                        // add a pair key - value of an object and a related future object;
-                        scheduledFutureMap.put(newQuadrant, ses.scheduleAtFixedRate(
-                                newQuadrant, timePeriodBeforeStartMillis,
-                                periodTime, timeUnit));
-                    }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-        }).start();
+    public long getSchedulingLagNanos() {
+        long periodNanos = timeUnit.toNanos(periodTime);
+        long lag = Math.floorMod(System.nanoTime() - roundsStartNanos, periodNanos);
+        return (lag > periodNanos / 2) ? 0 : lag;
+    }
+
+    /**
+     *  Newborns of one thread. The buffer is locked by its own thread only,
+     *  except for the moment when the buffers are drained, so the lock is
+     *  uncontended.
+     */
+    private static final class BirthBuffer {
+        private final List<Quadrant> newborns = new ArrayList<>();
+
+        synchronized void add(Quadrant newborn) {
+            newborns.add(newborn);
+        }
+
+        synchronized void drainTo(List<Quadrant> target) {
+            target.addAll(newborns);
+            newborns.clear();
+        }
     }
 
     /* Getter */
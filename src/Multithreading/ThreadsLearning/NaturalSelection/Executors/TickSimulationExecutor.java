@@ -0,0 +1,223 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Executors;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Inhabitants.Quadrant;
+import Multithreading.ThreadsLearning.NaturalSelection.Map.Map;
+import Multithreading.ThreadsLearning.NaturalSelection.Profiling.RoundProfiler;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.StatisticsCollector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ *  An executor that runs the simulation in logical time. A round is a fixed
+ *  number of steps of each creature and it is performed as fast as the CPU allows.
+ *  <p>The order of the phases of a round is provided by barriers instead of
+ *     sleeping and {@code TimeSyn} waiting:</p>
+ *  <ol>
+ *      <li>stepping: each worker moves its creatures step by step;</li>
+ *      <li>resolving: each worker decides which of its creatures die or reproduce;</li>
+ *      <li>round boundary: the last arrived worker updates the population,
+ *          collects statistics and renews the food on the map.</li>
+ *  </ol>
+ *  <p>So the number of steps of a creature doesn't depend on hardware or
+ *     scheduling of the operating system.</p>
+ */
+public class TickSimulationExecutor {
+    /**
+     *  A number of steps which is equal to a wall-clock round of {@code Quadrant}
+     *  (820 milliseconds with the sleeping for 8 milliseconds after each step).
+     */
+    public static final int DEFAULT_STEPS_PER_ROUND = 100;
+
+    // params of execution
+    private final int numberOfWorkers;
+    private final int stepsPerRound;
+
+    // the current population; it is modified only at the round boundary;
+    private final List<Quadrant> population = new ArrayList<>();
+
+    // creatures that were born during the resolving phase of each worker;
+    private List<List<Quadrant>> workersNewborns;
+
+    // parameters of the current run;
+    private Map simulationMap;
+    private StatisticsCollector statisticsCollector;
+    private int roundsToPerform;
+
+    // a number of performed rounds; it is modified only at the round boundary;
+    private volatile int roundsPerformed;
+
+    public TickSimulationExecutor(int numberOfWorkers) {
+        this(numberOfWorkers, DEFAULT_STEPS_PER_ROUND);
+    }
+
+    public TickSimulationExecutor(int numberOfWorkers, int stepsPerRound) {
+        if (numberOfWorkers < 1 || stepsPerRound < 1)
+            throw new IllegalArgumentException("Number of workers and steps per round " +
+                    "have to be positive.");
+        this.numberOfWorkers = numberOfWorkers;
+        this.stepsPerRound = stepsPerRound;
+    }
+
+    /**
+     *  Runs the simulation until {@param rounds} rounds are performed
+     *  or all the creatures die. The calling thread waits until the end of the execution.
+     *  @param initialQuadrants creatures that start the simulation;
+     *  @param simulationMap a map where the simulation takes place;
+     *  @param statisticsCollector a collector of the simulation statistics;
+     *  @param rounds a number of rounds to perform;
+     *  @throws InterruptedException if the calling thread was interrupted while waiting;
+     */
+    public void runRounds(List<Quadrant> initialQuadrants, Map simulationMap,
+                          StatisticsCollector statisticsCollector, int rounds)
+            throws InterruptedException
+    {
+        this.simulationMap = simulationMap;
+        this.statisticsCollector = statisticsCollector;
+        this.roundsToPerform = rounds;
+        this.roundsPerformed = 0;
+
+        population.clear();
+        population.addAll(initialQuadrants);
+
+        workersNewborns = new ArrayList<>(numberOfWorkers);
+        for (int i = 0; i < numberOfWorkers; i++)
+            workersNewborns.add(new ArrayList<>());
+
+        if (rounds <= 0 || population.isEmpty())
+            return;
+
+        // all the workers wait on this barrier after stepping;
+        CyclicBarrier stepBarrier = new CyclicBarrier(numberOfWorkers);
+
+        // the last worker arrived at this barrier performs the round boundary;
+        CyclicBarrier roundBarrier = new CyclicBarrier(numberOfWorkers, this::finishRound);
+
+        List<Thread> workers = new ArrayList<>(numberOfWorkers);
+        for (int i = 0; i < numberOfWorkers; i++) {
+            final int workerIndex = i;
+            Thread worker = new Thread(() -> performWork(workerIndex, stepBarrier, roundBarrier),
+                                       "tick-worker-" + workerIndex);
+            workers.add(worker);
+            worker.start();
+        }
+
+        try {
+            for (var worker : workers)
+                worker.join();
+        } catch (InterruptedException e) {
+            // stop the workers; they will leave the barriers with an exception;
+            workers.forEach(Thread::interrupt);
+            throw e;
+        }
+    }
+
+    /**
+     *  The main loop of a worker thread.
+     */
+    private void performWork(int workerIndex, CyclicBarrier stepBarrier,
+                             CyclicBarrier roundBarrier)
+    {
+        try {
+            while (isRunning()) {
+                // the population isn't modified until the round boundary,
+                // so each worker can safely read its own part of the list;
+                int size = population.size();
+                int from = (int) ((long) size * workerIndex / numberOfWorkers);
+                int to = (int) ((long) size * (workerIndex + 1) / numberOfWorkers);
+
+                long start = RoundProfiler.start();
+                performStepping(from, to);
+                RoundProfiler.record(RoundProfiler.Phase.STEPPING, start, roundsPerformed + 1, -1);
+                stepBarrier.await();
+
+                performResolving(workerIndex, from, to);
+                roundBarrier.await();
+            }
+        } catch (InterruptedException | BrokenBarrierException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     *  Moves creatures with indexes in a range [from, to) step by step.
+     *  Steps of the creatures are interleaved, so no creature gets
+     *  the advantage of performing all its steps first.
+     */
+    private void performStepping(int from, int to) {
+        for (int i = from; i < to; i++)
+            population.get(i).startRound();
+
+        for (int step = 0; step < stepsPerRound; step++)
+            for (int i = from; i < to; i++)
+                population.get(i).performStep();
+    }
+
+    /**
+     *  Creates descendants of creatures with indexes in a range [from, to)
+     *  which can reproduce. Dead creatures are removed at the round boundary.
+     */
+    private void performResolving(int workerIndex, int from, int to) {
+        List<Quadrant> newborns = workersNewborns.get(workerIndex);
+
+        for (int i = from; i < to; i++) {
+            Quadrant quadrant = population.get(i);
+            quadrant.reportRound();
+            if (!quadrant.die() && quadrant.canReproduce())
+                newborns.add(quadrant.reproduce());
+        }
+    }
+
+    /**
+     *  This method is performed by one thread when all the workers have finished
+     *  the resolving phase. It removes dead creatures, adds newborns, collects
+     *  statistics and renews the food on the map.
+     */
+    private void finishRound() {
+        int round = roundsPerformed + 1;
+
+        // remove dead creatures keeping the order of the alive ones;
+        long birthsStart = RoundProfiler.start();
+        population.removeIf(Quadrant::die);
+
+        // newborns will participate starting from the next round;
+        for (var newborns : workersNewborns) {
+            population.addAll(newborns);
+            newborns.clear();
+        }
+        RoundProfiler.record(RoundProfiler.Phase.BIRTHS, birthsStart, round, -1);
+
+        long statisticsStart = RoundProfiler.start();
+        statisticsCollector.addFoodPlaced(simulationMap.getFoodPlaced());
+        statisticsCollector.performStatsCollection();
+        statisticsCollector.notifyWaiters();
+        RoundProfiler.record(RoundProfiler.Phase.STATISTICS, statisticsStart, round, -1);
+
+        long foodStart = RoundProfiler.start();
+        simulationMap.clearMapFood();
+        simulationMap.fillMapWithFood();
+        RoundProfiler.record(RoundProfiler.Phase.FOOD_RESET, foodStart, round, -1);
+
+        roundsPerformed++;
+    }
+
+    /**
+     *  @return true if there are rounds to perform, creatures that are alive
+     *  and the population hasn't converged.
+     */
+    private boolean isRunning() {
+        return roundsPerformed < roundsToPerform && !population.isEmpty()
+               && !statisticsCollector.isConverged();
+    }
+
+    /* Getters */
+    public int getRoundsPerformed() {
+        return roundsPerformed;
+    }
+
+    public int getStepsPerRound() {
+        return stepsPerRound;
+    }
+}
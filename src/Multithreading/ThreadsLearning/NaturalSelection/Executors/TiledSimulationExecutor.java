@@ -0,0 +1,399 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Executors;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Inhabitants.QuadrantPopulation;
+import Multithreading.ThreadsLearning.NaturalSelection.Map.Map;
+import Multithreading.ThreadsLearning.NaturalSelection.Persistence.EventLog;
+import Multithreading.ThreadsLearning.NaturalSelection.Profiling.RoundProfiler;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.StatisticsCollector;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ *  A tick-based executor that splits the map into square tiles and steps the
+ *  creatures of each tile in a {@code ForkJoinPool} sized to the number of cores.
+ *  <p>At the start of each round the creatures are bucketed by the tile where they
+ *     stand. The creatures are spawned on the perimeter, so the tiles are loaded
+ *     very unevenly; a {@code LoadBalancer} splits the creatures ordered by tiles into
+ *     one partition per worker by a cost model which is fitted to the measured costs
+ *     of the partitions of the previous rounds. A creature is moved by the task of
+ *     its partition during the whole round even if it crosses a border of the tile.
+ *     The move of a partition is split into {@code SUBTASKS_PER_PARTITION} subtasks,
+ *     so an idle worker can steal a part of a partition which the model underrated.</p>
+ *  <p>A subtask makes all the steps of a round for one creature before it takes the
+ *     next one, so the creature and the food around it stay in the cache, and the
+ *     creatures of neighbouring tiles follow each other. The food contention is
+ *     resolved by the rule of {@code PopulationSimulationExecutor}: if several creatures
+ *     stand on the same food-unit in a step, the creature with the lowest id eats it.
+ *     The moves don't depend on the food, so the rule is applied to each map unit after
+ *     the steps (see {@code FoodContention}), and a round costs two joins of the pool.
+ *     The same seeds give the same statistics as {@code PopulationSimulationExecutor}
+ *     with any parallelism.</p>
+ */
+public class TiledSimulationExecutor {
+    /**
+     *  A default side of a tile in map units.
+     */
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    // the max number of tiles; larger maps get larger tiles;
+    private static final int MAX_TILES = 1 << 20;
+
+    // a number of ranges of a partition which are moved by separate tasks;
+    private static final int SUBTASKS_PER_PARTITION = 4;
+
+    // the costs of the partitions are measured in the CPU time of the
+    // workers if it's available, so preempted workers don't skew the model;
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private static final boolean cpuTimeSupported = threads.isCurrentThreadCpuTimeSupported();
+
+    // params of execution
+    private final int parallelism;
+    private final int stepsPerRound;
+    private final int tileSize;
+
+    // parameters of the current run;
+    private QuadrantPopulation population;
+
+    // a log of the state after each round or null;
+    private EventLog eventLog;
+
+    // indexes of the creatures ordered by tiles;
+    private int[] order = new int[0];
+
+    // the creatures of a tile {@code t} are in a range [tileStarts[t], tileStarts[t + 1]) of "order";
+    private int[] tileStarts = new int[0];
+
+    // splits the tiles between the workers; it's kept between runs;
+    private final LoadBalancer loadBalancer;
+
+    // resolves the food contention of the rounds of the current run;
+    private FoodContention contention;
+
+    // the seeds of the steps of the current round;
+    private final long[] stepSeeds;
+
+    // the visits to the food of each subtask; reused between rounds;
+    private final FoodContention.Visits[] subtaskVisits;
+
+    // measurements of the partitions of the current round;
+    private final int[] partitionCreatures;
+    private final int[] partitionTiles;
+    private final long[] partitionCosts;
+
+    // the costs of the subtasks of the current round; a subtask "s"
+    // of a partition "p" has an index p * SUBTASKS_PER_PARTITION + s;
+    private final long[] subtaskCosts;
+
+    // measurements of the last run;
+    private long creatureSteps;
+    private long steppingNanos;
+    private int roundsPerformed;
+
+    public TiledSimulationExecutor() {
+        this(Runtime.getRuntime().availableProcessors(),
+             TickSimulationExecutor.DEFAULT_STEPS_PER_ROUND, DEFAULT_TILE_SIZE);
+    }
+
+    public TiledSimulationExecutor(int parallelism, int stepsPerRound, int tileSize) {
+        this(parallelism, stepsPerRound, tileSize, LoadBalancer.DEFAULT_TOLERANCE);
+    }
+
+    /**
+     *  @param tolerance a max excess of the predicted cost of the slowest partition
+     *                   over the mean; the partitions are rebalanced beyond it;
+     */
+    public TiledSimulationExecutor(int parallelism, int stepsPerRound, int tileSize, double tolerance) {
+        if (parallelism < 1 || stepsPerRound < 1 || tileSize < 1)
+            throw new IllegalArgumentException("Parallelism, steps per round and " +
+                    "tile size have to be positive.");
+        this.parallelism = parallelism;
+        this.stepsPerRound = stepsPerRound;
+        this.tileSize = tileSize;
+        this.loadBalancer = new LoadBalancer(parallelism, tolerance);
+        this.partitionCreatures = new int[parallelism];
+        this.partitionTiles = new int[parallelism];
+        this.partitionCosts = new long[parallelism];
+        this.subtaskCosts = new long[parallelism * SUBTASKS_PER_PARTITION];
+        this.stepSeeds = new long[stepsPerRound];
+        this.subtaskVisits = new FoodContention.Visits[parallelism * SUBTASKS_PER_PARTITION];
+        for (int i = 0; i < subtaskVisits.length; i++)
+            subtaskVisits[i] = new FoodContention.Visits();
+    }
+
+    /**
+     *  Runs the simulation until {@param rounds} rounds are performed
+     *  or all the creatures die. The calling thread waits until the end of the execution.
+     *  @param population creatures that participate in the simulation;
+     *  @param statisticsCollector a collector of the simulation statistics;
+     *  @param rounds a number of rounds to perform;
+     */
+    public void runRounds(QuadrantPopulation population,
+                          StatisticsCollector statisticsCollector, int rounds)
+    {
+        this.population = population;
+        this.creatureSteps = 0;
+        this.steppingNanos = 0;
+        this.roundsPerformed = 0;
+        this.contention = new FoodContention(parallelism, population.getSimulationMap());
+
+        Map simulationMap = population.getSimulationMap();
+        int side = effectiveTileSize(simulationMap);
+        int tileRows = (simulationMap.getNumOfRows() - 1) / side + 1;
+        int tileColumns = (simulationMap.getNumOfColumns() - 1) / side + 1;
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            while (roundsPerformed < rounds && population.size() > 0
+                   && !statisticsCollector.isConverged()) {
+                int size = population.size();
+                bucketByTiles(side, tileRows, tileColumns);
+
+                int partitions = loadBalancer.plan(tileStarts, tileRows * tileColumns);
+                int subtasks = partitions * SUBTASKS_PER_PARTITION;
+                for (int p = 0; p < partitions; p++) {
+                    int from = loadBalancer.getStart(p), to = loadBalancer.getStart(p + 1);
+                    partitionCreatures[p] = to - from;
+                    partitionTiles[p] = countOccupiedTiles(from, to);
+                }
+                Arrays.fill(subtaskCosts, 0, subtasks, 0);
+
+                long startTime = System.nanoTime();
+                pool.invoke(ForkJoinTask.adapt(() -> stepRound(partitions)));
+                long roundSteppingNanos = System.nanoTime() - startTime;
+                for (int p = 0; p < partitions; p++) {
+                    partitionCosts[p] = 0;
+                    for (int s = 0; s < SUBTASKS_PER_PARTITION; s++)
+                        partitionCosts[p] += subtaskCosts[p * SUBTASKS_PER_PARTITION + s];
+                }
+                loadBalancer.record(partitionCreatures, partitionTiles, partitionCosts, partitions);
+                steppingNanos += roundSteppingNanos;
+                if (RoundProfiler.isActive())
+                    RoundProfiler.recordElapsed(RoundProfiler.Phase.STEPPING, roundSteppingNanos,
+                            population.getRound() + 1, -1);
+                creatureSteps += (long) size * stepsPerRound;
+
+                RoundBoundary.finishRound(population, statisticsCollector, stepsPerRound, eventLog);
+                roundsPerformed++;
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     *  Makes the steps of a round and resolves the food contention; it's called
+     *  in the pool, so the phases don't wake the workers from the outside.
+     */
+    private void stepRound(int partitions) {
+        for (int step = 0; step < stepsPerRound; step++)
+            stepSeeds[step] = population.getStepSeed(step);
+        List<MoveTask> tasks = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions; p++)
+            tasks.add(new MoveTask(p, 0, SUBTASKS_PER_PARTITION));
+        ForkJoinTask.invokeAll(tasks);
+        new ResolveTask(0, contention.getSegments()).invoke();
+    }
+
+    /**
+     *  @return a side of a tile that keeps the number of tiles under {@code MAX_TILES}.
+     */
+    private int effectiveTileSize(Map simulationMap) {
+        int side = tileSize;
+        while ((long) ((simulationMap.getNumOfRows() - 1) / side + 1)
+                    * ((simulationMap.getNumOfColumns() - 1) / side + 1) > MAX_TILES)
+            side *= 2;
+        return side;
+    }
+
+    /**
+     *  Orders the indexes of the creatures by tiles using a counting sort.
+     */
+    private void bucketByTiles(int side, int tileRows, int tileColumns) {
+        int size = population.size();
+        int tiles = tileRows * tileColumns;
+
+        if (order.length < size)
+            order = new int[Math.max(size, order.length + (order.length >> 1))];
+        if (tileStarts.length != tiles + 1)
+            tileStarts = new int[tiles + 1];
+        else
+            Arrays.fill(tileStarts, 0);
+
+        // count creatures of each tile;
+        for (int i = 0; i < size; i++)
+            tileStarts[tileOf(i, side, tileColumns) + 1]++;
+        for (int t = 0; t < tiles; t++)
+            tileStarts[t + 1] += tileStarts[t];
+
+        // place indexes; "tileStarts[t]" is used as a cursor and restored afterwards;
+        for (int i = 0; i < size; i++)
+            order[tileStarts[tileOf(i, side, tileColumns)]++] = i;
+        for (int t = tiles; t > 0; t--)
+            tileStarts[t] = tileStarts[t - 1];
+        tileStarts[0] = 0;
+    }
+
+    private int tileOf(int index, int side, int tileColumns) {
+        return (population.getRow(index) / side) * tileColumns + population.getColumn(index) / side;
+    }
+
+    /**
+     *  @return a tile whose creatures include the index {@param position} of "order";
+     *  the last of the tiles which start at it, so the empty tiles are skipped.
+     */
+    private int tileAt(int position) {
+        int low = 0, high = tileStarts.length - 2;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (tileStarts[middle] <= position)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+        return low;
+    }
+
+    /**
+     *  @return a number of the tiles which have creatures in a range [from, to) of "order";
+     *  the range can start and end inside a tile.
+     */
+    private int countOccupiedTiles(int from, int to) {
+        int occupied = 0;
+        for (int position = from, tile = tileAt(from); position < to; tile++) {
+            int end = Math.min(tileStarts[tile + 1], to);
+            if (end > position) {
+                occupied++;
+                position = end;
+            }
+        }
+        return occupied;
+    }
+
+    /**
+     *  A task that makes the steps of a round for the creatures of the subtasks
+     *  [firstSubtask, lastSubtask) of a partition. It splits the range in halves,
+     *  so the other workers can steal them; each subtask measures its cost.
+     */
+    private class MoveTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int partition;
+        private final int firstSubtask;
+        private final int lastSubtask;
+
+        MoveTask(int partition, int firstSubtask, int lastSubtask) {
+            this.partition = partition;
+            this.firstSubtask = firstSubtask;
+            this.lastSubtask = lastSubtask;
+        }
+
+        @Override
+        protected void compute() {
+            if (lastSubtask - firstSubtask > 1) {
+                int middle = (firstSubtask + lastSubtask) >>> 1;
+                invokeAll(new MoveTask(partition, firstSubtask, middle),
+                          new MoveTask(partition, middle, lastSubtask));
+                return;
+            }
+            long start = cpuTimeSupported ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+
+            int partitionFrom = loadBalancer.getStart(partition);
+            int length = loadBalancer.getStart(partition + 1) - partitionFrom;
+            int from = partitionFrom + (int) ((long) length * firstSubtask / SUBTASKS_PER_PARTITION);
+            int to = partitionFrom + (int) ((long) length * lastSubtask / SUBTASKS_PER_PARTITION);
+            int subtask = partition * SUBTASKS_PER_PARTITION + firstSubtask;
+            FoodContention.Visits visits = subtaskVisits[subtask];
+            population.startRound(order, from, to);
+            for (int block = from; block < to; block += FoodContention.BLOCK_CREATURES) {
+                int blockTo = Math.min(block + FoodContention.BLOCK_CREATURES, to);
+                for (int i = block; i < blockTo; i++)
+                    contention.walk(visits, population, order[i], stepSeeds);
+                contention.publish(visits);
+            }
+
+            subtaskCosts[subtask] += (cpuTimeSupported ? threads.getCurrentThreadCpuTime()
+                                                       : System.nanoTime()) - start;
+        }
+    }
+
+    /**
+     *  A task that lets the first visitors of the map units of the segments
+     *  [firstSegment, lastSegment) of the contention eat.
+     */
+    private class ResolveTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int firstSegment;
+        private final int lastSegment;
+
+        ResolveTask(int firstSegment, int lastSegment) {
+            this.firstSegment = firstSegment;
+            this.lastSegment = lastSegment;
+        }
+
+        @Override
+        protected void compute() {
+            if (lastSegment - firstSegment > 1) {
+                int middle = (firstSegment + lastSegment) >>> 1;
+                invokeAll(new ResolveTask(firstSegment, middle),
+                          new ResolveTask(middle, lastSegment));
+                return;
+            }
+            contention.resolve(firstSegment, population);
+        }
+    }
+
+    /**
+     *  Sets a log which gets the state of the population after each round.
+     *  @param eventLog a log or null to stop logging;
+     */
+    public void setEventLog(EventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    /* Getters */
+    public int getRoundsPerformed() {
+        return roundsPerformed;
+    }
+
+    public int getStepsPerRound() {
+        return stepsPerRound;
+    }
+
+    /**
+     *  @return max / mean of the costs of the partitions in the last round;
+     *  1 means that the workers were loaded evenly.
+     */
+    public double getImbalance() {
+        return loadBalancer.getImbalance();
+    }
+
+    /**
+     *  @return a number of times the partitions have been rebalanced.
+     */
+    public int getRebalances() {
+        return loadBalancer.getRebalances();
+    }
+
+    /**
+     *  @return a number of creature-steps performed during the last run.
+     */
+    public long getCreatureSteps() {
+        return creatureSteps;
+    }
+
+    /**
+     *  @return a throughput of the stepping phase of the last run
+     *  in creature-steps per second.
+     */
+    public double getCreatureStepsPerSecond() {
+        return (steppingNanos == 0) ? 0 : creatureSteps * 1e9 / steppingNanos;
+    }
+}
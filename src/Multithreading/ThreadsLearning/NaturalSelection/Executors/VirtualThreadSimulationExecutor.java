@@ -0,0 +1,198 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Executors;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Inhabitants.Quadrant;
+import Multithreading.ThreadsLearning.NaturalSelection.Map.Map;
+import Multithreading.ThreadsLearning.NaturalSelection.Profiling.RoundProfiler;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.StatisticsCollector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Phaser;
+
+/**
+ *  An executor that keeps the "one thread per creature" model: each {@code Quadrant}
+ *  runs on its own virtual thread, so a million creatures don't need a million
+ *  platform threads.
+ *  <p>Rounds are coordinated by a {@code Phaser} instead of {@code scheduleAtFixedRate}.
+ *     Each round takes two phases:</p>
+ *  <ol>
+ *      <li>boundary: the coordinator (the calling thread) collects statistics, renews
+ *          the food and starts the newborns while the creatures wait;</li>
+ *      <li>stepping: the creatures perform their steps. A creature that died
+ *          deregisters from the phaser and its thread ends.</li>
+ *  </ol>
+ *  <p>A phaser can't have more than 65535 parties, so the creatures are registered
+ *     in child phasers of a root one (tiered phasers). The coordinator is a party of
+ *     the root phaser. Each batch of started creatures gets new child phasers created
+ *     with all its parties at once: registering in a child whose parties have all
+ *     arrived would wait for the end of the phase, which the coordinator holds.</p>
+ *  <p>Since virtual threads don't hold a carrier thread while sleeping,
+ *     creatures can still sleep after each step.</p>
+ */
+public class VirtualThreadSimulationExecutor {
+    // the max number of creatures registered in one child phaser;
+    private static final int MAX_PARTIES_PER_PHASER = 10_000;
+
+    // params of execution
+    private final int stepsPerRound;
+    private final long sleepAfterStepMillis;
+
+    // the coordinator of the rounds of the current run;
+    private Phaser rootPhaser;
+
+    // creatures that were born during the current round;
+    private final Queue<Quadrant> newborns = new ConcurrentLinkedQueue<>();
+
+    // it is true when the creatures have to stop after the current boundary;
+    private volatile boolean stopping;
+
+    // a number of performed rounds;
+    private int roundsPerformed;
+
+    public VirtualThreadSimulationExecutor() {
+        this(TickSimulationExecutor.DEFAULT_STEPS_PER_ROUND, 0);
+    }
+
+    /**
+     *  @param stepsPerRound a number of steps of each creature during a round;
+     *  @param sleepAfterStepMillis time which a creature sleeps after each step;
+     *                              zero means no sleeping;
+     */
+    public VirtualThreadSimulationExecutor(int stepsPerRound, long sleepAfterStepMillis) {
+        if (stepsPerRound < 1 || sleepAfterStepMillis < 0)
+            throw new IllegalArgumentException("Steps per round have to be positive " +
+                    "and sleeping time can't be negative.");
+        this.stepsPerRound = stepsPerRound;
+        this.sleepAfterStepMillis = sleepAfterStepMillis;
+    }
+
+    /**
+     *  Runs the simulation until {@param rounds} rounds are performed
+     *  or all the creatures die. The calling thread coordinates the rounds.
+     *  @param initialQuadrants creatures that start the simulation;
+     *  @param simulationMap a map where the simulation takes place;
+     *  @param statisticsCollector a collector of the simulation statistics;
+     *  @param rounds a number of rounds to perform;
+     */
+    public void runRounds(List<Quadrant> initialQuadrants, Map simulationMap,
+                          StatisticsCollector statisticsCollector, int rounds)
+    {
+        // the coordinator is a party of the root phaser;
+        rootPhaser = new Phaser(1);
+        newborns.clear();
+        stopping = rounds <= 0;
+        roundsPerformed = 0;
+
+        startCreatures(initialQuadrants);
+
+        // the first boundary: all the creatures are started;
+        rootPhaser.arriveAndAwaitAdvance();
+
+        while (!stopping) {
+            // wait until all the creatures finish stepping;
+            rootPhaser.arriveAndAwaitAdvance();
+
+            // the round boundary; the creatures are waiting for its end;
+            int round = roundsPerformed + 1;
+            long statisticsStart = RoundProfiler.start();
+            statisticsCollector.addFoodPlaced(simulationMap.getFoodPlaced());
+            statisticsCollector.performStatsCollection();
+            statisticsCollector.notifyWaiters();
+            RoundProfiler.record(RoundProfiler.Phase.STATISTICS, statisticsStart, round, -1);
+
+            long foodStart = RoundProfiler.start();
+            simulationMap.clearMapFood();
+            simulationMap.fillMapWithFood();
+            RoundProfiler.record(RoundProfiler.Phase.FOOD_RESET, foodStart, round, -1);
+
+            long birthsStart = RoundProfiler.start();
+            List<Quadrant> roundNewborns = new ArrayList<>(newborns.size());
+            Quadrant newborn;
+            while ((newborn = newborns.poll()) != null)
+                roundNewborns.add(newborn);
+            startCreatures(roundNewborns);
+            RoundProfiler.record(RoundProfiler.Phase.BIRTHS, birthsStart, round, -1);
+
+            roundsPerformed++;
+            // a child phaser leaves the root one when all its creatures have died,
+            // so the coordinator is the only party if there are no creatures;
+            stopping = roundsPerformed >= rounds || rootPhaser.getRegisteredParties() == 1
+                       || statisticsCollector.isConverged();
+
+            rootPhaser.arriveAndAwaitAdvance();
+        }
+
+        // the creatures leave their phasers after the last boundary;
+        rootPhaser.arriveAndDeregister();
+    }
+
+    /**
+     *  Registers creatures in new child phasers and starts their virtual threads.
+     *  The creatures wait for the end of the current boundary phase.
+     *  This method is invoked only by the coordinator.
+     */
+    private void startCreatures(List<Quadrant> quadrants) {
+        for (int from = 0; from < quadrants.size(); from += MAX_PARTIES_PER_PHASER) {
+            int to = Math.min(from + MAX_PARTIES_PER_PHASER, quadrants.size());
+            final Phaser phaser = new Phaser(rootPhaser, to - from);
+
+            for (var quadrant : quadrants.subList(from, to)) {
+                Thread.ofVirtual()
+                      .name("creature-" + quadrant.UNIQUE_ID)
+                      .start(() -> live(quadrant, phaser));
+            }
+        }
+    }
+
+    /**
+     *  The life of a creature on its virtual thread.
+     *  @param phaser a child phaser where the creature is registered;
+     */
+    private void live(Quadrant quadrant, Phaser phaser) {
+        while (true) {
+            // wait for the end of the round boundary;
+            phaser.arriveAndAwaitAdvance();
+            if (stopping || Thread.currentThread().isInterrupted()) {
+                phaser.arriveAndDeregister();
+                return;
+            }
+
+            quadrant.startRound();
+            for (int step = 0; step < stepsPerRound; step++) {
+                quadrant.performStep();
+
+                if (sleepAfterStepMillis > 0) {
+                    try {
+                        Thread.sleep(sleepAfterStepMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+
+            quadrant.reportRound();
+            if (quadrant.die()) {
+                // the thread of a dead creature just ends;
+                phaser.arriveAndDeregister();
+                return;
+            }
+            if (quadrant.canReproduce())
+                newborns.add(quadrant.reproduce());
+
+            // wait until all the creatures finish stepping;
+            phaser.arriveAndAwaitAdvance();
+        }
+    }
+
+    /* Getters */
+    public int getRoundsPerformed() {
+        return roundsPerformed;
+    }
+
+    public int getStepsPerRound() {
+        return stepsPerRound;
+    }
+}
@@ -0,0 +1,353 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Experiments;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Executors.PopulationSimulationExecutor;
+import Multithreading.ThreadsLearning.NaturalSelection.Executors.TickSimulationExecutor;
+import Multithreading.ThreadsLearning.NaturalSelection.Inhabitants.QuadrantPopulation;
+import Multithreading.ThreadsLearning.NaturalSelection.Map.Map;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.ConvergenceDetector;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.SplitMix;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.StatisticsCollector;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ *  Runs many independent simulations over a grid of parameters: map size, food
+ *  rate, initial population and reproduce threshold. Each configuration is run
+ *  several times (replicas) with different seeds.
+ *  <p>A replica is a whole simulation performed by one thread of a fixed pool,
+ *     so the sweep uses at most {@code threads} cores and the replicas don't
+ *     contend with each other. When all the replicas of a configuration are
+ *     finished, their population series are aggregated (mean, standard deviation
+ *     and 95% confidence interval of each round) and passed to the consumer,
+ *     so results are streamed in the order the configurations finish.</p>
+ *  <p>Replicas are reproducible: the seed of a replica is derived from the master
+ *     seed, the parameters of the configuration and the index of the replica.
+ *     So the same configuration gets the same seeds in any grid, and a
+ *     {@code ResultCache} can return the results of the points that were
+ *     simulated by previous sweeps.</p>
+ *  <p>If the sweep runs until convergence, a replica stops when a
+ *     {@code ConvergenceDetector} detects the equilibrium or extinction. The rest
+ *     of its series is filled with the mean population of the equilibrium window
+ *     (or zeros), so the remaining rounds cost nothing.</p>
+ */
+public class ParameterSweep {
+    // a max size of the memory tier of the cache used by "main";
+    private static final long CACHE_MEMORY_BYTES = 64L << 20;
+
+    // a quantile of the normal distribution for the 95% confidence interval;
+    private static final double Z_95 = 1.959964;
+
+    /**
+     *  A configuration of a simulation.
+     */
+    public record Configuration(int rows, int columns, double foodRate,
+                                int initialCreatures, int reproduceThreshold) {}
+
+    /**
+     *  The population of each round of one replica and the round
+     *  when it has converged (zero if it hasn't).
+     */
+    public record Replica(int[] alive, int convergedRound) {}
+
+    /**
+     *  The aggregated population of each round of a configuration;
+     *  arrays have an element per round.
+     */
+    public record Result(Configuration configuration, int replicas, double[] mean,
+                         double[] standardDeviation, double[] confidenceInterval,
+                         int convergedReplicas, double meanConvergedRound) {}
+
+    // params of execution
+    private final int threads;
+    private final int replicas;
+    private final int rounds;
+    private final long masterSeed;
+    private final boolean untilConverged;
+
+    // an optional cache of the results of replicas;
+    private ResultCache resultCache;
+
+    public ParameterSweep(int threads, int replicas, int rounds, long masterSeed) {
+        this(threads, replicas, rounds, masterSeed, false);
+    }
+
+    /**
+     *  @param untilConverged true if a replica should stop when its population
+     *                        has converged; {@param rounds} is the max number of rounds then;
+     */
+    public ParameterSweep(int threads, int replicas, int rounds, long masterSeed,
+                          boolean untilConverged)
+    {
+        if (threads < 1 || replicas < 1 || rounds < 1)
+            throw new IllegalArgumentException("Threads, replicas and rounds have to be positive.");
+        this.threads = threads;
+        this.replicas = replicas;
+        this.rounds = rounds;
+        this.masterSeed = masterSeed;
+        this.untilConverged = untilConverged;
+    }
+
+    /**
+     *  @return configurations of all the combinations of the given values.
+     */
+    public static List<Configuration> grid(List<int[]> sizes, List<Double> foodRates,
+                                           List<Integer> initialCreatures,
+                                           List<Integer> reproduceThresholds)
+    {
+        List<Configuration> configurations = new ArrayList<>();
+        for (int[] size : sizes)
+            for (double foodRate : foodRates)
+                for (int creatures : initialCreatures)
+                    for (int threshold : reproduceThresholds)
+                        configurations.add(new Configuration(size[0], size[1], foodRate,
+                                creatures, threshold));
+        return configurations;
+    }
+
+    /**
+     *  Runs all the replicas of {@param configurations}. The calling thread
+     *  waits until the end of the sweep.
+     *  @param consumer receives the result of each configuration when all its
+     *                  replicas are finished; it is called by one thread at a time;
+     *  @throws InterruptedException if the calling thread was interrupted while waiting;
+     */
+    public void run(List<Configuration> configurations, Consumer<Result> consumer)
+            throws InterruptedException
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>(configurations.size() * replicas);
+            for (final Configuration configuration : configurations) {
+                final Replica[] series = new Replica[replicas];
+                final AtomicInteger remaining = new AtomicInteger(replicas);
+
+                for (int r = 0; r < replicas; r++) {
+                    final int replica = r;
+                    futures.add(pool.submit(() -> {
+                        series[replica] = runReplica(configuration,
+                                replicaSeed(configuration, replica));
+                        // the last finished replica aggregates the results;
+                        if (remaining.decrementAndGet() == 0) {
+                            Result result = aggregate(configuration, series);
+                            synchronized (consumer) {
+                                consumer.accept(result);
+                            }
+                        }
+                        return null;
+                    }));
+                }
+            }
+
+            for (var future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("A replica has failed.", e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     *  @return a seed of the replica number {@param replica} of {@param configuration}.
+     */
+    public long replicaSeed(Configuration configuration, int replica) {
+        String key = ResultCache.key(configuration.rows(), configuration.columns(),
+                configuration.foodRate(), configuration.initialCreatures(),
+                configuration.reproduceThreshold());
+        long configurationHash = Long.parseUnsignedLong(key.substring(0, 16), 16);
+        return SplitMix.hash(SplitMix.hash(masterSeed, configurationHash), replica);
+    }
+
+    /**
+     *  Sets a cache of the results of replicas; null means no caching.
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     *  Runs one simulation in the calling thread or takes its statistics from the cache.
+     *  @return a number of alive creatures of each round; a round after
+     *  the extinction has zero creatures;
+     */
+    public Replica runReplica(Configuration configuration, long seed) throws InterruptedException {
+        StatisticsCollector statisticsCollector;
+        if (resultCache == null) {
+            statisticsCollector = simulate(configuration, seed);
+        } else {
+            String key = ResultCache.key("replica-v1", configuration.rows(), configuration.columns(),
+                    configuration.foodRate(), configuration.initialCreatures(),
+                    configuration.reproduceThreshold(), seed, rounds, untilConverged,
+                    ConvergenceDetector.DEFAULT_WINDOW, ConvergenceDetector.DEFAULT_TOLERANCE,
+                    TickSimulationExecutor.DEFAULT_STEPS_PER_ROUND);
+            statisticsCollector = resultCache.get(key);
+            if (statisticsCollector == null) {
+                statisticsCollector = simulate(configuration, seed);
+                resultCache.put(key, statisticsCollector);
+            }
+        }
+
+        int[] alive = new int[rounds];
+        int collected = statisticsCollector.getRoundsCollected();
+        for (int day = 0; day < collected; day++)
+            alive[day] = statisticsCollector.getAlive(day);
+        if (!untilConverged)
+            return new Replica(alive, 0);
+
+        // the detector is deterministic, so its state is restored from the history;
+        ConvergenceDetector detector = new ConvergenceDetector();
+        for (int day = 0; day < collected; day++)
+            detector.addRound(alive[day]);
+        if (!detector.isConverged())
+            return new Replica(alive, 0);
+        Arrays.fill(alive, collected, rounds, (int) Math.round(detector.getEquilibriumMean()));
+        return new Replica(alive, detector.getDetectedRound());
+    }
+
+    /**
+     *  Runs one simulation in the calling thread.
+     *  @return the statistics of the simulation;
+     */
+    private StatisticsCollector simulate(Configuration configuration, long seed)
+            throws InterruptedException
+    {
+        Map simulationMap = new Map(configuration.rows(), configuration.columns(), seed,
+                configuration.foodRate());
+        QuadrantPopulation population = new QuadrantPopulation(simulationMap,
+                configuration.initialCreatures(), seed, configuration.reproduceThreshold());
+        population.spawnOnPerimeter(configuration.initialCreatures());
+
+        StatisticsCollector statisticsCollector = new StatisticsCollector();
+        if (untilConverged)
+            statisticsCollector.setConvergenceDetector(new ConvergenceDetector());
+        new PopulationSimulationExecutor(1).runRounds(population, statisticsCollector, rounds);
+        return statisticsCollector;
+    }
+
+    /**
+     *  @return the mean, standard deviation and 95% confidence interval
+     *  of each round of the population {@param series} of the replicas.
+     */
+    private Result aggregate(Configuration configuration, Replica[] series) {
+        double[] mean = new double[rounds];
+        double[] standardDeviation = new double[rounds];
+        double[] confidenceInterval = new double[rounds];
+
+        int n = series.length;
+        for (int day = 0; day < rounds; day++) {
+            double sum = 0;
+            for (var replica : series)
+                sum += replica.alive()[day];
+            mean[day] = sum / n;
+
+            double squares = 0;
+            for (var replica : series) {
+                double deviation = replica.alive()[day] - mean[day];
+                squares += deviation * deviation;
+            }
+            standardDeviation[day] = (n > 1) ? Math.sqrt(squares / (n - 1)) : 0;
+            confidenceInterval[day] = Z_95 * standardDeviation[day] / Math.sqrt(n);
+        }
+
+        int convergedReplicas = 0;
+        double convergedRounds = 0;
+        for (var replica : series) {
+            if (replica.convergedRound() != 0) {
+                convergedReplicas++;
+                convergedRounds += replica.convergedRound();
+            }
+        }
+        return new Result(configuration, n, mean, standardDeviation, confidenceInterval,
+                convergedReplicas, (convergedReplicas == 0) ? 0 : convergedRounds / convergedReplicas);
+    }
+
+    /**
+     *  Runs a sweep and prints the results as CSV lines, one per configuration and round.
+     *  <p>Usage: {@code ParameterSweep [--sizes 25x25,100x100] [--food 0.05,0.1]
+     *     [--creatures 10,130] [--threshold 2,3] [--replicas 8] [--rounds 30]
+     *     [--threads N] [--seed S] [--converge] [--cache directory]}</p>
+     */
+    public static void main(String[] args) throws InterruptedException {
+        List<int[]> sizes = List.of(new int[] {25, 25});
+        List<Double> foodRates = List.of(Map.DEFAULT_FOOD_RATE);
+        List<Integer> creatures = List.of(130);
+        List<Integer> thresholds = List.of(QuadrantPopulation.DEFAULT_REPRODUCE_THRESHOLD);
+        int replicas = 8;
+        int rounds = 30;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 42;
+        boolean untilConverged = false;
+        ResultCache resultCache = null;
+
+        for (int i = 0; i < args.length; i += 2) {
+            if (args[i].equals("--converge")) {
+                untilConverged = true;
+                i--;
+                continue;
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--sizes" -> sizes = parseList(value, size -> {
+                    String[] sides = size.split("x");
+                    return new int[] {Integer.parseInt(sides[0]), Integer.parseInt(sides[1])};
+                });
+                case "--food" -> foodRates = parseList(value, Double::parseDouble);
+                case "--creatures" -> creatures = parseList(value, Integer::parseInt);
+                case "--threshold" -> thresholds = parseList(value, Integer::parseInt);
+                case "--replicas" -> replicas = Integer.parseInt(value);
+                case "--rounds" -> rounds = Integer.parseInt(value);
+                case "--threads" -> threads = Integer.parseInt(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--cache" -> resultCache = new ResultCache(CACHE_MEMORY_BYTES, Path.of(value));
+                default -> throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+
+        List<Configuration> configurations = grid(sizes, foodRates, creatures, thresholds);
+        System.out.println("rows,columns,food_rate,initial_creatures,reproduce_threshold," +
+                "round,mean,stddev,ci95,converged_replicas,mean_converged_round");
+        long startTime = System.nanoTime();
+        ParameterSweep sweep = new ParameterSweep(threads, replicas, rounds, seed, untilConverged);
+        sweep.setResultCache(resultCache);
+        sweep.run(configurations, result -> {
+            Configuration c = result.configuration();
+            var sb = new StringBuilder();
+            for (int day = 0; day < result.mean().length; day++) {
+                sb.append(String.format(Locale.ROOT, "%d,%d,%.4f,%d,%d,%d,%.2f,%.2f,%.2f,%d,%.1f%n",
+                        c.rows(), c.columns(), c.foodRate(), c.initialCreatures(),
+                        c.reproduceThreshold(), day + 1, result.mean()[day],
+                        result.standardDeviation()[day], result.confidenceInterval()[day],
+                        result.convergedReplicas(), result.meanConvergedRound()));
+            }
+            System.out.print(sb);
+        });
+        System.err.printf("(*) %d configurations x %d replicas in %.1f s%n", configurations.size(),
+                replicas, (System.nanoTime() - startTime) / 1e9);
+        if (resultCache != null)
+            System.err.printf("(*) Cache: %d memory hits, %d disk hits, %d misses%n",
+                    resultCache.getMemoryHits(), resultCache.getDiskHits(), resultCache.getMisses());
+    }
+
+    private static <T> List<T> parseList(String values, Function<String, T> parser) {
+        List<T> list = new ArrayList<>();
+        for (String value : values.split(","))
+            list.add(parser.apply(value.trim()));
+        return list;
+    }
+}
@@ -0,0 +1,203 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Experiments;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.StatisticsCollector;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  A content-addressed cache of simulation results. A key is a SHA-256 hash of all
+ *  the parameters that define a run (see {@code key}), and a value is the history
+ *  of a {@code StatisticsCollector} in the compact binary form.
+ *  <p>There are two tiers:</p>
+ *  <ol>
+ *      <li>memory: an LRU map whose total size of values is limited by
+ *          {@code maxMemoryBytes}; the least recently used values are evicted;</li>
+ *      <li>disk (optional): a directory with a file per key. A value found on
+ *          the disk is moved to the memory tier.</li>
+ *  </ol>
+ *  <p>Each hit returns a new collector, so a caller can't change a cached history.
+ *     The cache can be used by multiple threads.</p>
+ */
+public class ResultCache {
+    // an extension of the files of the disk tier;
+    private static final String FILE_EXTENSION = ".stats";
+
+    // params of the cache
+    private final long maxMemoryBytes;
+    private final Path directory;
+
+    // the memory tier in the access order: the eldest entry is the least recently used;
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+
+    // statistics of the cache
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     *  @param maxMemoryBytes a max total size of values of the memory tier;
+     *  @param directory a directory of the disk tier or null if there is no disk tier;
+     */
+    public ResultCache(long maxMemoryBytes, Path directory) {
+        if (maxMemoryBytes < 0)
+            throw new IllegalArgumentException("Memory size can't be negative.");
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.directory = directory;
+        if (directory != null) {
+            try {
+                Files.createDirectories(directory);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     *  @return a content-addressed key of the given parameters of a run.
+     *  The parameters are converted to strings, so the same values always give the same key.
+     */
+    public static String key(Object... parameters) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            for (Object parameter : parameters) {
+                digest.update(String.valueOf(parameter).getBytes(StandardCharsets.UTF_8));
+                // a separator, so ("1", "23") and ("12", "3") give different keys;
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 isn't supported.", e);
+        }
+    }
+
+    /**
+     *  @return a copy of the cached history of {@param key} or null if there is no such key.
+     */
+    public StatisticsCollector get(String key) {
+        byte[] value;
+        synchronized (this) {
+            value = memory.get(key);
+        }
+        if (value != null) {
+            memoryHits.incrementAndGet();
+            return decode(value);
+        }
+
+        value = readFile(key);
+        if (value != null) {
+            diskHits.incrementAndGet();
+            putInMemory(key, value);
+            return decode(value);
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     *  Stores the history of {@param statisticsCollector} in both tiers.
+     */
+    public void put(String key, StatisticsCollector statisticsCollector) {
+        byte[] value = encode(statisticsCollector);
+        putInMemory(key, value);
+        writeFile(key, value);
+    }
+
+    private synchronized void putInMemory(String key, byte[] value) {
+        if (value.length > maxMemoryBytes)
+            return;
+        byte[] previous = memory.put(key, value);
+        memoryBytes += value.length - ((previous == null) ? 0 : previous.length);
+
+        // evict the least recently used values;
+        Iterator<Map.Entry<String, byte[]>> iterator = memory.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes && iterator.hasNext()) {
+            memoryBytes -= iterator.next().getValue().length;
+            iterator.remove();
+        }
+    }
+
+    private byte[] readFile(String key) {
+        if (directory == null)
+            return null;
+        try {
+            return Files.readAllBytes(directory.resolve(key + FILE_EXTENSION));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     *  Writes a value to a temporary file and renames it, so a reader
+     *  never sees a partially written value.
+     */
+    private void writeFile(String key, byte[] value) {
+        if (directory == null)
+            return;
+        try {
+            Path temporary = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temporary, value);
+            Files.move(temporary, directory.resolve(key + FILE_EXTENSION),
+                       StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] encode(StatisticsCollector statisticsCollector) {
+        try {
+            var bytes = new ByteArrayOutputStream();
+            var out = new DataOutputStream(bytes);
+            statisticsCollector.writeHistory(out);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static StatisticsCollector decode(byte[] value) {
+        try {
+            return StatisticsCollector.readHistory(new DataInputStream(new ByteArrayInputStream(value)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /* Getters */
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+}
@@ -117,29 +117,23 @@ public abstract class AbstractLivable implements Livable {
     }
 
     /**
-     * This implementation only works correctly for a square matrix.
-     *
-     *      row - column || row + column == 0 or
-     *      abs(row - column) = map.row (is equal to map.column) --> return true;
+     * @return true if a creature is in one of the four corners of the map.
+     * Works correctly for square and non-square maps.
      */
     protected boolean isInCorner() {
-        return (row == simulationMap.getNumOfRows() - 1 && row - column == 0)
-                || row + column == 0
-                || Math.abs(row - column) == simulationMap.getNumOfRows() - 1;
+        return (row == 0 || row == simulationMap.getNumOfRows() - 1)
+                && (column == 0 || column == simulationMap.getNumOfColumns() - 1);
     }
 
     /**
-     * This implementation (as a method "boolean isInCorner()") only works
-     * correctly for a square matrix.
-    */
+     * @return true if a creature is next to a side of the map (including corners).
+     */
     protected boolean isOnSide() {
         return row == 0 || column == 0 || row == simulationMap.getNumOfRows() - 1
                 || column == simulationMap.getNumOfColumns() - 1;
     }
 
     /**
-     * This implementation (as a method "boolean isInCorner()") only works
-     * correctly for a square matrix.
      * @return null if a creature isn't in a corner. Otherwise, it returns
      *  a corner in which a creature is.
      */
@@ -147,24 +141,14 @@ public abstract class AbstractLivable implements Livable {
         if (!isInCorner())
             return null;
 
-        // check all 4 variants
-        if (row + column == 0)
-            return Orientation.LEFT_TOP_CORNER;
-        if (row - column == 0)
-            return Orientation.RIGHT_BOTTOM_CORNER;
-
-        // the next 2 checks work correctly. This is because the other
-        // cases were excluded in the check "!isInCorner()".
         if (row == 0)
-            return Orientation.RIGHT_TOP_CORNER;
+            return (column == 0) ? Orientation.LEFT_TOP_CORNER : Orientation.RIGHT_TOP_CORNER;
         else
-            return Orientation.LEFT_BOTTOM_CORNER; // left bottom corner
+            return (column == 0) ? Orientation.LEFT_BOTTOM_CORNER : Orientation.RIGHT_BOTTOM_CORNER;
     }
 
     /**
-     * This implementation (as a method "boolean isInCorner()") only works
-     * correctly for a square matrix.
-     * @return null if a creature isn't in a corner. Otherwise, it returns
+     * @return null if a creature isn't next to a side. Otherwise, it returns
      *  a side near which a creature is.
      */
     protected Orientation getSideType() {
@@ -0,0 +1,52 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Inhabitants;
+
+/**
+ * An interface that provides the same methods as {@code Livable}, but each of
+ * them is applied to a range of creatures [from, to) at once. The implementor
+ * stores creatures by indexes instead of objects.
+ */
+public interface LivableRange {
+    /**
+     *  The implementor of this interface should implement the ability
+     *  to move for each creature in the range.
+     *  @param seed a seed of the random values used by this call; the implementor
+     *              shouldn't allocate a generator for it;
+     */
+    void move(int from, int to, long seed);
+
+    /**
+     * The implementor of this interface should increase a counter
+     * of eaten food-units of each creature in the range which stands
+     * on a map unit with food.
+     * @return a number of eaten food-units;
+     */
+    int eat(int from, int to);
+
+    /**
+     * This method displays how many food-units the creature has already eaten.
+     * @param index an index of the creature;
+     * @return a number of eaten food-units;
+     */
+    int numHasEatenCurrentRound(int index);
+
+    /**
+     * @param index an index of the creature;
+     * @return "true" if the creature can reproduce a new one.
+     *         Otherwise, false;
+     */
+    boolean canReproduce(int index);
+
+    /**
+     * Marks the creatures in the range which haven't eaten any food-units
+     * during a simulation round as dead.
+     * @return a number of creatures that died;
+     */
+    int die(int from, int to);
+
+    /**
+     * Each alive creature in the range which can reproduce gives one descendant.
+     * Moreover, a counter of eaten food of newborns is set to zero.
+     * @return a number of newborns;
+     */
+    int reproduce(int from, int to);
+}
@@ -0,0 +1,48 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Inhabitants;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.SplitMix;
+
+/**
+ *  A movement kernel shared by {@code Quadrant} and {@code QuadrantPopulation}.
+ *  <p>A creature makes a step left, right, up, down, diagonally or stays at its
+ *     current position. Each coordinate is changed independently: it takes a random
+ *     value among its neighbours that are inside the map, so a creature near a side
+ *     or in a corner can't leave the map. The same rules apply to square and
+ *     non-square maps.</p>
+ *  <p>The bounds are computed without branches and a step doesn't allocate.</p>
+ */
+public final class MoveKernel {
+
+    private MoveKernel() {}
+
+    /**
+     *  @param position a current row or column of a creature;
+     *  @param lastPosition the last row or column of the map;
+     *  @param random32 32 random bits;
+     *  @return a new row or column which is one of {position - 1, position,
+     *  position + 1} that are in a range [0, lastPosition].
+     */
+    public static int step(int position, int lastPosition, int random32) {
+        // (-position >>> 31) is 1 if position > 0;
+        // ((position - lastPosition) >>> 31) is 1 if position < lastPosition;
+        int lower = position - (-position >>> 31);
+        int upper = position + ((position - lastPosition) >>> 31);
+        return lower + SplitMix.bounded(random32, upper - lower + 1);
+    }
+
+    /**
+     *  @param random 64 random bits; the high half moves the row and the low one
+     *                moves the column, so one value is enough for a whole step;
+     *  @return a new row of a creature.
+     */
+    public static int stepRow(int row, int lastRow, long random) {
+        return step(row, lastRow, (int) (random >>> 32));
+    }
+
+    /**
+     *  @return a new column of a creature; it uses the low half of {@param random}.
+     */
+    public static int stepColumn(int column, int lastColumn, long random) {
+        return step(column, lastColumn, (int) random);
+    }
+}
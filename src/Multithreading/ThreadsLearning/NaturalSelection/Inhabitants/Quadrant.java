@@ -2,14 +2,17 @@ package Multithreading.ThreadsLearning.NaturalSelection.Inhabitants;
 
 import Multithreading.ThreadsLearning.NaturalSelection.Executors.SimulationExecutor;
 import Multithreading.ThreadsLearning.NaturalSelection.Map.Map;
-import Multithreading.ThreadsLearning.NaturalSelection.Utilities.LoggerUtility;
+import Multithreading.ThreadsLearning.NaturalSelection.Profiling.RoundProfiler;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.AsyncLogger;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.CreatureRegistry;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.IdAllocator;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.SplitMix;
 import Multithreading.ThreadsLearning.NaturalSelection.Utilities.StatisticsCollector;
 import Multithreading.ThreadsLearning.NaturalSelection.Utilities.TimeSyn;
 
-import java.util.Objects;
-import java.util.Random;;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 /**
  *  A Quadrant is an imaginary creature that will participate in the simulation.
@@ -32,17 +35,18 @@ import java.util.concurrent.ScheduledFuture;
 public class Quadrant extends AbstractLivable implements Runnable {
     // execution time parameters
     private static final long SLEEP_AFTER_STEP = 8;
-    private static final long PERFORM_ITERATION_TIME = 2000; // is equal to 2 seconds
 
-    // a unique id of a current quadrant
-    public final int UNIQUE_ID = nextId++;
-    private static int nextId = 1;
+    // results of the current round which are reported to the statistics;
+    private int currentRound;
+    private int stepsCurrentRound;
+    private int contestedCurrentRound;
 
-    // these are the unique random values which are used to calculate a hash code of the object
-    private final Random random = new Random();
-    private final long uniqueForHashCode1 = random.nextLong();
-    private final long uniqueForHashCode2 = random.nextLong();
-    private final long uniqueForHashCode3 = random.nextLong();
+    // an allocator of ids which can be used by all the threads of the executor;
+    private static final IdAllocator idAllocator = new IdAllocator();
+
+    // a unique id of a current quadrant; it is the key of the quadrant in the registry,
+    // in {@code equals} and {@code hashCode}
+    public final int UNIQUE_ID = idAllocator.nextId();
 
     /**
      *  A simulation executor object that regulates all
@@ -57,28 +61,26 @@ public class Quadrant extends AbstractLivable implements Runnable {
     private final StatisticsCollector statisticsCollector;
 
     /**
-     *  A map that contains {@code ScheduledFuture} objects. These objects
-     *  are linked with the thread that executes them. If there is a task
-     *  that have to be stopped then this task will be found and stopped
-     *  using a method {@code cancel()}.
+     *  A registry that contains {@code ScheduledFuture} objects by ids of creatures.
+     *  These objects are linked with the thread that executes them. If there is
+     *  a task that have to be stopped then this task will be found by the id of
+     *  its creature and stopped using a method {@code cancel()}.
      */
-    private ConcurrentHashMap<Quadrant, ScheduledFuture<?>> scheduledFutureMap;
+    private CreatureRegistry<ScheduledFuture<?>> scheduledFutures;
 
     /**
-     *  A logger that is used to log actions during the execution of the simulation.
+     *  A logger that is used to trace actions during the execution of the simulation.
+     *  It doesn't block the creature: the events are written by a background thread.
      */
-    private static final LoggerUtility loggerUtility = new LoggerUtility(
-            "LoggerQuadrant", LoggerUtility.LoggerType.FILE_LOGGER);
+    private static final AsyncLogger logger = AsyncLogger.global();
 
 
     /**
-     *  This method set a {@code ConcurrentHashMap} as a value of a field of the object;
-     *  @param scheduledFutureMap a map that is set as a field value;
+     *  This method set a {@code CreatureRegistry} as a value of a field of the object;
+     *  @param scheduledFutures a registry that is set as a field value;
      */
-    public void setScheduledFutureMap(ConcurrentHashMap<Quadrant, ScheduledFuture<?>>
-                                                               scheduledFutureMap)
-    {
-        this.scheduledFutureMap = scheduledFutureMap;
+    public void setScheduledFutures(CreatureRegistry<ScheduledFuture<?>> scheduledFutures) {
+        this.scheduledFutures = scheduledFutures;
     }
 
     /* Constructors */
@@ -95,10 +97,10 @@ public class Quadrant extends AbstractLivable implements Runnable {
     public Quadrant(Map simulationMap, int row, int column,
                     SimulationExecutor simulationExecutor,
                     StatisticsCollector statisticsCollector,
-                    ConcurrentHashMap<Quadrant, ScheduledFuture<?>> scheduledFutureHashMap)
+                    CreatureRegistry<ScheduledFuture<?>> scheduledFutures)
     {
         this(simulationMap, row, column, simulationExecutor, statisticsCollector);
-        this.scheduledFutureMap = scheduledFutureHashMap;
+        this.scheduledFutures = scheduledFutures;
     }
 
     /**
@@ -109,33 +111,31 @@ public class Quadrant extends AbstractLivable implements Runnable {
     public void run() {
         if (!Thread.currentThread().isInterrupted()) {
 
+            // a lag of the task start is measured before anything else;
+            boolean profiling = RoundProfiler.isActive();
+            long schedulingLag = profiling ? simulationExecutor.getSchedulingLagNanos() : 0;
+
             // provide time synchronization of time
             TimeSyn.enter();
 
-            long enteredTime = TimeSyn.getTimeEntered(),
-                 curTime     = TimeSyn.getTimeEntered(),
-                 performTo   = curTime + 820;
-
-            // set number of eaten food to zero;
-            setHasEatenCurrentRound(0);
-
-            // update statistics
-            statisticsCollector.increaseNumOfAlive();
+            long curTime   = TimeSyn.getTimeEntered(),
+                 performTo = curTime + 820;
+            long startLag  = System.currentTimeMillis() - curTime;
 
+            // reset the round counters of the creature;
+            startRound();
+            if (profiling)
+                RoundProfiler.recordElapsed(RoundProfiler.Phase.SCHEDULING_LAG, schedulingLag,
+                                            currentRound, UNIQUE_ID);
+            long steppingStart = RoundProfiler.start();
 
             /*
                 This loop emulates a one round of the simulation.
                 The data will collected by statistics collector after looping .
              */
             while (curTime < performTo) {
-                // perform moving
-                move();
-
-                // increase a number of eaten food if a current map unit has food
-                if (simulationMap.getMapUnitWithCoordinates(getRow(), getColumn()).eatFood()) {
-                    // increase counter of eaten food in the current round
-                    eat();
-                }
+                // perform moving and eating;
+                performStep();
 
                 // sleep for 8 milliseconds after moving;
                 try {
@@ -148,16 +148,23 @@ public class Quadrant extends AbstractLivable implements Runnable {
                 curTime = System.currentTimeMillis();
             }
 
+            RoundProfiler.record(RoundProfiler.Phase.STEPPING, steppingStart, currentRound, UNIQUE_ID);
+            if (profiling)
+                RoundProfiler.recordWindow(currentRound, UNIQUE_ID, stepsCurrentRound,
+                                           startLag, curTime - performTo);
+
+            // report the results of the round;
+            reportRound();
+            traceRound();
+
             if (die()) {
                 // cancel a current task if a current creature has dead;
-                scheduledFutureMap.remove(this).cancel(true);
+                scheduledFutures.remove(UNIQUE_ID).cancel(true);
             }
-            // apply reproducing process if it is possible;
+            // apply reproducing process if it is possible; the newborn
+            // will start its execution in the next round;
             else if (canReproduce()) {
-                simulationExecutor.addNewQuadrantToQueue(reproduce(),
-                         PERFORM_ITERATION_TIME -                         // a period of time which
-                         (System.currentTimeMillis() - enteredTime) - 20, // a new creature will wait
-                         scheduledFutureMap);                             // until starts execution;
+                simulationExecutor.addNewborn(reproduce());
             }
 
             // stop synchronization timer
@@ -165,6 +172,64 @@ public class Quadrant extends AbstractLivable implements Runnable {
         }
     }
 
+    /**
+     *  Prepares the creature for a new round: sets a number of eaten food to zero
+     *  and registers the creature as alive in the statistics.
+     */
+    public void startRound() {
+        // set number of eaten food to zero;
+        setHasEatenCurrentRound(0);
+        currentRound = statisticsCollector.getRoundsCollected() + 1;
+        stepsCurrentRound = 0;
+        contestedCurrentRound = 0;
+
+        // update statistics
+        statisticsCollector.increaseNumOfAlive();
+    }
+
+    /**
+     *  Performs a single logical step of the creature: it moves and then
+     *  eats the food if a new map unit contains it.
+     */
+    public void performStep() {
+        // perform moving
+        move();
+        stepsCurrentRound++;
+
+        // increase a number of eaten food if a current map unit has food
+        long eatingStart = RoundProfiler.start();
+        switch (simulationMap.tryEatFood(getRow(), getColumn())) {
+            // increase counter of eaten food in the current round
+            case EATEN -> eat();
+            case CONTESTED -> contestedCurrentRound++;
+            case NO_FOOD -> {}
+        }
+        RoundProfiler.record(RoundProfiler.Phase.EATING, eatingStart, currentRound, UNIQUE_ID);
+    }
+
+    /**
+     *  Adds the results of the current round to the statistics.
+     *  It is called once per round when the creature has finished its steps.
+     */
+    public void reportRound() {
+        boolean died = die();
+        statisticsCollector.addCreatureRound(numHasEatenCurrentRound(), stepsCurrentRound,
+                contestedCurrentRound, died, !died && canReproduce(),
+                StatisticsCollector.regionOf(getRow(), getColumn(),
+                        simulationMap.getNumOfRows(), simulationMap.getNumOfColumns()));
+    }
+
+    /**
+     *  Logs the result of the round of the creature if the debug level is enabled.
+     */
+    private void traceRound() {
+        if (!logger.isEnabled(AsyncLogger.Level.DEBUG))
+            return;
+        String event = die() ? "died" : canReproduce() ? "reproduced" : "survived";
+        logger.log(AsyncLogger.Level.DEBUG, currentRound, UNIQUE_ID,
+                   event, numHasEatenCurrentRound());
+    }
+
     /**
      * The implementor of this interface should
      * implement the ability to move.
@@ -172,142 +237,22 @@ public class Quadrant extends AbstractLivable implements Runnable {
      *  # - is a positions where a Q (Quadrant) can make a step.
      *  Moreover, a quadrant can continue staying at its
      *  current position. (It is made to simplify the implementation).
+     *
+     *      #  #  #          |  #  #         ---------
+     *      #  Q  #          |  Q  #          #  Q  #
+     *      #  #  #          |  #  #          #  #  #
+     *
+     *  Near a side or in a corner only the positions inside the map can be chosen.
+     *  A step uses a random generator of the current thread and a {@code MoveKernel},
+     *  so it doesn't allocate any objects.
      */
     @Override
     public void move() {
-        final var random = new Random();
-        int newRow;
-        int newColumn;
-        if (!isOnSide() && !isInCorner()) {
-            /*
-             * A quadrant can make a step left, right, up, down and diagonally.
-             *
-             *      #  #  #
-             *      #  Q  #
-             *      #  #  #
-             */
-            newRow = simulationMap.getRandomValue(random,
-                    this.getRow() - 1, this.getRow() + 1);
-            newColumn = simulationMap.getRandomValue(random,
-                    this.getColumn() - 1, this.getColumn() + 1);
-        } else if (isInCorner()) {
-            // the current corner where the creature is situated
-            Orientation cornerType = getCornerType();
-
-            if (cornerType == Orientation.LEFT_BOTTOM_CORNER) {
-                /*
-                 * A quadrant can make a step up, right and diagonally right.
-                 *
-                 *     |  #  #
-                 *     |  Q  #
-                 *     ---------
-                 */
-                newRow = simulationMap.getRandomValue(random,
-                        this.getRow() - 1, this.getRow());
-                newColumn = simulationMap.getRandomValue(random,
-                        this.getColumn(), this.getColumn() + 1);
-            } else if (cornerType == Orientation.LEFT_TOP_CORNER) {
-                /*
-                 * A quadrant can make a step down, right and diagonally right.
-                 *
-                 *     ---------
-                 *     |  Q  #
-                 *     |  #  #
-                 */
-                newRow = simulationMap.getRandomValue(random,
-                        this.getRow(), this.getRow() + 1);
-                newColumn = simulationMap.getRandomValue(random,
-                        this.getColumn(), this.getColumn() + 1);
-
-            } else if (cornerType == Orientation.RIGHT_TOP_CORNER) {
-                /*
-                 * A quadrant can make a step down, right and diagonally right.
-                 *
-                 *     --------
-                 *      #  Q  |
-                 *      #  #  |
-                 */
-                newRow = simulationMap.getRandomValue(random,
-                        this.getRow(), this.getRow() + 1);
-                newColumn = simulationMap.getRandomValue(random,
-                        this.getColumn() - 1, this.getColumn());
-            }
-            // right bottom corner
-            else {
-                /*
-                 * A quadrant can make a step up, left and diagonally left.
-                 *
-                 *      #  #  |
-                 *      #  Q  |
-                 *     --------
-                 */
-                newRow = simulationMap.getRandomValue(random,
-                        this.getRow() - 1, this.getRow());
-                newColumn = simulationMap.getRandomValue(random,
-                        this.getColumn() - 1, this.getColumn());
-            }
-        }
-        // quadrant is next to side
-        else {
-            // the current side that is next to the creature
-            Orientation sideType = getSideType();
-
-            if (sideType == Orientation.LEFT_SIDE) {
-                /*
-                 * A quadrant can make a step up, down, right and diagonally right.
-                 *
-                 *      | #  #
-                 *      | Q  #
-                 *      | #  #
-                 */
-                newRow = simulationMap.getRandomValue(random,
-                        this.getRow() - 1, this.getRow() + 1);
-                newColumn = simulationMap.getRandomValue(random,
-                        this.getColumn(), this.getColumn() + 1);
-            } else if (sideType == Orientation.RIGHT_SIDE) {
-                /*
-                 * A quadrant can make a step up, down and diagonally left.
-                 *
-                 *      #  # |
-                 *      #  Q |
-                 *      #  # |
-                 */
-                newRow = simulationMap.getRandomValue(random,
-                        this.getRow() - 1, this.getRow() + 1);
-                newColumn = simulationMap.getRandomValue(random,
-                        this.getColumn() - 1, this.getColumn());
-            } else if (sideType == Orientation.TOP_SIDE) {
-                /*
-                 * A quadrant can make a step down, left, right and diagonally left/right.
-                 *
-                 *     ---------
-                 *      #  Q  #
-                 *      #  #  #
-                 */
-                newRow = simulationMap.getRandomValue(random,
-                        this.getRow(), this.getRow() + 1);
-                newColumn = simulationMap.getRandomValue(random,
-                        this.getColumn() - 1, this.getColumn() + 1);
-            }
-            // Bottom side
-            else {
-                /*
-                 * A quadrant can make a step down, left, right and diagonally left/right.
-                 *
-                 *      #  #  #
-                 *      #  Q  #
-                 *     ---------
-                 */
-                newRow = simulationMap.getRandomValue(random,
-                        this.getRow() - 1, this.getRow());
-                newColumn = simulationMap.getRandomValue(random,
-                        this.getColumn() - 1, this.getColumn() + 1);
-            }
-        }
+        long random = ThreadLocalRandom.current().nextLong();
 
         // set new coordinates
-        setRow(newRow);
-        setColumn(newColumn);
+        setRow(MoveKernel.stepRow(getRow(), simulationMap.getNumOfRows() - 1, random));
+        setColumn(MoveKernel.stepColumn(getColumn(), simulationMap.getNumOfColumns() - 1, random));
     }
 
     /**
@@ -338,12 +283,32 @@ public class Quadrant extends AbstractLivable implements Runnable {
             (T firstValue, Q secondValue) {}
 
     public static Pair<Integer, Integer> getPerimeterCoordinates(Map simulationMap) {
-        final var random = new Random();
+        return getPerimeterCoordinates(simulationMap, ThreadLocalRandom.current());
+    }
 
+    /**
+     * The same as {@code getPerimeterCoordinates(Map)}, but the coordinates
+     * are taken from the given generator.
+     */
+    public static Pair<Integer, Integer> getPerimeterCoordinates(Map simulationMap,
+                                                                 RandomGenerator random)
+    {
+        long position = getPerimeterPosition(simulationMap, random.nextLong());
+        return new Pair<>((int) (position >>> 32), (int) position);
+    }
+
+    /**
+     * Chooses a place on the perimeter of the map where a new creature is spawned.
+     * @param random 64 random bits which define the place;
+     * @return coordinates packed as {@code row << 32 | column};
+     */
+    public static long getPerimeterPosition(Map simulationMap, long random) {
         int newCreatureRow;
         int newCreatureColumn;
 
-        boolean defineSpawnRow = random.nextBoolean();
+        // the low bits define a side and the high 32 bits define a place on the side;
+        boolean defineSpawnRow = (random & 1) != 0;
+        int randomPlace = (int) (random >>> 32);
         if (defineSpawnRow) {
             /*
              *  A new creature will be spawned somewhere at defined places (shown as "#").
@@ -356,11 +321,11 @@ public class Quadrant extends AbstractLivable implements Runnable {
              *        | ########################### |
              *        -------------------------------
              */
-            newCreatureColumn = random.nextInt(simulationMap.getNumOfColumns());
+            newCreatureColumn = SplitMix.bounded(randomPlace, simulationMap.getNumOfColumns());
 
             // if topOrBottomRow == true, the new creature will be spawned at first row;
             // Otherwise, the one will be spawned at last row;
-            boolean topOrBottomRow = random.nextBoolean();
+            boolean topOrBottomRow = (random & 2) != 0;
             newCreatureRow = (topOrBottomRow) ? 0 : simulationMap.getNumOfRows() - 1;
         } else {
             /*
@@ -376,14 +341,14 @@ public class Quadrant extends AbstractLivable implements Runnable {
              *        | #         .          # |
              *        ---         .          ---
              */
-            newCreatureRow = random.nextInt(simulationMap.getNumOfRows());
+            newCreatureRow = SplitMix.bounded(randomPlace, simulationMap.getNumOfRows());
 
             // if leftOrRightColumn == true, the new creature will be spawned at first column;
             // Otherwise, the one will be spawned at last column;
-            boolean leftOrRightColumn = random.nextBoolean();
+            boolean leftOrRightColumn = (random & 2) != 0;
             newCreatureColumn = (leftOrRightColumn) ? 0 : simulationMap.getNumOfColumns() - 1;
         }
-        return new Pair<>(newCreatureRow, newCreatureColumn);
+        return ((long) newCreatureRow << 32) | (newCreatureColumn & 0xFFFFFFFFL);
     }
 
     /**
@@ -391,10 +356,9 @@ public class Quadrant extends AbstractLivable implements Runnable {
      */
     @Override
     public Quadrant reproduce() {
-        Pair<Integer, Integer> newCoordinates = getPerimeterCoordinates(this.simulationMap);
-        return new Quadrant(this.simulationMap, newCoordinates.firstValue(),
-                            newCoordinates.secondValue(), simulationExecutor,
-                            statisticsCollector, scheduledFutureMap);
+        long position = getPerimeterPosition(this.simulationMap, ThreadLocalRandom.current().nextLong());
+        return new Quadrant(this.simulationMap, (int) (position >>> 32), (int) position,
+                            simulationExecutor, statisticsCollector, scheduledFutures);
     }
 
     /**
@@ -418,15 +382,11 @@ public class Quadrant extends AbstractLivable implements Runnable {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Quadrant quadrant = (Quadrant) o;
-        return UNIQUE_ID == quadrant.UNIQUE_ID &&
-               uniqueForHashCode1 == quadrant.uniqueForHashCode1 &&
-               uniqueForHashCode2 == quadrant.uniqueForHashCode2 &&
-               uniqueForHashCode3 == quadrant.uniqueForHashCode3;
+        return UNIQUE_ID == quadrant.UNIQUE_ID;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(UNIQUE_ID, uniqueForHashCode1,
-                            uniqueForHashCode2, uniqueForHashCode3);
+        return Integer.hashCode(UNIQUE_ID);
     }
 }
@@ -0,0 +1,533 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Inhabitants;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Kernels.BulkKernels;
+import Multithreading.ThreadsLearning.NaturalSelection.Map.Map;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.SplitMix;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.StatisticsCollector;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  A population of quadrants stored as parallel primitive arrays (struct of arrays)
+ *  instead of one {@code Quadrant} object per creature. A creature is an index
+ *  in these arrays, so the simulation rules are applied as kernels over ranges
+ *  of indexes (see {@code LivableRange}).
+ *
+ *  <p>Creatures are stored densely in the range [0, size). Dead creatures are marked
+ *     by the {@code die} kernel and removed by {@code compact}, which moves the alive
+ *     ones down keeping their order, so the slots of dead creatures are reused.
+ *     Newborns are appended at the end with increasing ids, that's why the creatures
+ *     are always ordered by id.</p>
+ *
+ *  <p>Kernels {@code move}, {@code eat} and {@code die} can be applied to disjoint
+ *     ranges by different threads. Methods {@code reproduce}, {@code add} and
+ *     {@code compact} change the size of the population and have to be called
+ *     by one thread at the round boundary.</p>
+ *
+ *  <p>The kernels over contiguous ranges ({@code move}, {@code die}, {@code reproduce}
+ *     and the counting ones) are performed by {@code BulkKernels}, so they use SIMD
+ *     instructions when the Vector API is available.</p>
+ *
+ *  <p>Random values are counter-based: a move of a creature takes the value number
+ *     "id" of the stream given to the kernel, and a newborn is spawned at a place
+ *     defined by the value number "id" of the spawning stream of the population.
+ *     So the random values of a creature don't depend on the range or the thread
+ *     that processes it.</p>
+ */
+public class QuadrantPopulation implements LivableRange {
+    /**
+     *  The simulation rule: a default number of eaten food-units to give a descendant.
+     */
+    public static final int DEFAULT_REPRODUCE_THRESHOLD = 2;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // a key of the stream of spawning places;
+    private static final long SPAWN_STREAM = -1;
+
+    // the numbers of eaten food of the creatures which eat in several threads;
+    private static final VarHandle EATEN = MethodHandles.arrayElementVarHandle(int[].class);
+
+    // a map where a simulation takes place;
+    private final Map simulationMap;
+
+    // a number of eaten food-units to give a descendant;
+    private final int reproduceThreshold;
+
+    // the parallel arrays of creatures data;
+    private int[] rows;
+    private int[] columns;
+    private int[] eaten;
+    private int[] ids;
+    private boolean[] alive;
+
+    // a number of stored creatures;
+    private int size;
+
+    // an id of the next born creature;
+    private int nextId = 1;
+
+    // a master seed of the random values of the population;
+    private final long seed;
+
+    // a seed of the places where new creatures are spawned;
+    private final long spawnSeed;
+
+    // a number of completed rounds;
+    private int round;
+
+    // food-units which were taken by another creature in the current round;
+    // kernels add their local counts once per call;
+    private final LongAdder contestedMisses = new LongAdder();
+
+    public QuadrantPopulation(Map simulationMap) {
+        this(simulationMap, DEFAULT_CAPACITY);
+    }
+
+    public QuadrantPopulation(Map simulationMap, int initialCapacity) {
+        this(simulationMap, initialCapacity, ThreadLocalRandom.current().nextLong());
+    }
+
+    public QuadrantPopulation(Map simulationMap, int initialCapacity, long seed) {
+        this(simulationMap, initialCapacity, seed, DEFAULT_REPRODUCE_THRESHOLD);
+    }
+
+    public QuadrantPopulation(Map simulationMap, int initialCapacity, long seed,
+                              int reproduceThreshold)
+    {
+        if (reproduceThreshold < 1)
+            throw new IllegalArgumentException("Reproduce threshold has to be positive.");
+        this.simulationMap = simulationMap;
+        this.reproduceThreshold = reproduceThreshold;
+        this.seed = seed;
+        this.spawnSeed = SplitMix.hash(seed, SPAWN_STREAM);
+        int capacity = Math.max(initialCapacity, DEFAULT_CAPACITY);
+        this.rows = new int[capacity];
+        this.columns = new int[capacity];
+        this.eaten = new int[capacity];
+        this.ids = new int[capacity];
+        this.alive = new boolean[capacity];
+    }
+
+    /**
+     *  Creates a population from a saved state. The population contains
+     *  {@param size} creatures whose data have to be copied by {@code copyColumnsFrom}.
+     *  @param nextId an id of the next born creature;
+     *  @param round a number of completed rounds;
+     */
+    public static QuadrantPopulation restore(Map simulationMap, long seed, int reproduceThreshold,
+                                             int size, int nextId, int round)
+    {
+        var population = new QuadrantPopulation(simulationMap, size, seed, reproduceThreshold);
+        Arrays.fill(population.alive, 0, size, true);
+        population.size = size;
+        population.nextId = nextId;
+        population.round = round;
+        return population;
+    }
+
+    /**
+     *  Copies the data of {@code rows.remaining()} creatures starting from the index
+     *  {@param from} to the buffers. Must be called at the round boundary when
+     *  the population is compacted.
+     */
+    public void copyColumnsTo(int from, IntBuffer rows, IntBuffer columns,
+                              IntBuffer eaten, IntBuffer ids)
+    {
+        int count = rows.remaining();
+        Objects.checkFromIndexSize(from, count, size);
+        rows.put(this.rows, from, count);
+        columns.put(this.columns, from, count);
+        eaten.put(this.eaten, from, count);
+        ids.put(this.ids, from, count);
+    }
+
+    /**
+     *  Copies the data of {@code rows.remaining()} creatures from the buffers
+     *  to the population starting from the index {@param from}.
+     */
+    public void copyColumnsFrom(int from, IntBuffer rows, IntBuffer columns,
+                                IntBuffer eaten, IntBuffer ids)
+    {
+        int count = rows.remaining();
+        Objects.checkFromIndexSize(from, count, size);
+        rows.get(this.rows, from, count);
+        columns.get(this.columns, from, count);
+        eaten.get(this.eaten, from, count);
+        ids.get(this.ids, from, count);
+    }
+
+    /**
+     *  Adds a new creature at the given position.
+     *  @return an index of the new creature;
+     */
+    public int add(int row, int column) {
+        ensureCapacity(size + 1);
+        int index = size++;
+        rows[index] = row;
+        columns[index] = column;
+        eaten[index] = 0;
+        ids[index] = nextId++;
+        alive[index] = true;
+        return index;
+    }
+
+    /**
+     *  Adds {@param count} creatures at random positions on the perimeter of the map.
+     */
+    public void spawnOnPerimeter(int count) {
+        ensureCapacity(size + count);
+        for (int i = 0; i < count; i++)
+            spawnOnPerimeter();
+    }
+
+    /**
+     *  Adds a new creature at a place on the perimeter of the map
+     *  that is defined by the id of the creature.
+     */
+    private void spawnOnPerimeter() {
+        long position = getSpawnPosition(nextId);
+        add((int) (position >>> 32), (int) position);
+    }
+
+    /**
+     *  @return a place on the perimeter of the map where a creature with id {@param id}
+     *  is spawned; coordinates are packed as {@code row << 32 | column}.
+     */
+    public long getSpawnPosition(int id) {
+        return Quadrant.getPerimeterPosition(simulationMap, SplitMix.random(spawnSeed, id));
+    }
+
+    /**
+     *  Sets a number of eaten food of the creatures in the range to zero.
+     */
+    public void startRound(int from, int to) {
+        Arrays.fill(eaten, from, to, 0);
+    }
+
+    /**
+     *  Each creature makes a step left, right, up, down, diagonally
+     *  or stays at its current position (see {@code MoveKernel}).
+     *  A creature can't leave the map.
+     *  @param seed a seed of the step; a creature uses the value number "id" of it;
+     */
+    @Override
+    public void move(int from, int to, long seed) {
+        Objects.checkFromToIndex(from, to, size);
+        BulkKernels.current().move(rows, columns, ids, from, to,
+                simulationMap.getNumOfRows() - 1, simulationMap.getNumOfColumns() - 1, seed);
+    }
+
+    @Override
+    public int eat(int from, int to) {
+        int eatenNow = 0;
+        int contested = 0;
+        for (int i = from; i < to; i++) {
+            switch (simulationMap.tryEatFood(rows[i], columns[i])) {
+                case EATEN -> {
+                    eaten[i]++;
+                    eatenNow++;
+                }
+                case CONTESTED -> contested++;
+                case NO_FOOD -> {}
+            }
+        }
+        if (contested != 0)
+            contestedMisses.add(contested);
+        return eatenNow;
+    }
+
+    /**
+     *  Sets a number of eaten food to zero for the creatures whose indexes
+     *  are stored in {@param indexes} in a range [from, to).
+     */
+    public void startRound(int[] indexes, int from, int to) {
+        for (int i = from; i < to; i++)
+            eaten[indexes[i]] = 0;
+    }
+
+    /**
+     *  The same as {@code move(int, int, long)}, but it is applied to the creatures
+     *  whose indexes are stored in {@param indexes} in a range [from, to).
+     */
+    public void move(int[] indexes, int from, int to, long seed) {
+        final int lastRow = simulationMap.getNumOfRows() - 1;
+        final int lastColumn = simulationMap.getNumOfColumns() - 1;
+
+        for (int i = from; i < to; i++) {
+            int index = indexes[i];
+            long random = SplitMix.random(seed, ids[index]);
+            rows[index] = MoveKernel.stepRow(rows[index], lastRow, random);
+            columns[index] = MoveKernel.stepColumn(columns[index], lastColumn, random);
+        }
+    }
+
+    /**
+     *  Makes the moves of {@param steps} steps for the creature {@param index} at once;
+     *  the move of a step "s" uses a seed {@param stepSeeds}[s], so the creature comes
+     *  to the same places as by {@code move} of each step. The places after the moves
+     *  are stored into {@param pathRows} and {@param pathColumns}.
+     */
+    public void walk(int index, long[] stepSeeds, int steps, int[] pathRows, int[] pathColumns) {
+        final int lastRow = simulationMap.getNumOfRows() - 1;
+        final int lastColumn = simulationMap.getNumOfColumns() - 1;
+
+        long id = ids[index];
+        int row = rows[index], column = columns[index];
+        for (int step = 0; step < steps; step++) {
+            long random = SplitMix.random(stepSeeds[step], id);
+            row = MoveKernel.stepRow(row, lastRow, random);
+            column = MoveKernel.stepColumn(column, lastColumn, random);
+            pathRows[step] = row;
+            pathColumns[step] = column;
+        }
+        rows[index] = row;
+        columns[index] = column;
+    }
+
+    /**
+     *  The same as {@code eat(int, int)}, but it is applied to the creatures
+     *  whose indexes are stored in {@param indexes} in a range [from, to).
+     *  @return a number of eaten food-units;
+     */
+    public int eat(int[] indexes, int from, int to) {
+        int eatenNow = 0;
+        int contested = 0;
+        for (int i = from; i < to; i++) {
+            int index = indexes[i];
+            switch (simulationMap.tryEatFood(rows[index], columns[index])) {
+                case EATEN -> {
+                    eaten[index]++;
+                    eatenNow++;
+                }
+                case CONTESTED -> contested++;
+                case NO_FOOD -> {}
+            }
+        }
+        if (contested != 0)
+            contestedMisses.add(contested);
+        return eatenNow;
+    }
+
+    /**
+     *  Finds the creatures in a range [from, to) which stand on a map unit with food.
+     *  The food isn't eaten. This kernel only reads the map, so a contention
+     *  of creatures can be resolved afterwards in a defined order.
+     *  @param candidates a buffer for indexes of found creatures; its length
+     *                    must be at least {@code to - from};
+     *  @return a number of found creatures;
+     */
+    public int findFoodCandidates(int from, int to, int[] candidates) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (simulationMap.hasFood(rows[i], columns[i]))
+                candidates[count++] = i;
+        }
+        return count;
+    }
+
+    /**
+     *  The creatures whose indexes are in the first {@param count} elements
+     *  of {@param candidates} try to eat food in this order. If several creatures
+     *  stand on the same map unit, the first of them eats the food and
+     *  the others are counted as contested misses.
+     *  @return a number of eaten food-units;
+     */
+    public int eatCandidates(int[] candidates, int count) {
+        int eatenNow = 0;
+        for (int i = 0; i < count; i++) {
+            int index = candidates[i];
+            if (simulationMap.eatFood(rows[index], columns[index])) {
+                eaten[index]++;
+                eatenNow++;
+            }
+        }
+        if (eatenNow != count)
+            contestedMisses.add(count - eatenNow);
+        return eatenNow;
+    }
+
+    /**
+     *  Lets the creatures whose indexes are in the first {@param count} elements of
+     *  {@param winners} eat the food at the places with the same indexes of {@param rows}
+     *  and {@param columns}. The contention of the places has been resolved by the caller,
+     *  so a creature can get several places. Several threads can call it for disjoint places.
+     *  @param contested a number of the creatures which have lost these places;
+     *  @return a number of eaten food-units;
+     */
+    public int eatClaims(int[] winners, int[] rows, int[] columns, int count, long contested) {
+        int eatenNow = 0;
+        for (int i = 0; i < count; i++) {
+            if (simulationMap.eatFood(rows[i], columns[i])) {
+                EATEN.getAndAdd(eaten, winners[i], 1);
+                eatenNow++;
+            }
+        }
+        if (contested != 0)
+            contestedMisses.add(contested);
+        return eatenNow;
+    }
+
+    @Override
+    public int numHasEatenCurrentRound(int index) {
+        return eaten[index];
+    }
+
+    @Override
+    public boolean canReproduce(int index) {
+        return eaten[index] >= reproduceThreshold;
+    }
+
+    @Override
+    public int die(int from, int to) {
+        Objects.checkFromToIndex(from, to, size);
+        return BulkKernels.current().markDead(alive, eaten, from, to);
+    }
+
+    /**
+     *  Newborns are appended at the end of the population and
+     *  start participating in the next round. The parents are counted
+     *  first, so the arrays grow at most once for all the newborns.
+     *  The place of a newborn depends only on its id, so the newborns
+     *  don't need to know their parents.
+     *  Must be called by one thread at the round boundary.
+     */
+    @Override
+    public int reproduce(int from, int to) {
+        Objects.checkFromToIndex(from, to, size);
+        int born = BulkKernels.current().countAtLeast(alive, eaten, reproduceThreshold, from, to);
+        ensureCapacity(size + born);
+
+        for (int i = 0; i < born; i++)
+            spawnOnPerimeter();
+        return born;
+    }
+
+    /**
+     *  @return a number of food-units eaten in the current round
+     *  by the creatures in a range [from, to).
+     */
+    public long countEaten(int from, int to) {
+        Objects.checkFromToIndex(from, to, size);
+        return BulkKernels.current().sum(eaten, from, to);
+    }
+
+    /**
+     *  Adds the creatures in a range [from, to) to {@param regionCounts}
+     *  by their regions (see {@code StatisticsCollector.regionOf}).
+     */
+    public void countRegions(int from, int to, int[] regionCounts) {
+        Objects.checkFromToIndex(from, to, size);
+        BulkKernels.current().countRegions(rows, columns, from, to, simulationMap.getNumOfRows(),
+                simulationMap.getNumOfColumns(), StatisticsCollector.REGION_GRID, regionCounts);
+    }
+
+    /**
+     *  Removes dead creatures moving the alive ones down to the free slots.
+     *  The order of the alive creatures is kept. Must be called by one
+     *  thread at the round boundary.
+     *  @return a number of alive creatures;
+     */
+    public int compact() {
+        int aliveCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (alive[i]) {
+                if (aliveCount != i) {
+                    rows[aliveCount] = rows[i];
+                    columns[aliveCount] = columns[i];
+                    eaten[aliveCount] = eaten[i];
+                    ids[aliveCount] = ids[i];
+                    alive[aliveCount] = true;
+                }
+                aliveCount++;
+            }
+        }
+        Arrays.fill(alive, aliveCount, size, false);
+        size = aliveCount;
+        return size;
+    }
+
+    /**
+     *  Increases a number of completed rounds. Must be called
+     *  by one thread at the round boundary.
+     */
+    public void completeRound() {
+        round++;
+    }
+
+    /**
+     *  @return a seed of the moves of step {@param step} in the current round.
+     */
+    public long getStepSeed(int step) {
+        return SplitMix.hash(SplitMix.hash(seed, round), step);
+    }
+
+    /**
+     *  Grows the arrays to hold at least {@param capacity} creatures.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= rows.length)
+            return;
+        int newCapacity = Math.max(capacity, rows.length + (rows.length >> 1));
+        rows = Arrays.copyOf(rows, newCapacity);
+        columns = Arrays.copyOf(columns, newCapacity);
+        eaten = Arrays.copyOf(eaten, newCapacity);
+        ids = Arrays.copyOf(ids, newCapacity);
+        alive = Arrays.copyOf(alive, newCapacity);
+    }
+
+    /* Getters */
+    public int size() {
+        return size;
+    }
+
+    public int getRow(int index) {
+        return rows[index];
+    }
+
+    public int getColumn(int index) {
+        return columns[index];
+    }
+
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    public boolean isAlive(int index) {
+        return alive[index];
+    }
+
+    public Map getSimulationMap() {
+        return simulationMap;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getReproduceThreshold() {
+        return reproduceThreshold;
+    }
+
+    public int getNextId() {
+        return nextId;
+    }
+
+    public int getRound() {
+        return round;
+    }
+
+    /**
+     *  @return a number of contested misses since the previous call
+     *  and sets it to zero. Must be called at the round boundary.
+     */
+    public long takeContestedMisses() {
+        return contestedMisses.sumThenReset();
+    }
+}
@@ -0,0 +1,86 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Kernels;
+
+/**
+ *  Data-parallel kernels of the bulk phases of a round, which are applied to
+ *  the flat arrays of {@code QuadrantPopulation} and of the food layer of {@code Map}.
+ *  <p>There are two implementations which give the same results: a scalar one and
+ *     a SIMD one on the Vector API ({@code jdk.incubator.vector}). The SIMD kernels
+ *     are used if the JVM is started with {@code --add-modules jdk.incubator.vector}
+ *     and the system property "naturalselection.simd" isn't "false". They are
+ *     switched on when the JIT has compiled them (see {@code KernelSwitch}), or
+ *     at once by {@code setVectorized}.</p>
+ *  <p>All the kernels work on a range [from, to) of the arrays.</p>
+ */
+public interface BulkKernels {
+
+    /**
+     *  @return the kernels which are used now.
+     */
+    static BulkKernels current() {
+        return KernelSwitch.current;
+    }
+
+    /**
+     *  Switches between the SIMD and the scalar kernels.
+     *  @param vectorized true to use the SIMD kernels if they are available;
+     *  @return true if the SIMD kernels are used now;
+     */
+    static boolean setVectorized(boolean vectorized) {
+        return KernelSwitch.setVectorized(vectorized);
+    }
+
+    /**
+     *  @return true if the SIMD kernels are used now.
+     */
+    static boolean isVectorized() {
+        return KernelSwitch.current != KernelSwitch.SCALAR;
+    }
+
+    /**
+     *  @return true if the SIMD kernels can be used in this JVM.
+     */
+    static boolean isVectorAvailable() {
+        return KernelSwitch.VECTOR != null;
+    }
+
+    /**
+     *  Each creature makes a step (see {@code MoveKernel}) using the random
+     *  value number "id" of a stream with seed {@param seed}.
+     *  @param lastRow the last row of the map;
+     *  @param lastColumn the last column of the map;
+     */
+    void move(int[] rows, int[] columns, int[] ids, int from, int to,
+              int lastRow, int lastColumn, long seed);
+
+    /**
+     *  @return a sum of the values in the range.
+     */
+    long sum(int[] values, int from, int to);
+
+    /**
+     *  Marks the alive creatures which haven't eaten any food as dead.
+     *  @return a number of creatures that died;
+     */
+    int markDead(boolean[] alive, int[] eaten, int from, int to);
+
+    /**
+     *  @return a number of the alive creatures which have eaten at least
+     *  {@param threshold} food-units.
+     */
+    int countAtLeast(boolean[] alive, int[] eaten, int threshold, int from, int to);
+
+    /**
+     *  Adds the creatures of the range to the counters of their regions. The map is split
+     *  into {@param grid} x {@param grid} regions as in {@code StatisticsCollector.regionOf}.
+     *  @param mapRows a number of rows of the map;
+     *  @param mapColumns a number of columns of the map;
+     *  @param counts the counters of the regions; its length must be at least grid * grid;
+     */
+    void countRegions(int[] rows, int[] columns, int from, int to,
+                      int mapRows, int mapColumns, int grid, int[] counts);
+
+    /**
+     *  @return a number of set bits in the words of the range.
+     */
+    long countBits(long[] words, int from, int to);
+}
@@ -0,0 +1,168 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Kernels;
+
+import java.util.Arrays;
+
+/**
+ *  Holds the kernels used by {@code BulkKernels.current()}.
+ *  <p>The SIMD kernels are loaded by name, so the classes of the Vector API
+ *     are never touched when the incubator module isn't in the boot layer.</p>
+ *  <p>Until the JIT compiles them, the SIMD kernels are tens of times slower than
+ *     the scalar ones, because each vector is an object. So a background thread
+ *     calls them on small arrays and compares them with the scalar ones. The
+ *     scalar kernels are used until each SIMD kernel is faster than the scalar one.
+ *     If it doesn't happen within {@code WARMUP_TIMEOUT_MILLIS}, the scalar
+ *     kernels are kept. On a single core the warm-up would slow down the
+ *     simulation, so the SIMD kernels are used only after {@code setVectorized}.</p>
+ */
+final class KernelSwitch {
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String SIMD_PROPERTY = "naturalselection.simd";
+
+    // a length of the arrays of the warm-up; it isn't a multiple of
+    // the vector length, so the scalar tails are compiled too;
+    private static final int WARMUP_LENGTH = 1027;
+
+    // a number of calls of each kernel between the comparisons;
+    private static final int COMPARISON_CALLS = 100;
+    private static final long COMPARISON_PAUSE_MILLIS = 10;
+    private static final long WARMUP_TIMEOUT_MILLIS = 60_000;
+
+    static final BulkKernels SCALAR = new ScalarBulkKernels();
+
+    // the SIMD kernels or null if they can't be used in this JVM;
+    static final BulkKernels VECTOR = loadVectorKernels();
+
+    // true if the SIMD kernels have to be used when they are warmed up; the JIT
+    // compiles them for seconds, so they aren't warmed up without a spare core;
+    private static volatile boolean vectorRequested = VECTOR != null
+            && !"false".equals(System.getProperty(SIMD_PROPERTY))
+            && Runtime.getRuntime().availableProcessors() > 1;
+
+    static volatile BulkKernels current = SCALAR;
+
+    static {
+        if (vectorRequested) {
+            var warmUp = new Thread(KernelSwitch::warmUp, "simd-kernels-warmup");
+            warmUp.setDaemon(true);
+            warmUp.start();
+        }
+    }
+
+    private KernelSwitch() {}
+
+    /**
+     *  Switches the kernels immediately; the SIMD kernels may still be cold.
+     */
+    static synchronized boolean setVectorized(boolean vectorized) {
+        vectorRequested = vectorized && VECTOR != null;
+        current = vectorRequested ? VECTOR : SCALAR;
+        return vectorRequested;
+    }
+
+    /**
+     *  Calls the SIMD kernels until they are faster than the scalar
+     *  ones and then switches to them if they are still requested.
+     */
+    private static void warmUp() {
+        var arrays = new WarmUpArrays(WARMUP_LENGTH);
+        long deadline = System.nanoTime() + WARMUP_TIMEOUT_MILLIS * 1_000_000;
+        while (vectorRequested && System.nanoTime() < deadline) {
+            if (arrays.isVectorFaster()) {
+                synchronized (KernelSwitch.class) {
+                    if (vectorRequested)
+                        current = VECTOR;
+                }
+                return;
+            }
+            try {
+                // leave the core to the simulation and the JIT;
+                Thread.sleep(COMPARISON_PAUSE_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     *  The arrays on which the kernels are warmed up and compared.
+     */
+    private static final class WarmUpArrays {
+        // a number of the kernels which are overridden by {@code VectorBulkKernels};
+        private static final int KERNELS = 4;
+
+        private final int length;
+        private final int[] rows;
+        private final int[] columns;
+        private final int[] ids;
+        private final int[] eaten;
+        private final boolean[] alive;
+        private final int[] regionCounts = new int[4 * 4];
+
+        WarmUpArrays(int length) {
+            this.length = length;
+            rows = new int[length];
+            columns = new int[length];
+            ids = new int[length];
+            eaten = new int[length];
+            alive = new boolean[length];
+            for (int i = 0; i < length; i++) {
+                rows[i] = columns[i] = i;
+                ids[i] = i + 1;
+                eaten[i] = i % 4;
+            }
+        }
+
+        /**
+         *  Calls the kernel number {@param kernel} of {@param kernels}.
+         */
+        private void call(BulkKernels kernels, int kernel, long seed) {
+            switch (kernel) {
+                case 0 -> kernels.move(rows, columns, ids, 0, length, length - 1, length - 1, seed);
+                case 1 -> {
+                    Arrays.fill(alive, true);
+                    kernels.markDead(alive, eaten, 0, length);
+                }
+                case 2 -> kernels.countAtLeast(alive, eaten, 2, 0, length);
+                default -> kernels.countRegions(rows, columns, 0, length, length, length, 4, regionCounts);
+            }
+        }
+
+        /**
+         *  @return true if each SIMD kernel is faster than the scalar one.
+         */
+        boolean isVectorFaster() {
+            boolean faster = true;
+            for (int kernel = 0; kernel < KERNELS; kernel++)
+                faster &= time(VECTOR, kernel) < time(SCALAR, kernel);
+            return faster;
+        }
+
+        /**
+         *  @return a time of {@code COMPARISON_CALLS} calls of a kernel in nanoseconds.
+         */
+        private long time(BulkKernels kernels, int kernel) {
+            long start = System.nanoTime();
+            for (int call = 0; call < COMPARISON_CALLS; call++)
+                call(kernels, kernel, call);
+            return System.nanoTime() - start;
+        }
+    }
+
+    /**
+     *  @return the SIMD kernels or null if the Vector API isn't available
+     *  or the hardware has no vectors of at least 256 bits.
+     */
+    private static BulkKernels loadVectorKernels() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty())
+            return null;
+        try {
+            return (BulkKernels) Class.forName(KernelSwitch.class.getPackageName() + ".VectorBulkKernels")
+                                      .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        } catch (RuntimeException e) {
+            // an exception of the constructor: the vectors are too short;
+            return null;
+        }
+    }
+}
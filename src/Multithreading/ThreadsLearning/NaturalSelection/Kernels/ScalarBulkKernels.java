@@ -0,0 +1,70 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Kernels;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Inhabitants.MoveKernel;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.SplitMix;
+
+/**
+ *  The scalar kernels; they are used when the Vector API isn't available
+ *  and process the tails of the ranges of the SIMD kernels.
+ */
+class ScalarBulkKernels implements BulkKernels {
+
+    @Override
+    public void move(int[] rows, int[] columns, int[] ids, int from, int to,
+                     int lastRow, int lastColumn, long seed)
+    {
+        for (int i = from; i < to; i++) {
+            long random = SplitMix.random(seed, ids[i]);
+            rows[i] = MoveKernel.stepRow(rows[i], lastRow, random);
+            columns[i] = MoveKernel.stepColumn(columns[i], lastColumn, random);
+        }
+    }
+
+    @Override
+    public long sum(int[] values, int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i++)
+            sum += values[i];
+        return sum;
+    }
+
+    @Override
+    public int markDead(boolean[] alive, int[] eaten, int from, int to) {
+        int died = 0;
+        for (int i = from; i < to; i++) {
+            if (alive[i] && eaten[i] == 0) {
+                alive[i] = false;
+                died++;
+            }
+        }
+        return died;
+    }
+
+    @Override
+    public int countAtLeast(boolean[] alive, int[] eaten, int threshold, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (alive[i] && eaten[i] >= threshold)
+                count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void countRegions(int[] rows, int[] columns, int from, int to,
+                             int mapRows, int mapColumns, int grid, int[] counts)
+    {
+        for (int i = from; i < to; i++) {
+            counts[(int) ((long) rows[i] * grid / mapRows) * grid
+                   + (int) ((long) columns[i] * grid / mapColumns)]++;
+        }
+    }
+
+    @Override
+    public long countBits(long[] words, int from, int to) {
+        long count = 0;
+        for (int i = from; i < to; i++)
+            count += Long.bitCount(words[i]);
+        return count;
+    }
+}
@@ -0,0 +1,163 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Kernels;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.SplitMix;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ *  The SIMD kernels on the Vector API. Each kernel processes the main part of
+ *  a range by vectors of the preferred shape of the hardware and the tail
+ *  by the scalar kernel, so the results are the same as the scalar ones.
+ *  <p>The random values of a move are 64 bit, so the move widens vectors of ids
+ *     to vectors of longs with the same number of lanes.</p>
+ *  <p>{@code sum} and {@code countBits} are inherited: the JIT vectorizes their
+ *     scalar loops itself, and explicit vectors are no faster.</p>
+ *  <p>This class is loaded by {@code KernelSwitch} only if the module
+ *     {@code jdk.incubator.vector} is in the boot layer.</p>
+ */
+final class VectorBulkKernels extends ScalarBulkKernels {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+
+    // ints with the same number of lanes as {@code LONGS};
+    private static final VectorSpecies<Integer> HALF_INTS = VectorSpecies.of(int.class,
+            VectorShape.forBitSize(LONGS.vectorBitSize() / 2));
+
+    // the max number of regions which are counted by vector compares;
+    private static final int MAX_VECTOR_REGIONS = 64;
+
+    VectorBulkKernels() {
+        // shorter vectors are emulated and slower than the scalar kernels;
+        if (LONGS.vectorBitSize() < 256)
+            throw new UnsupportedOperationException("Vectors of " + LONGS.vectorBitSize()
+                    + " bits are too short.");
+    }
+
+    @Override
+    public void move(int[] rows, int[] columns, int[] ids, int from, int to,
+                     int lastRow, int lastColumn, long seed)
+    {
+        int i = from;
+        for (int bound = from + HALF_INTS.loopBound(to - from); i < bound; i += HALF_INTS.length()) {
+            LongVector random = mix64(widen(ids, i).mul(SplitMix.GAMMA).add(seed));
+            step(rows, i, lastRow, narrow(random.lanewise(VectorOperators.LSHR, 32)));
+            step(columns, i, lastColumn, narrow(random));
+        }
+        super.move(rows, columns, ids, i, to, lastRow, lastColumn, seed);
+    }
+
+    /**
+     *  The same as {@code SplitMix.mix64} for each lane.
+     */
+    private static LongVector mix64(LongVector z) {
+        z = z.lanewise(VectorOperators.XOR, z.lanewise(VectorOperators.LSHR, 30)).mul(0xbf58476d1ce4e5b9L);
+        z = z.lanewise(VectorOperators.XOR, z.lanewise(VectorOperators.LSHR, 27)).mul(0x94d049bb133111ebL);
+        return z.lanewise(VectorOperators.XOR, z.lanewise(VectorOperators.LSHR, 31));
+    }
+
+    /**
+     *  The same as {@code MoveKernel.step} for the lanes of {@param positions}
+     *  starting from {@param offset}. A bound of a step is at most 3, so
+     *  {@code SplitMix.bounded} is computed by 16 bit halves of the random
+     *  values without 64 bit products:
+     *  {@code (r * b) >>> 32 == (rHigh * b + ((rLow * b) >>> 16)) >>> 16}.
+     *  @param random32 32 random bits of each lane;
+     */
+    private static void step(int[] positions, int offset, int lastPosition, IntVector random32) {
+        IntVector position = IntVector.fromArray(HALF_INTS, positions, offset);
+        IntVector lower = position.sub(1).max(0);
+        IntVector bound = position.add(1).min(lastPosition).sub(lower).add(1);
+        IntVector low = random32.and(0xFFFF).mul(bound).lanewise(VectorOperators.LSHR, 16);
+        IntVector high = random32.lanewise(VectorOperators.LSHR, 16).mul(bound);
+        lower.add(high.add(low).lanewise(VectorOperators.LSHR, 16)).intoArray(positions, offset);
+    }
+
+    private static LongVector widen(int[] values, int offset) {
+        return (LongVector) IntVector.fromArray(HALF_INTS, values, offset)
+                                     .convertShape(VectorOperators.I2L, LONGS, 0);
+    }
+
+    /**
+     *  @return the low halves of the lanes of {@param vector}.
+     */
+    private static IntVector narrow(LongVector vector) {
+        return (IntVector) vector.convertShape(VectorOperators.L2I, HALF_INTS, 0);
+    }
+
+    @Override
+    public int markDead(boolean[] alive, int[] eaten, int from, int to) {
+        int died = 0;
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            VectorMask<Integer> living = VectorMask.fromArray(INTS, alive, i);
+            VectorMask<Integer> starving = IntVector.fromArray(INTS, eaten, i)
+                                                    .compare(VectorOperators.EQ, 0).and(living);
+            if (starving.anyTrue()) {
+                died += starving.trueCount();
+                living.andNot(starving).intoArray(alive, i);
+            }
+        }
+        return died + super.markDead(alive, eaten, i, to);
+    }
+
+    @Override
+    public int countAtLeast(boolean[] alive, int[] eaten, int threshold, int from, int to) {
+        int count = 0;
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            count += IntVector.fromArray(INTS, eaten, i).compare(VectorOperators.GE, threshold)
+                              .and(VectorMask.fromArray(INTS, alive, i)).trueCount();
+        }
+        return count + super.countAtLeast(alive, eaten, threshold, i, to);
+    }
+
+    /**
+     *  A band of a coordinate is computed by compares with the first coordinates
+     *  of the bands instead of a division: {@code band(x) >= k} if
+     *  {@code x >= ceil(k * size / grid)}.
+     */
+    @Override
+    public void countRegions(int[] rows, int[] columns, int from, int to,
+                             int mapRows, int mapColumns, int grid, int[] counts)
+    {
+        int regions = grid * grid;
+        if (regions > MAX_VECTOR_REGIONS) {
+            super.countRegions(rows, columns, from, to, mapRows, mapColumns, grid, counts);
+            return;
+        }
+        int[] rowStarts = bandStarts(mapRows, grid);
+        int[] columnStarts = bandStarts(mapColumns, grid);
+
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            IntVector rowBands = band(IntVector.fromArray(INTS, rows, i), rowStarts);
+            IntVector region = band(IntVector.fromArray(INTS, columns, i), columnStarts)
+                    .add(rowBands.mul(grid));
+            for (int r = 0; r < regions; r++)
+                counts[r] += region.compare(VectorOperators.EQ, r).trueCount();
+        }
+        super.countRegions(rows, columns, i, to, mapRows, mapColumns, grid, counts);
+    }
+
+    /**
+     *  @return the first coordinates of the bands 1..grid-1 of a side of {@param size}.
+     */
+    private static int[] bandStarts(int size, int grid) {
+        int[] starts = new int[grid - 1];
+        for (int k = 1; k < grid; k++)
+            starts[k - 1] = (int) (((long) k * size + grid - 1) / grid);
+        return starts;
+    }
+
+    private static IntVector band(IntVector coordinates, int[] starts) {
+        IntVector band = IntVector.zero(INTS);
+        for (int start : starts)
+            band = band.add(1, coordinates.compare(VectorOperators.GE, start));
+        return band;
+    }
+
+}
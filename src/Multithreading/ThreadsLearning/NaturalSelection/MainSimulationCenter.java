@@ -1,10 +1,23 @@
 package Multithreading.ThreadsLearning.NaturalSelection;
 
+import Multithreading.ThreadsLearning.NaturalSelection.Distributed.ShardCoordinator;
+import Multithreading.ThreadsLearning.NaturalSelection.Executors.PopulationSimulationExecutor;
 import Multithreading.ThreadsLearning.NaturalSelection.Executors.SimulationExecutor;
+import Multithreading.ThreadsLearning.NaturalSelection.Executors.TickSimulationExecutor;
+import Multithreading.ThreadsLearning.NaturalSelection.Executors.TiledSimulationExecutor;
+import Multithreading.ThreadsLearning.NaturalSelection.Executors.VirtualThreadSimulationExecutor;
 import Multithreading.ThreadsLearning.NaturalSelection.Inhabitants.Quadrant;
+import Multithreading.ThreadsLearning.NaturalSelection.Inhabitants.QuadrantPopulation;
+import Multithreading.ThreadsLearning.NaturalSelection.Map.FoodStorage;
 import Multithreading.ThreadsLearning.NaturalSelection.Map.Map;
+import Multithreading.ThreadsLearning.NaturalSelection.Persistence.Checkpoint;
+import Multithreading.ThreadsLearning.NaturalSelection.Persistence.EventLog;
+import Multithreading.ThreadsLearning.NaturalSelection.Profiling.RoundProfiler;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.ConvergenceDetector;
 import Multithreading.ThreadsLearning.NaturalSelection.Utilities.StatisticsCollector;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
@@ -25,12 +38,240 @@ public class MainSimulationCenter {
     private static final long CREATURE_INIT_DELAY = 0;
     private static final long CREATURE_PERIOD_TIME = 2000; // 2 seconds
 
+    // Simulation parameters
+    private static final int NUMBER_OF_ROUNDS = 9;
+
+    // A program argument that switches the simulation to the tick-based engine;
+    private static final String TICK_MODE_ARGUMENT = "--tick";
+
+    // A program argument that switches the simulation to the tick-based engine
+    // which stores creatures in a QuadrantPopulation;
+    private static final String POPULATION_MODE_ARGUMENT = "--population";
+
+    // A program argument that switches the simulation to the tick-based engine
+    // which steps tiles of the map in a ForkJoinPool;
+    private static final String TILED_MODE_ARGUMENT = "--tiled";
+
+    // A program argument followed by a number of worker processes, for ex. "--sharded 3";
+    // the rows of the map are split between the workers, and the statistics are
+    // the same as the ones of the "--population" mode with the same seed;
+    private static final String SHARDED_MODE_ARGUMENT = "--sharded";
+
+    // A program argument that runs each creature on its own virtual thread;
+    private static final String VIRTUAL_MODE_ARGUMENT = "--virtual";
+
+    // A program argument that stops the simulation when the population reaches
+    // an equilibrium or dies out; at most MAX_ROUNDS_UNTIL_CONVERGED rounds are performed;
+    private static final String CONVERGE_ARGUMENT = "--converge";
+    private static final int MAX_ROUNDS_UNTIL_CONVERGED = 1000;
+
+    // It is true if the simulation is stopped by a convergence detector;
+    private static boolean untilConverged;
+
+    // A program argument followed by a master seed of the simulation, for ex. "--seed 42";
+    // runs of the "--population" mode with the same seed give the same statistics;
+    private static final String SEED_ARGUMENT = "--seed";
+
+    // A program argument followed by a file where the "--population" and "--tiled" modes
+    // write a checkpoint of the simulation after each round, for ex. "--checkpoint sim.qscp";
+    private static final String CHECKPOINT_ARGUMENT = "--checkpoint";
+
+    // A program argument followed by a checkpoint file from which the "--population"
+    // and "--tiled" modes continue the simulation instead of starting a new one;
+    private static final String RESUME_ARGUMENT = "--resume";
+
+    // A program argument followed by a file where the "--population" and "--tiled" modes
+    // write the state after each round for the offline replay by EventLogReplay;
+    private static final String EVENT_LOG_ARGUMENT = "--event-log";
+
+    // A program argument that measures the phases of rounds and prints their
+    // latency percentiles and a number of straggler creatures at the end;
+    private static final String PROFILE_ARGUMENT = "--profile";
+
+    // A program argument that places the food layer of the map of the "--population"
+    // and "--tiled" modes in native memory outside of the heap;
+    private static final String OFF_HEAP_ARGUMENT = "--off-heap";
+
+    // A program argument followed by a file to which the food layer of the map of the
+    // "--population" and "--tiled" modes is memory-mapped, for ex. "--food-file food.bin";
+    private static final String FOOD_FILE_ARGUMENT = "--food-file";
+
     /**
      * The main method that starts the simulation.
      * @throws InterruptedException if a thread was interrupted while sleeping, waiting e.c.;
      * @throws TimeoutException if a simulation wasn't competed before timeout terminates;
+     * @throws IOException if a checkpoint couldn't be read or written;
+     */
+    public static void main(String[] args)
+            throws InterruptedException, TimeoutException, IOException
+    {
+        untilConverged = List.of(args).contains(CONVERGE_ARGUMENT);
+        if (List.of(args).contains(PROFILE_ARGUMENT))
+            RoundProfiler.setEnabled(true);
+
+        if (args.length > 0 && args[0].equals(TICK_MODE_ARGUMENT))
+            runTickSimulation(false);
+        else if (args.length > 0 && args[0].equals(VIRTUAL_MODE_ARGUMENT))
+            runTickSimulation(true);
+        else if (args.length > 0 && args[0].equals(POPULATION_MODE_ARGUMENT))
+            runPopulationSimulation(false, args);
+        else if (args.length > 0 && args[0].equals(TILED_MODE_ARGUMENT))
+            runPopulationSimulation(true, args);
+        else if (args.length > 1 && args[0].equals(SHARDED_MODE_ARGUMENT))
+            runShardedSimulation(Integer.parseInt(args[1]), args);
+        else
+            runWallClockSimulation();
+
+        if (RoundProfiler.isEnabled())
+            System.out.println(RoundProfiler.report());
+    }
+
+    /**
+     * Runs the tick-based simulation where creatures are stored
+     * in parallel primitive arrays instead of {@code Quadrant} objects.
+     * @param tiled true if the creatures should be stepped by tiles of the map
+     *              in a {@code ForkJoinPool};
+     * @param args the program arguments with a seed, checkpoint and event log files;
+     * @throws InterruptedException if a thread was interrupted while waiting;
+     * @throws IOException if a checkpoint or an event log couldn't be read or written;
+     */
+    private static void runPopulationSimulation(boolean tiled, String[] args)
+            throws InterruptedException, IOException
+    {
+        QuadrantPopulation population;
+        StatisticsCollector statisticsCollector;
+        FoodStorage.Allocator foodAllocator = getFoodAllocator(args);
+
+        Path resumeFile = getPath(args, RESUME_ARGUMENT);
+        if (resumeFile != null) {
+            // continue a simulation from its checkpoint
+            Checkpoint.State state = Checkpoint.read(resumeFile, foodAllocator);
+            population = state.population();
+            statisticsCollector = state.statisticsCollector();
+            if (untilConverged)
+                statisticsCollector.setConvergenceDetector(replayConvergence(statisticsCollector));
+            System.out.println("(*) Resumed after round " + statisticsCollector.getRoundsCollected()
+                    + " with seed " + population.getSeed());
+        } else {
+            long seed = getSeed(args);
+            System.out.println("(*) Seed: " + seed);
+
+            // create a simulation map
+            Map simulationMap = new Map(ROWS, COLUMNS, seed, Map.DEFAULT_FOOD_RATE, foodAllocator);
+
+            // create statistics collector
+            statisticsCollector = createStatisticsCollector();
+
+            // create a population of creatures
+            population = new QuadrantPopulation(simulationMap, INIT_NUMBER_OF_CREATURES, seed);
+            population.spawnOnPerimeter(INIT_NUMBER_OF_CREATURES);
+        }
+
+        Path checkpointFile = getPath(args, CHECKPOINT_ARGUMENT);
+        int rounds = getNumberOfRounds() - statisticsCollector.getRoundsCollected();
+
+        // with a checkpoint file the rounds are performed one by one,
+        // so the checkpoint is written at each round boundary;
+        int roundsPerRun = (checkpointFile != null) ? 1 : rounds;
+        TiledSimulationExecutor tiledExecutor = tiled ? new TiledSimulationExecutor() : null;
+        PopulationSimulationExecutor populationExecutor = tiled ? null
+                : new PopulationSimulationExecutor(Runtime.getRuntime().availableProcessors());
+
+        Path eventLogFile = getPath(args, EVENT_LOG_ARGUMENT);
+        try (EventLog eventLog = (eventLogFile != null) ? new EventLog(eventLogFile, population) : null) {
+            if (eventLog != null) {
+                // the initial state or the state of the checkpoint;
+                eventLog.append(population, 0, 0);
+                if (tiled)
+                    tiledExecutor.setEventLog(eventLog);
+                else
+                    populationExecutor.setEventLog(eventLog);
+            }
+
+            while (rounds > 0 && population.size() > 0 && !statisticsCollector.isConverged()) {
+                if (tiled)
+                    tiledExecutor.runRounds(population, statisticsCollector, roundsPerRun);
+                else
+                    populationExecutor.runRounds(population, statisticsCollector, roundsPerRun);
+                rounds -= roundsPerRun;
+
+                if (checkpointFile != null)
+                    Checkpoint.write(checkpointFile, population, statisticsCollector);
+            }
+        }
+
+        if (tiled && checkpointFile == null)
+            System.out.printf("(*) Creature-steps per second: %.0f%n",
+                    tiledExecutor.getCreatureStepsPerSecond());
+
+        // print statistics
+        System.out.println(statisticsCollector.toString());
+        printConvergence(statisticsCollector);
+        System.out.println(statisticsCollector.toMetricsString());
+    }
+
+    /**
+     * Runs the simulation of the "--population" mode in several worker processes
+     * on this machine. Each worker steps the creatures of a band of rows of the map.
+     * @param workers a number of worker processes;
+     * @param args the program arguments with a seed;
+     * @throws IOException if a worker couldn't be started or the connection to it is broken;
+     */
+    private static void runShardedSimulation(int workers, String[] args) throws IOException {
+        long seed = getSeed(args);
+        System.out.println("(*) Seed: " + seed);
+
+        StatisticsCollector statisticsCollector = createStatisticsCollector();
+        try (var coordinator = new ShardCoordinator(workers, ROWS, COLUMNS, seed, false)) {
+            coordinator.launchLocalWorkers();
+            coordinator.connectWorkers(INIT_NUMBER_OF_CREATURES);
+            coordinator.runRounds(statisticsCollector, getNumberOfRounds());
+        }
+
+        // print statistics
+        System.out.println(statisticsCollector.toString());
+        printConvergence(statisticsCollector);
+        System.out.println(statisticsCollector.toMetricsString());
+    }
+
+    /**
+     * Runs the simulation where a round is a fixed number of logical steps.
+     * The rounds are performed as fast as the CPU allows.
+     * @param virtual true if each creature should run on its own virtual thread;
+     * @throws InterruptedException if a thread was interrupted while waiting;
+     */
+    private static void runTickSimulation(boolean virtual) throws InterruptedException {
+        // create a simulation map
+        Map simulationMap = new Map(ROWS, COLUMNS);
+
+        // create statistics collector
+        StatisticsCollector statisticsCollector = createStatisticsCollector();
+
+        // creatures aren't scheduled by a SimulationExecutor in this mode;
+        List<Quadrant> quadrantList = createQuadrantsList(simulationMap,
+                null, statisticsCollector);
+
+        if (virtual) {
+            VirtualThreadSimulationExecutor virtualExecutor = new VirtualThreadSimulationExecutor();
+            virtualExecutor.runRounds(quadrantList, simulationMap, statisticsCollector, getNumberOfRounds());
+        } else {
+            TickSimulationExecutor tickExecutor = new TickSimulationExecutor(
+                    Runtime.getRuntime().availableProcessors());
+            tickExecutor.runRounds(quadrantList, simulationMap, statisticsCollector, getNumberOfRounds());
+        }
+
+        // print statistics
+        System.out.println(statisticsCollector.toString());
+        printConvergence(statisticsCollector);
+        System.out.println(statisticsCollector.toMetricsString());
+    }
+
+    /**
+     * Runs the simulation where a round lasts {@code CREATURE_PERIOD_TIME} milliseconds.
+     * @throws InterruptedException if a thread was interrupted while sleeping, waiting e.c.;
+     * @throws TimeoutException if a simulation wasn't competed before timeout terminates;
      */
-    public static void main(String[] args) throws InterruptedException, TimeoutException {
+    private static void runWallClockSimulation() throws InterruptedException, TimeoutException {
         // create a simulation map
         Map simulationMap = new Map(ROWS, COLUMNS);
 
@@ -39,7 +280,7 @@ public class MainSimulationCenter {
                 CREATURE_INIT_DELAY, CREATURE_PERIOD_TIME, TimeUnit.MILLISECONDS);
 
         // create statistics collector
-        StatisticsCollector statisticsCollector = new StatisticsCollector();
+        StatisticsCollector statisticsCollector = createStatisticsCollector();
 
         // create a list of creatures
         List<Quadrant> quadrantList = createQuadrantsList(simulationMap,
@@ -51,10 +292,14 @@ public class MainSimulationCenter {
         // start execution of statistics collector
         simulationExecutor.addPeriodicExecutorTask(() -> {
             if (!simulationExecutor.getSes().isTerminated()) {
+                long start = RoundProfiler.start();
+                int round = statisticsCollector.getRoundsCollected() + 1;
+                statisticsCollector.addFoodPlaced(simulationMap.getFoodPlaced());
                 statisticsCollector.performStatsCollection();
                 // apply a helper method to notify waiters
                 // of this object's monitor;
                 statisticsCollector.notifyWaiters();
+                RoundProfiler.record(RoundProfiler.Phase.STATISTICS, start, round, -1);
 
                 // print a round number;
                 System.out.println("(*) Performing round: " +
@@ -65,14 +310,17 @@ public class MainSimulationCenter {
         // start execution of map operator
         simulationExecutor.addPeriodicExecutorTask(() -> {
             if (!Thread.currentThread().isInterrupted()) {
+                long start = RoundProfiler.start();
                 simulationMap.clearMapFood();
                 simulationMap.fillMapWithFood();
+                RoundProfiler.record(RoundProfiler.Phase.FOOD_RESET, start,
+                        statisticsCollector.getRoundsCollected(), -1);
             }
         },820, CREATURE_PERIOD_TIME, TimeUnit.MILLISECONDS);
 
 
         // perform a simulation n times;
-        executeCycles(9, statisticsCollector);
+        executeCycles(getNumberOfRounds(), statisticsCollector);
         simulationExecutor.getSes().shutdown();
 
         /*
@@ -89,6 +337,80 @@ public class MainSimulationCenter {
 
         // print statistics
         System.out.println(statisticsCollector.toString());
+        printConvergence(statisticsCollector);
+    }
+
+    /**
+     * @return a new statistics collector; it has a convergence detector
+     * if the simulation runs until convergence.
+     */
+    private static StatisticsCollector createStatisticsCollector() {
+        StatisticsCollector statisticsCollector = new StatisticsCollector();
+        if (untilConverged)
+            statisticsCollector.setConvergenceDetector(new ConvergenceDetector());
+        return statisticsCollector;
+    }
+
+    /**
+     * @return a max number of rounds of the simulation.
+     */
+    private static int getNumberOfRounds() {
+        return untilConverged ? MAX_ROUNDS_UNTIL_CONVERGED : NUMBER_OF_ROUNDS;
+    }
+
+    /**
+     * Prints the round when the population has converged.
+     */
+    private static void printConvergence(StatisticsCollector statisticsCollector) {
+        if (statisticsCollector.getConvergenceDetector() != null)
+            System.out.println("(*) " + statisticsCollector.getConvergenceDetector());
+    }
+
+    /**
+     * @return a new convergence detector which has seen all the rounds
+     * collected by {@param statisticsCollector}.
+     */
+    private static ConvergenceDetector replayConvergence(StatisticsCollector statisticsCollector) {
+        ConvergenceDetector convergenceDetector = new ConvergenceDetector();
+        for (int day = 0; day < statisticsCollector.getRoundsCollected(); day++)
+            convergenceDetector.addRound(statisticsCollector.getAlive(day));
+        return convergenceDetector;
+    }
+
+    /**
+     * @return a path that follows {@param argument} in the program arguments
+     * or null if there is no such argument.
+     */
+    private static Path getPath(String[] args, String argument) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(argument))
+                return Path.of(args[i + 1]);
+        }
+        return null;
+    }
+
+    /**
+     * @return an allocator of the food layer which is chosen by {@code FOOD_FILE_ARGUMENT}
+     * or {@code OFF_HEAP_ARGUMENT} in the program arguments; the food layer is on the heap
+     * if there are no such arguments.
+     */
+    private static FoodStorage.Allocator getFoodAllocator(String[] args) {
+        Path foodFile = getPath(args, FOOD_FILE_ARGUMENT);
+        if (foodFile != null)
+            return FoodStorage.mappedTo(foodFile);
+        return List.of(args).contains(OFF_HEAP_ARGUMENT) ? FoodStorage.OFF_HEAP : FoodStorage.ON_HEAP;
+    }
+
+    /**
+     * @return a value that follows {@code SEED_ARGUMENT} in the program arguments
+     * or a random seed if there is no such argument.
+     */
+    private static long getSeed(String[] args) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(SEED_ARGUMENT))
+                return Long.parseLong(args[i + 1]);
+        }
+        return ThreadLocalRandom.current().nextLong();
     }
 
     /**
@@ -97,7 +419,7 @@ public class MainSimulationCenter {
      * @param statsColl an object that collects a statistics about simulation;
      */
     private static void executeCycles(int cyclesPerform, StatisticsCollector statsColl) {
-        statsColl.waitUntilRounds(rounds -> rounds != cyclesPerform);
+        statsColl.waitUntilRounds(rounds -> rounds != cyclesPerform && !statsColl.isConverged());
     }
 
     /**
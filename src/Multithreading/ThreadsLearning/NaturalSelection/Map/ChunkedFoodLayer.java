@@ -0,0 +1,355 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Map;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Kernels.BulkKernels;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.SplitMix;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  A sparse food layer of a chunked map. The map is split into chunks of
+ *  256 x 256 units, and only the chunks which creatures have reached are allocated.
+ *  <p>The food of a chunk is a function of the seed of the map, the number of the
+ *     filling and the position of the chunk, so it is generated lazily: the first
+ *     access to a chunk in a round places its food. A filling of the map costs
+ *     nothing, and a round costs as many chunks as creatures have visited in it.</p>
+ *  <p>The chunks are found through a two-level directory: directories of
+ *     64 x 64 chunks are allocated on the first use too. A chunk which no one has accessed for {@code COLD_ROUNDS}
+ *     rounds is reclaimed at the round boundary. It would get the same food again,
+ *     so reclaiming doesn't change the simulation.</p>
+ *  <p>The words of the chunks are read and written atomically as the words of a
+ *     dense map; a chunk is allocated and its food is placed under a lock.</p>
+ */
+final class ChunkedFoodLayer {
+    // a side of a chunk in map units; a chunk of 256 x 256 units takes 8 KB;
+    private static final int CHUNK_SHIFT = 8;
+    static final int CHUNK_SIDE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+    private static final int WORDS_PER_CHUNK = 1 << (2 * CHUNK_SHIFT - 6);
+
+    // a side of a directory in chunks;
+    private static final int DIRECTORY_SHIFT = 6;
+    private static final int DIRECTORY_MASK = (1 << DIRECTORY_SHIFT) - 1;
+
+    // a max number of directories; it limits a side of a square map by ~16M units;
+    private static final int MAX_DIRECTORIES = 1 << 20;
+
+    // a number of rounds without accesses after which a chunk is reclaimed;
+    private static final int COLD_ROUNDS = 2;
+
+    private static final VarHandle DIRECTORIES = MethodHandles.arrayElementVarHandle(Chunk[][].class);
+    private static final VarHandle CHUNKS = MethodHandles.arrayElementVarHandle(Chunk[].class);
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     *  An allocated chunk.
+     */
+    private static final class Chunk {
+        private final int chunkRow;
+        private final int chunkColumn;
+        private final long[] words = new long[WORDS_PER_CHUNK];
+
+        // the epoch for which the food of the chunk was placed; the words of
+        // a chunk with a stale epoch are placed again at the first access;
+        private volatile int epoch;
+
+        // a number of the round in which the food of the chunk was placed;
+        private int round;
+
+        // a number of food-units placed in the chunk in its epoch;
+        private int placed;
+
+        Chunk(int chunkRow, int chunkColumn) {
+            this.chunkRow = chunkRow;
+            this.chunkColumn = chunkColumn;
+        }
+    }
+
+    private final int rows;
+    private final int columns;
+    private final long seed;
+    private final double foodRate;
+
+    // the directories of chunks; a directory is null until a chunk of it is allocated;
+    private final Chunk[][] directories;
+    private final int directoryColumns;
+
+    // a number of allocated chunks of each directory;
+    private final int[] directoryChunks;
+
+    // all the allocated chunks; guarded by "this";
+    private final List<Chunk> allocated = new ArrayList<>();
+
+    // the current epoch; it changes at the round boundary only;
+    private volatile int epoch = 1;
+
+    // a number of the current round, i.e. of performed clearings;
+    private int round;
+
+    // true if the current epoch has been filled, and a number of its filling;
+    private boolean filled;
+    private long filling;
+
+    // a number of food-units placed in the current epoch;
+    private final LongAdder foodPlaced = new LongAdder();
+
+    ChunkedFoodLayer(int rows, int columns, long seed, double foodRate) {
+        int chunkRows = ((rows - 1) >>> CHUNK_SHIFT) + 1;
+        int chunkColumns = ((columns - 1) >>> CHUNK_SHIFT) + 1;
+        int directoryRows = ((chunkRows - 1) >>> DIRECTORY_SHIFT) + 1;
+        directoryColumns = ((chunkColumns - 1) >>> DIRECTORY_SHIFT) + 1;
+        if ((long) directoryRows * directoryColumns > MAX_DIRECTORIES)
+            throw new IllegalArgumentException("Chunked map of " + rows + "x" + columns +
+                    " units is too large.");
+
+        this.rows = rows;
+        this.columns = columns;
+        this.seed = seed;
+        this.foodRate = foodRate;
+        this.directories = new Chunk[directoryRows * directoryColumns][];
+        this.directoryChunks = new int[directories.length];
+    }
+
+    /**
+     *  The same as {@code Map.tryEatFood} for a valid unit.
+     */
+    Map.EatResult tryEatFood(int row, int column) {
+        Chunk chunk = chunkOf(row, column);
+        int bit = bitOf(row, column);
+        int word = bit >>> 6;
+        long mask = 1L << bit;
+
+        long value = (long) WORDS.getVolatile(chunk.words, word);
+        if ((value & mask) == 0)
+            return Map.EatResult.NO_FOOD;
+        while ((value & mask) != 0) {
+            long witness = (long) WORDS.compareAndExchange(chunk.words, word, value, value & ~mask);
+            if (witness == value)
+                return Map.EatResult.EATEN;
+            value = witness;
+        }
+        return Map.EatResult.CONTESTED;
+    }
+
+    /**
+     *  The same as {@code Map.putFood} for a valid unit.
+     */
+    void putFood(int row, int column) {
+        Chunk chunk = chunkOf(row, column);
+        int bit = bitOf(row, column);
+        int word = bit >>> 6;
+        long mask = 1L << bit;
+
+        long value = (long) WORDS.getVolatile(chunk.words, word);
+        while ((value & mask) == 0) {
+            long witness = (long) WORDS.compareAndExchange(chunk.words, word, value, value | mask);
+            if (witness == value)
+                return;
+            value = witness;
+        }
+    }
+
+    /**
+     *  The same as {@code Map.hasFood} for a valid unit.
+     */
+    boolean hasFood(int row, int column) {
+        int bit = bitOf(row, column);
+        return ((long) WORDS.getVolatile(chunkOf(row, column).words, bit >>> 6) & (1L << bit)) != 0;
+    }
+
+    /**
+     *  Starts a new epoch without food and reclaims the cold chunks.
+     *  Must be called when creatures don't eat.
+     */
+    void clear() {
+        startEpoch();
+        filled = false;
+        round++;
+        reclaimColdChunks();
+    }
+
+    /**
+     *  Starts a new epoch with the food of a filling number {@param filling}; the
+     *  food of a chunk is placed at its first access. So the food placed before is
+     *  replaced rather than added to.
+     *  Must be called when creatures don't eat.
+     */
+    void fill(long filling) {
+        startEpoch();
+        this.filled = true;
+        this.filling = filling;
+    }
+
+    /**
+     *  Makes all the chunks stale.
+     */
+    private synchronized void startEpoch() {
+        if (epoch == Integer.MAX_VALUE) {
+            // the epochs would repeat, so reset the epochs of the chunks;
+            for (Chunk chunk : allocated)
+                chunk.epoch = 0;
+            epoch = 1;
+        } else {
+            epoch++;
+        }
+        foodPlaced.reset();
+    }
+
+    /**
+     *  @return a number of map units of the allocated chunks which contain food.
+     *  Must be called when creatures don't eat.
+     */
+    synchronized long countFood() {
+        BulkKernels kernels = BulkKernels.current();
+        int currentEpoch = epoch;
+        long count = 0;
+        for (Chunk chunk : allocated) {
+            if (chunk.epoch == currentEpoch)
+                count += kernels.countBits(chunk.words, 0, WORDS_PER_CHUNK);
+        }
+        return count;
+    }
+
+    /**
+     *  @return a number of food-units placed in the chunks accessed since the last filling.
+     */
+    long getFoodPlaced() {
+        return foodPlaced.sum();
+    }
+
+    /**
+     *  @return a number of food-units placed since the last filling in the chunks
+     *  whose first rows are in a range [fromRow, toRow).
+     *  Must be called when creatures don't eat.
+     */
+    synchronized long getFoodPlaced(int fromRow, int toRow) {
+        int currentEpoch = epoch;
+        long placed = 0;
+        for (Chunk chunk : allocated) {
+            int firstRow = chunk.chunkRow << CHUNK_SHIFT;
+            if (chunk.epoch == currentEpoch && firstRow >= fromRow && firstRow < toRow)
+                placed += chunk.placed;
+        }
+        return placed;
+    }
+
+    /**
+     *  @return a number of allocated chunks.
+     */
+    synchronized int getNumOfChunks() {
+        return allocated.size();
+    }
+
+    /**
+     *  @return a chunk of a unit with its food for the current epoch.
+     */
+    private Chunk chunkOf(int row, int column) {
+        int chunkRow = row >>> CHUNK_SHIFT;
+        int chunkColumn = column >>> CHUNK_SHIFT;
+        int directory = (chunkRow >>> DIRECTORY_SHIFT) * directoryColumns + (chunkColumn >>> DIRECTORY_SHIFT);
+        int slot = ((chunkRow & DIRECTORY_MASK) << DIRECTORY_SHIFT) | (chunkColumn & DIRECTORY_MASK);
+
+        Chunk[] chunks = (Chunk[]) DIRECTORIES.getAcquire(directories, directory);
+        Chunk chunk = (chunks == null) ? null : (Chunk) CHUNKS.getAcquire(chunks, slot);
+        if (chunk == null)
+            chunk = allocate(chunkRow, chunkColumn, directory, slot);
+        if (chunk.epoch != epoch)
+            placeFood(chunk);
+        return chunk;
+    }
+
+    /**
+     *  @return an index of a bit of a unit in the words of its chunk.
+     */
+    private static int bitOf(int row, int column) {
+        return ((row & CHUNK_MASK) << CHUNK_SHIFT) | (column & CHUNK_MASK);
+    }
+
+    /**
+     *  @return a chunk in {@param slot} of {@param directory}; it is allocated if there is none.
+     */
+    private synchronized Chunk allocate(int chunkRow, int chunkColumn, int directory, int slot) {
+        Chunk[] chunks = directories[directory];
+        if (chunks == null) {
+            chunks = new Chunk[1 << (2 * DIRECTORY_SHIFT)];
+            DIRECTORIES.setRelease(directories, directory, chunks);
+        }
+        Chunk chunk = chunks[slot];
+        if (chunk == null) {
+            chunk = new Chunk(chunkRow, chunkColumn);
+            CHUNKS.setRelease(chunks, slot, chunk);
+            directoryChunks[directory]++;
+            allocated.add(chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     *  Places the food of the current epoch in {@param chunk} once. The units of the
+     *  chunk inside the map are sampled by Floyd's algorithm as in {@code Map}, using
+     *  a stream {@code hash(hash(seed, filling), chunk)}.
+     */
+    private void placeFood(Chunk chunk) {
+        synchronized (chunk) {
+            int currentEpoch = epoch;
+            if (chunk.epoch == currentEpoch)
+                return;
+            long[] words = chunk.words;
+            Arrays.fill(words, 0L);
+            if (filled) {
+                int chunkRows = Math.min(1 << CHUNK_SHIFT, rows - (chunk.chunkRow << CHUNK_SHIFT));
+                int chunkColumns = Math.min(1 << CHUNK_SHIFT, columns - (chunk.chunkColumn << CHUNK_SHIFT));
+                int units = chunkRows * chunkColumns;
+                int unitsToFill = (int) Math.round(units * foodRate);
+
+                long key = ((long) chunk.chunkRow << 32) | chunk.chunkColumn;
+                var random = new SplittableRandom(SplitMix.hash(SplitMix.hash(seed, filling), key));
+                for (int j = units - unitsToFill; j < units; j++) {
+                    int unit = random.nextInt(j + 1);
+                    int bit = ((unit / chunkColumns) << CHUNK_SHIFT) | (unit % chunkColumns);
+                    if ((words[bit >>> 6] & (1L << bit)) != 0) {
+                        unit = j;
+                        bit = ((unit / chunkColumns) << CHUNK_SHIFT) | (unit % chunkColumns);
+                    }
+                    words[bit >>> 6] |= 1L << bit;
+                }
+                foodPlaced.add(unitsToFill);
+                chunk.placed = unitsToFill;
+            } else {
+                chunk.placed = 0;
+            }
+            chunk.round = round;
+            // the words are visible to a thread that reads the new epoch;
+            chunk.epoch = currentEpoch;
+        }
+    }
+
+    /**
+     *  Drops the chunks which haven't been accessed for {@code COLD_ROUNDS} rounds,
+     *  and the directories without chunks.
+     */
+    private synchronized void reclaimColdChunks() {
+        for (int i = allocated.size() - 1; i >= 0; i--) {
+            Chunk chunk = allocated.get(i);
+            if (round - chunk.round <= COLD_ROUNDS)
+                continue;
+            int directory = (chunk.chunkRow >>> DIRECTORY_SHIFT) * directoryColumns
+                    + (chunk.chunkColumn >>> DIRECTORY_SHIFT);
+            int slot = ((chunk.chunkRow & DIRECTORY_MASK) << DIRECTORY_SHIFT)
+                    | (chunk.chunkColumn & DIRECTORY_MASK);
+            directories[directory][slot] = null;
+            if (--directoryChunks[directory] == 0)
+                directories[directory] = null;
+
+            // the order of the chunks doesn't matter;
+            Chunk last = allocated.remove(allocated.size() - 1);
+            if (i < allocated.size())
+                allocated.set(i, last);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Map;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+
+/**
+ *  A storage of the food layer of a {@code Map}: the words of the bitset and
+ *  the epoch stamps of the lines of words (see {@code Map}).
+ *  <p>The words and the stamps are read and written atomically, so creatures can
+ *     eat concurrently. The bulk methods are used at the round boundary and by
+ *     checkpoints.</p>
+ *  <p>There are two backends:</p>
+ *  <ul>
+ *      <li>{@code ON_HEAP} - primitive arrays; it is the fastest one;</li>
+ *      <li>{@code OFF_HEAP} and {@code mappedTo(file)} - native memory outside of
+ *          the heap, or a memory-mapped file which the OS can page out, so a map
+ *          can be larger than the RAM. The heap and the GC pauses don't depend on
+ *          the size of the map.</li>
+ *  </ul>
+ */
+public interface FoodStorage {
+
+    /**
+     *  Creates a storage of {@param words} words and {@param lines} stamps;
+     *  all the words and the stamps are zero.
+     */
+    @FunctionalInterface
+    interface Allocator {
+        FoodStorage allocate(int words, int lines);
+    }
+
+    /**
+     *  The storage in primitive arrays on the heap.
+     */
+    Allocator ON_HEAP = HeapFoodStorage::new;
+
+    /**
+     *  The storage in direct buffers outside of the heap.
+     */
+    Allocator OFF_HEAP = OffHeapFoodStorage::allocateDirect;
+
+    /**
+     *  @return an allocator of a storage in {@param file}, which is created or truncated.
+     *  It throws UncheckedIOException if the file can't be mapped.
+     */
+    static Allocator mappedTo(Path file) {
+        return (words, lines) -> {
+            try {
+                return OffHeapFoodStorage.map(file, words, lines);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't map a food layer to " + file, e);
+            }
+        };
+    }
+
+    /**
+     *  @return a word number {@param word} (a volatile read).
+     */
+    long getWord(int word);
+
+    /**
+     *  Sets a word number {@param word} (a volatile write).
+     */
+    void setWord(int word, long value);
+
+    /**
+     *  Atomically sets a word number {@param word} to {@param value}
+     *  if it is equal to {@param expected}.
+     *  @return the value of the word before the call;
+     */
+    long compareAndExchangeWord(int word, long expected, long value);
+
+    /**
+     *  @return a stamp of the line number {@param line} (an acquiring read).
+     */
+    int getStamp(int line);
+
+    /**
+     *  Sets a stamp of the line number {@param line} (a releasing write), so the
+     *  words written before are visible to a thread which reads the stamp.
+     */
+    void setStamp(int line, int stamp);
+
+    /**
+     *  Sets all the words and the stamps to zero.
+     *  Must be called when creatures don't eat.
+     */
+    void clear();
+
+    /**
+     *  @return a number of set bits in the words of a range [fromWord, toWord).
+     *  Must be called when creatures don't eat.
+     */
+    long countBits(int fromWord, int toWord);
+
+    /**
+     *  Copies {@code target.remaining()} words starting from the word number
+     *  {@param fromWord} to {@param target} in bulk.
+     */
+    void copyWordsTo(int fromWord, LongBuffer target);
+
+    /**
+     *  Copies {@code source.remaining()} words from {@param source} in bulk
+     *  starting from the word number {@param fromWord}.
+     */
+    void copyWordsFrom(int fromWord, LongBuffer source);
+
+    /* Getters */
+    int getNumOfWords();
+
+    int getNumOfLines();
+
+    /**
+     *  @return true if the storage is outside of the heap.
+     */
+    boolean isOffHeap();
+}
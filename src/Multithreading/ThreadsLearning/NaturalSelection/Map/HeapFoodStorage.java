@@ -0,0 +1,88 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Map;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Kernels.BulkKernels;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ *  The food layer in primitive arrays. The elements are accessed atomically
+ *  through {@code VarHandle}s, and the bulk kernels read the words directly.
+ */
+final class HeapFoodStorage implements FoodStorage {
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle STAMPS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final long[] words;
+    private final int[] stamps;
+
+    HeapFoodStorage(int words, int lines) {
+        this.words = new long[words];
+        this.stamps = new int[lines];
+    }
+
+    @Override
+    public long getWord(int word) {
+        return (long) WORDS.getVolatile(words, word);
+    }
+
+    @Override
+    public void setWord(int word, long value) {
+        WORDS.setVolatile(words, word, value);
+    }
+
+    @Override
+    public long compareAndExchangeWord(int word, long expected, long value) {
+        return (long) WORDS.compareAndExchange(words, word, expected, value);
+    }
+
+    @Override
+    public int getStamp(int line) {
+        return (int) STAMPS.getAcquire(stamps, line);
+    }
+
+    @Override
+    public void setStamp(int line, int stamp) {
+        STAMPS.setRelease(stamps, line, stamp);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(words, 0L);
+        Arrays.fill(stamps, 0);
+        VarHandle.releaseFence();
+    }
+
+    @Override
+    public long countBits(int fromWord, int toWord) {
+        return BulkKernels.current().countBits(words, fromWord, toWord);
+    }
+
+    @Override
+    public void copyWordsTo(int fromWord, LongBuffer target) {
+        target.put(words, fromWord, target.remaining());
+    }
+
+    @Override
+    public void copyWordsFrom(int fromWord, LongBuffer source) {
+        source.get(words, fromWord, source.remaining());
+    }
+
+    /* Getters */
+    @Override
+    public int getNumOfWords() {
+        return words.length;
+    }
+
+    @Override
+    public int getNumOfLines() {
+        return stamps.length;
+    }
+
+    @Override
+    public boolean isOffHeap() {
+        return false;
+    }
+}
@@ -1,87 +1,414 @@
 package Multithreading.ThreadsLearning.NaturalSelection.Map;
 
-import java.util.Random;
-import java.util.function.Consumer;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.SplitMix;
+
+import java.nio.LongBuffer;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 /**
  *  This is a map where the simulation executes.
+ *  <p>The food layer of the map is stored as a packed bitset: each map unit is
+ *     one bit of an array of words, where a unit with coordinates
+ *     {row, column} is a bit with index {@code row * columns + column}.
+ *     So a map of 100 000 x 100 000 units takes ~1.25 GB. The words are read and
+ *     written atomically by the creatures.</p>
+ *  <p>The words are kept by a {@code FoodStorage}: on the heap by default, or
+ *     outside of it, in native memory or in a memory-mapped file, so a large map
+ *     adds nothing to the heap and to the GC pauses.</p>
+ *  <p>Food is placed using a seeded generator: the n-th filling of the map uses a
+ *     stream {@code hash(seed, n)}, so maps with the same seed get the same food.</p>
+ *  <p>The food layer is epoch-stamped: each line of 8 words (64 bytes, 512 units)
+ *     has a stamp, and the words of a line are valid only if its stamp is equal to
+ *     the current epoch. So removing all the food is an increment of the epoch, and
+ *     filling touches only the lines of the placed food. The cost of a round turnover
+ *     depends on the amount of food instead of the area of the map.</p>
+ *  <p>A map created by {@code chunked} has no dense food layer: its chunks are
+ *     allocated and filled with food when creatures reach them, and the chunks
+ *     that creatures have left are reclaimed (see {@code ChunkedFoodLayer}). So the
+ *     memory and the cost of a round follow the occupied area, and a map can have
+ *     a nominal size of 1M x 1M units. The food of a chunked map differs from the
+ *     food of a dense map with the same seed, and it can't be copied by words, so
+ *     such a map can't be checkpointed.</p>
  */
-public class Map {
-    private final MapUnit[][] map;
+public final class Map {
+    /**
+     *  A result of an attempt to eat food.
+     */
+    public enum EatResult {
+        // the food has been eaten by the current thread;
+        EATEN,
+        // the map unit didn't contain food;
+        NO_FOOD,
+        // the map unit contained food, but another thread has eaten it first;
+        CONTESTED
+    }
+
+    // a number of map units in one word of the bitset;
+    private static final int UNITS_PER_WORD_SHIFT = 6;
+
+    // a number of words in one stamped line of the bitset;
+    private static final int WORDS_PER_LINE_SHIFT = 3;
+
+    /**
+     *  A default part of map units which contain food after filling.
+     */
+    public static final double DEFAULT_FOOD_RATE = 0.10;
+
+    /**
+     *  A side of the chunks of a chunked map in map units.
+     */
+    public static final int CHUNK_SIDE = ChunkedFoodLayer.CHUNK_SIDE;
+
+    // the food layer; a bit is set if a corresponding map unit contains food;
+    // the stamps are epochs of the lines; a line with a stale epoch has no food;
+    // it is null if the map is chunked;
+    private final FoodStorage food;
+
+    // the food layer of a chunked map or null;
+    private final ChunkedFoodLayer chunks;
+
+    // the current epoch; stamps are zero initially, so the first epoch is one;
+    private volatile int epoch = 1;
+
+    // a number of food-units placed by the last filling;
+    private long foodPlaced;
     private final int rows;
     private final int columns;
 
+    // a part of map units which contain food after filling;
+    private final double foodRate;
+
+    // a seed of the food placement and a number of performed fillings;
+    private final long seed;
+    private long fillings;
+
     public Map(int rows, int columns) {
+        this(rows, columns, ThreadLocalRandom.current().nextLong());
+    }
+
+    public Map(int rows, int columns, long seed) {
+        this(rows, columns, seed, DEFAULT_FOOD_RATE);
+    }
+
+    public Map(int rows, int columns, long seed, double foodRate) {
+        this(rows, columns, seed, foodRate, FoodStorage.ON_HEAP);
+    }
+
+    /**
+     *  @param allocator an allocator of the food layer, e.g. {@code FoodStorage.OFF_HEAP};
+     */
+    public Map(int rows, int columns, long seed, double foodRate, FoodStorage.Allocator allocator) {
+        this(rows, columns, seed, foodRate, allocator, true);
+    }
+
+    /**
+     *  Creates a chunked map, which allocates its food layer by chunks
+     *  only where creatures are.
+     */
+    public static Map chunked(int rows, int columns, long seed, double foodRate) {
+        return new Map(rows, columns, seed, foodRate, null, true);
+    }
+
+    /**
+     *  @param allocator an allocator of the food layer or null if the map is chunked;
+     *  @param fill true if the map should be filled with food;
+     */
+    private Map(int rows, int columns, long seed, double foodRate,
+                FoodStorage.Allocator allocator, boolean fill)
+    {
+        if (rows <= 0 || columns <= 0)
+            throw new IllegalArgumentException("Map must have at least one row and column.");
+        if (!(foodRate >= 0 && foodRate <= 1))
+            throw new IllegalArgumentException("Food rate must be in a range [0, 1].");
+
+        long words = (((long) rows * columns - 1) >>> UNITS_PER_WORD_SHIFT) + 1;
+        if (allocator != null && words > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Map of " + rows + "x" + columns +
+                    " units is too large; use a chunked map.");
+
         this.rows = rows;
         this.columns = columns;
-        this.map = new MapUnit[rows][columns];
-
-        // initialize map
-        initializeMap();
+        this.seed = seed;
+        this.foodRate = foodRate;
+        if (allocator != null) {
+            this.food = allocator.allocate((int) words, (int) ((words - 1) >>> WORDS_PER_LINE_SHIFT) + 1);
+            this.chunks = null;
+        } else {
+            this.food = null;
+            this.chunks = new ChunkedFoodLayer(rows, columns, seed, foodRate);
+        }
 
         // fills map with food at random places
-        fillMapWithFood();
+        if (fill)
+            fillMapWithFood();
+    }
+
+    /**
+     *  Creates a map from a saved state. The map has no food; all its lines are
+     *  stamped with the current epoch, so the words of food can be copied into
+     *  it by {@code copyFoodWordsFrom}.
+     *  @param fillings a number of fillings performed before the state was saved;
+     *  @param foodPlaced a number of food-units placed by the last of them;
+     */
+    public static Map restore(int rows, int columns, long seed, double foodRate,
+                              long fillings, long foodPlaced)
+    {
+        return restore(rows, columns, seed, foodRate, fillings, foodPlaced, FoodStorage.ON_HEAP);
+    }
+
+    /**
+     *  The same as {@code restore}, but the food layer is allocated by {@param allocator}.
+     */
+    public static Map restore(int rows, int columns, long seed, double foodRate,
+                              long fillings, long foodPlaced, FoodStorage.Allocator allocator)
+    {
+        Map map = new Map(rows, columns, seed, foodRate, Objects.requireNonNull(allocator), false);
+        for (int i = 0, length = map.food.getNumOfLines(); i < length; i++)
+            map.food.setStamp(i, map.epoch);
+        map.fillings = fillings;
+        map.foodPlaced = foodPlaced;
+        return map;
     }
 
     /**
-     *  Initializes a map creating new {@code MapUnit} objects
+     *  Copies {@code target.remaining()} words of the food layer starting from
+     *  the word number {@param fromWord} to {@param target}. Stale words are zeros.
+     *  Each run of lines stamped with the current epoch is copied in bulk.
+     *  Must be called when creatures don't eat.
      */
-    private void initializeMap() {
-        for (int i = 0; i < rows; i++)
-            for (int j = 0; j < columns; j++)
-                map[i][j] = new MapUnit();
+    public void copyFoodWordsTo(int fromWord, LongBuffer target) {
+        requireDense();
+        int currentEpoch = epoch;
+        for (int word = fromWord, to = fromWord + target.remaining(); word < to; ) {
+            boolean current = food.getStamp(word >>> WORDS_PER_LINE_SHIFT) == currentEpoch;
+            int end = word;
+            do {
+                end = nextLineStart(end, to);
+            } while (end < to && (food.getStamp(end >>> WORDS_PER_LINE_SHIFT) == currentEpoch) == current);
+
+            int count = end - word;
+            int position = target.position();
+            if (current) {
+                food.copyWordsTo(word, target.slice(position, count));
+            } else {
+                for (int i = 0; i < count; i++)
+                    target.put(position + i, 0L);
+            }
+            target.position(position + count);
+            word = end;
+        }
+    }
+
+    /**
+     *  @return the first word of the line after the line of {@param word},
+     *  but at most {@param limit}.
+     */
+    private static int nextLineStart(int word, int limit) {
+        return (int) Math.min((long) ((word >>> WORDS_PER_LINE_SHIFT) + 1) << WORDS_PER_LINE_SHIFT, limit);
+    }
+
+    /**
+     *  Copies {@code source.remaining()} words to the food layer in bulk starting
+     *  from the word number {@param fromWord}. Can be used only for a map created
+     *  by {@code restore} before the simulation starts.
+     */
+    public void copyFoodWordsFrom(int fromWord, LongBuffer source) {
+        requireDense();
+        food.copyWordsFrom(fromWord, source);
     }
 
     /**
      *  @return a random value that is < {@param upperBound};
      */
-    public int getRandomValue(Random random, int upperBound) {
+    public int getRandomValue(RandomGenerator random, int upperBound) {
         return random.nextInt(upperBound);
     }
 
     /**
      *  @return a value in the lower and upper bounds range, INCLUDING both bounds.
      */
-    public int getRandomValue(Random random, int lowerBound, int upperBound) {
+    public int getRandomValue(RandomGenerator random, int lowerBound, int upperBound) {
         return lowerBound + random.nextInt(upperBound - lowerBound + 1);
     }
 
     /**
-     *  Performs an operation on each map unit.
+     *  Removes food in each map unit. It only starts a new epoch,
+     *  so all the stamped lines become stale.
      */
-    private void forEachMatrix(Consumer<MapUnit> consumer) {
-        for (int i = 0; i < rows; i++)
-            for (int j = 0; j < columns; j++)
-                consumer.accept(map[i][j]);
+    public void clearMapFood() {
+        if (chunks != null) {
+            chunks.clear();
+            return;
+        }
+        if (epoch == Integer.MAX_VALUE) {
+            // the stamps would repeat, so clear the layer once in 2^31 rounds;
+            food.clear();
+            epoch = 1;
+        } else {
+            epoch++;
+        }
     }
 
     /**
-     *  Removes food in each map unit.
+     *  Fills a map with food at random positions. Exactly {@code foodRate} of
+     *  the units get food if the map was empty. The distinct units are sampled
+     *  by Floyd's algorithm, which uses the food layer itself as a set of chosen
+     *  units, so it needs no additional memory.
+     *  Must be called by one thread when creatures don't eat.
      */
-    public void clearMapFood() {
-        forEachMatrix(MapUnit::eatFood);
+    public void fillMapWithFood() {
+        if (chunks != null) {
+            chunks.fill(fillings++);
+            return;
+        }
+        final var random = new SplittableRandom(SplitMix.hash(seed, fillings++));
+        long units = (long) rows * columns;
+        long unitsToFill = Math.round(units * foodRate);
+
+        for (long j = units - unitsToFill; j < units; j++) {
+            long unit = random.nextLong(j + 1);
+            if (hasFoodUnit(unit))
+                unit = j;
+            putFoodUnit(unit);
+        }
+        foodPlaced = unitsToFill;
     }
 
     /**
-     *  Fills a map with food at random positions.
+     *  Eats the food at a map unit with coordinates {@param row} and {@param column}.
+     *  The word of the bitset is read first, so a map unit without food costs no writes.
+     *  Can produce IndexOutOfBoundsException if coordinates are out of bounds of the map.
+     *  @return true if the map unit contained food and the current thread has eaten it.
      */
-    public void fillMapWithFood() {
-        final var random = new Random();
-        // ~10% will contain food. Use an additional 1% to fill
-        // some more units in case a random function can return
-        // a similar row and column.
-        int unitsToFill = (int)(rows * columns * 0.11);
-
-        for (int i = 0; i < unitsToFill; i++) {
-            int rowToFill = getRandomValue(random, rows),
-                columnToFill = getRandomValue(random, columns);
-            map[rowToFill][columnToFill].putFood();
+    public boolean eatFood(int row, int column) {
+        return tryEatFood(row, column) == EatResult.EATEN;
+    }
+
+    /**
+     *  The same as {@code eatFood}, but it also reports whether the food
+     *  was taken by another thread between the reading and the writing.
+     *  Can produce IndexOutOfBoundsException if coordinates are out of bounds of the map.
+     */
+    public EatResult tryEatFood(int row, int column) {
+        if (chunks != null)
+            return chunks.tryEatFood(Objects.checkIndex(row, rows), Objects.checkIndex(column, columns));
+        long unit = unitIndex(row, column);
+        int word = (int) (unit >>> UNITS_PER_WORD_SHIFT);
+        long mask = 1L << unit;
+
+        if (food.getStamp(word >>> WORDS_PER_LINE_SHIFT) != epoch)
+            return EatResult.NO_FOOD;
+
+        long value = food.getWord(word);
+        if ((value & mask) == 0)
+            return EatResult.NO_FOOD;
+        while ((value & mask) != 0) {
+            long witness = food.compareAndExchangeWord(word, value, value & ~mask);
+            if (witness == value)
+                return EatResult.EATEN;
+            // another unit of the same word was changed; try again;
+            value = witness;
+        }
+        return EatResult.CONTESTED;
+    }
+
+    /**
+     *  Puts food at a map unit with coordinates {@param row} and {@param column}.
+     *  Food is placed by one thread at a time.
+     *  Can produce IndexOutOfBoundsException if coordinates are out of bounds of the map.
+     */
+    public void putFood(int row, int column) {
+        if (chunks != null) {
+            chunks.putFood(Objects.checkIndex(row, rows), Objects.checkIndex(column, columns));
+            return;
+        }
+        putFoodUnit(unitIndex(row, column));
+    }
+
+    /**
+     *  Puts food at a map unit with index {@param unit}. A stale line is
+     *  cleared and stamped with the current epoch first.
+     */
+    private void putFoodUnit(long unit) {
+        int word = (int) (unit >>> UNITS_PER_WORD_SHIFT);
+        long mask = 1L << unit;
+
+        int line = word >>> WORDS_PER_LINE_SHIFT;
+        int currentEpoch = epoch;
+        if (food.getStamp(line) != currentEpoch) {
+            int firstWord = line << WORDS_PER_LINE_SHIFT;
+            int lastWord = nextLineStart(firstWord, food.getNumOfWords());
+            for (int i = firstWord; i < lastWord; i++)
+                food.setWord(i, 0L);
+            // the cleared words are visible to a thread that reads the new stamp;
+            food.setStamp(line, currentEpoch);
+        }
+
+        long value = food.getWord(word);
+        while ((value & mask) == 0) {
+            long witness = food.compareAndExchangeWord(word, value, value | mask);
+            if (witness == value)
+                return;
+            value = witness;
         }
     }
 
+    /**
+     *  @return true if a map unit with coordinates {@param row} and
+     *  {@param column} contains food.
+     */
+    public boolean hasFood(int row, int column) {
+        if (chunks != null)
+            return chunks.hasFood(Objects.checkIndex(row, rows), Objects.checkIndex(column, columns));
+        return hasFoodUnit(unitIndex(row, column));
+    }
+
+    private boolean hasFoodUnit(long unit) {
+        return (getFoodWord((int) (unit >>> UNITS_PER_WORD_SHIFT)) & (1L << unit)) != 0;
+    }
+
+    /**
+     *  @return a word number {@param word} of the food layer; it is zero
+     *  if the line of the word is stale.
+     */
+    public long getFoodWord(int word) {
+        requireDense();
+        if (food.getStamp(word >>> WORDS_PER_LINE_SHIFT) != epoch)
+            return 0L;
+        return food.getWord(word);
+    }
+
+    /**
+     *  Counts the food on the map. The words of each run of lines stamped with
+     *  the current epoch are counted by one call of {@code FoodStorage.countBits}.
+     *  Must be called when creatures don't eat.
+     *  @return a number of map units which contain food;
+     */
+    public long countFood() {
+        if (chunks != null)
+            return chunks.countFood();
+        int currentEpoch = epoch;
+        int lines = food.getNumOfLines();
+        long count = 0;
+        for (int line = 0; line < lines; line++) {
+            if (food.getStamp(line) != currentEpoch)
+                continue;
+            int firstLine = line;
+            while (line + 1 < lines && food.getStamp(line + 1) == currentEpoch)
+                line++;
+            count += food.countBits(firstLine << WORDS_PER_LINE_SHIFT,
+                    nextLineStart(line << WORDS_PER_LINE_SHIFT, food.getNumOfWords()));
+        }
+        return count;
+    }
+
     /**
      * @return MapUnit which correspond to coordinates {@param row}
-     * and {@param column}.
+     * and {@param column}. A map unit is a view of one bit of the food layer,
+     * so the hot paths should use {@code eatFood(int, int)} directly.
      * Can produce IndexOutOfBoundsException if {@param row} >= rows or
      * {@param column} >= columns.
      */
@@ -89,7 +416,23 @@ public class Map {
         if (row >= rows || column >= columns)
             throw new IndexOutOfBoundsException("Row or column value is out" +
                     " of bounds of matrix size.");
-        return map[row][column];
+        return new MapUnit(this, row, column);
+    }
+
+    /**
+     *  Throws UnsupportedOperationException if the map is chunked,
+     *  so it has no words of a dense food layer.
+     */
+    private void requireDense() {
+        if (chunks != null)
+            throw new UnsupportedOperationException("A chunked map has no dense food layer.");
+    }
+
+    /**
+     *  @return an index of a bit that corresponds to the map unit.
+     */
+    private long unitIndex(int row, int column) {
+        return (long) Objects.checkIndex(row, rows) * columns + Objects.checkIndex(column, columns);
     }
 
     /* Getters */
@@ -100,4 +443,67 @@ public class Map {
     public int getNumOfColumns() {
         return columns;
     }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public double getFoodRate() {
+        return foodRate;
+    }
+
+    /**
+     *  @return a number of performed fillings; it defines the food of the next filling.
+     */
+    public long getFillings() {
+        return fillings;
+    }
+
+    /**
+     *  @return a number of words of the food layer.
+     */
+    public int getNumOfFoodWords() {
+        requireDense();
+        return food.getNumOfWords();
+    }
+
+    /**
+     *  @return true if the food layer is outside of the heap.
+     */
+    public boolean isFoodOffHeap() {
+        return food != null && food.isOffHeap();
+    }
+
+    /**
+     *  @return true if the map is created by {@code chunked}.
+     */
+    public boolean isChunked() {
+        return chunks != null;
+    }
+
+    /**
+     *  @return a number of allocated chunks of a chunked map; it is zero for a dense map.
+     */
+    public int getNumOfChunks() {
+        return (chunks != null) ? chunks.getNumOfChunks() : 0;
+    }
+
+    /**
+     *  @return a number of food-units placed by the last filling; for a chunked
+     *  map, a number placed in the chunks which creatures have reached since it.
+     */
+    public long getFoodPlaced() {
+        return (chunks != null) ? chunks.getFoodPlaced() : foodPlaced;
+    }
+
+    /**
+     *  @return a number of food-units placed since the last filling in the chunks
+     *  of a chunked map whose first rows are in a range [fromRow, toRow). A dense
+     *  map is filled at once, so it throws UnsupportedOperationException.
+     */
+    public long getFoodPlaced(int fromRow, int toRow) {
+        if (chunks == null)
+            throw new UnsupportedOperationException("A dense map has no chunks.");
+        return chunks.getFoodPlaced(fromRow, toRow);
+    }
 }
@@ -1,30 +1,45 @@
 package Multithreading.ThreadsLearning.NaturalSelection.Map;
 
-import java.util.concurrent.atomic.AtomicBoolean;
-
 /**
  * A class that represents a single map-unit of a total map.
  * It contains information only about if the current unit has food or not.
+ * <p>The food itself is stored in the bitset of the {@code Map}, this
+ *    object is a light view of one bit of it.</p>
  */
 public class MapUnit {
-    // an atomic boolean flag that contains info if the food is present at current unit
-    private final AtomicBoolean hasFood = new AtomicBoolean(false);
+    // a map that stores the food of the current unit;
+    private final Map map;
+
+    // coordinates of the current unit;
+    private final int row;
+    private final int column;
+
+    MapUnit(Map map, int row, int column) {
+        this.map = map;
+        this.row = row;
+        this.column = column;
+    }
 
     /**
      *  @return true if a current map unit contains food.
      */
     public boolean eatFood() {
-        return hasFood.getAndSet(false);
+        return map.eatFood(row, column);
     }
 
     /**
      *  This method puts a food at current map unit.
-     *  After calling this method a field "hasFood"
-     *  will be set to true.
+     *  After calling this method the unit will contain food.
      */
     public void putFood() {
-        // don't use CAS because this value will be set
-        // by only one thread at the start of each round.
-        hasFood.set(true);
+        map.putFood(row, column);
+    }
+
+    /**
+     *  @return true if a current map unit contains food;
+     *  the food isn't eaten.
+     */
+    public boolean hasFood() {
+        return map.hasFood(row, column);
     }
 }
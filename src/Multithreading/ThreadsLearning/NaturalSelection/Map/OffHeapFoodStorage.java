@@ -0,0 +1,201 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Map;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ *  The food layer outside of the heap: in direct buffers or in buffers mapped
+ *  to a file. A buffer can't be larger than 2 GB, so the words and the stamps
+ *  are split into chunks of {@code 2^CHUNK_SHIFT} elements. The elements are
+ *  accessed atomically through the view {@code VarHandle}s of the buffers.
+ *  <p>The buffers are in the native byte order, as the buffers of checkpoints,
+ *     so the bulk copies are plain copies of memory.</p>
+ *  <p>A mapped file has the words and then the stamps. It is a working storage
+ *     rather than a snapshot: it is created empty, and the words are valid only
+ *     with the epoch of the map (use checkpoints to save a map).</p>
+ */
+final class OffHeapFoodStorage implements FoodStorage {
+    private static final VarHandle WORDS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle STAMPS =
+            MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    // a number of elements in one chunk; a chunk of words takes 1 GB;
+    private static final int CHUNK_SHIFT = 27;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    private final int words;
+    private final int lines;
+    private final ByteBuffer[] wordChunks;
+    private final ByteBuffer[] stampChunks;
+
+    // views of the chunks of words for the bulk methods;
+    private final LongBuffer[] wordViews;
+
+    private OffHeapFoodStorage(int words, int lines, ByteBuffer[] wordChunks, ByteBuffer[] stampChunks) {
+        this.words = words;
+        this.lines = lines;
+        this.wordChunks = wordChunks;
+        this.stampChunks = stampChunks;
+        this.wordViews = new LongBuffer[wordChunks.length];
+        for (int i = 0; i < wordChunks.length; i++) {
+            wordChunks[i].order(ByteOrder.nativeOrder());
+            wordViews[i] = wordChunks[i].asLongBuffer();
+        }
+        for (ByteBuffer chunk : stampChunks)
+            chunk.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     *  @return a storage in direct buffers. The direct memory is limited by
+     *  {@code -XX:MaxDirectMemorySize}, which is the max heap size by default.
+     */
+    static OffHeapFoodStorage allocateDirect(int words, int lines) {
+        ByteBuffer[] wordChunks = new ByteBuffer[chunks(words)];
+        for (int i = 0; i < wordChunks.length; i++)
+            wordChunks[i] = ByteBuffer.allocateDirect(chunkLength(words, i) * Long.BYTES);
+        ByteBuffer[] stampChunks = new ByteBuffer[chunks(lines)];
+        for (int i = 0; i < stampChunks.length; i++)
+            stampChunks[i] = ByteBuffer.allocateDirect(chunkLength(lines, i) * Integer.BYTES);
+        return new OffHeapFoodStorage(words, lines, wordChunks, stampChunks);
+    }
+
+    /**
+     *  @return a storage in buffers mapped to {@param file}; the file is created or
+     *  truncated, so all the elements are zero. The mappings stay valid after the
+     *  channel is closed.
+     */
+    static OffHeapFoodStorage map(Path file, int words, int lines) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                StandardOpenOption.WRITE))
+        {
+            ByteBuffer[] wordChunks = new ByteBuffer[chunks(words)];
+            for (int i = 0; i < wordChunks.length; i++)
+                wordChunks[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                        ((long) i << CHUNK_SHIFT) * Long.BYTES, (long) chunkLength(words, i) * Long.BYTES);
+
+            long stampsOffset = (long) words * Long.BYTES;
+            ByteBuffer[] stampChunks = new ByteBuffer[chunks(lines)];
+            for (int i = 0; i < stampChunks.length; i++)
+                stampChunks[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                        stampsOffset + ((long) i << CHUNK_SHIFT) * Integer.BYTES,
+                        (long) chunkLength(lines, i) * Integer.BYTES);
+            return new OffHeapFoodStorage(words, lines, wordChunks, stampChunks);
+        }
+    }
+
+    private static int chunks(int elements) {
+        return ((elements - 1) >>> CHUNK_SHIFT) + 1;
+    }
+
+    private static int chunkLength(int elements, int chunk) {
+        return Math.min(1 << CHUNK_SHIFT, elements - (chunk << CHUNK_SHIFT));
+    }
+
+    @Override
+    public long getWord(int word) {
+        return (long) WORDS.getVolatile(wordChunks[word >>> CHUNK_SHIFT], (word & CHUNK_MASK) << 3);
+    }
+
+    @Override
+    public void setWord(int word, long value) {
+        WORDS.setVolatile(wordChunks[word >>> CHUNK_SHIFT], (word & CHUNK_MASK) << 3, value);
+    }
+
+    @Override
+    public long compareAndExchangeWord(int word, long expected, long value) {
+        return (long) WORDS.compareAndExchange(wordChunks[word >>> CHUNK_SHIFT],
+                (word & CHUNK_MASK) << 3, expected, value);
+    }
+
+    @Override
+    public int getStamp(int line) {
+        return (int) STAMPS.getAcquire(stampChunks[line >>> CHUNK_SHIFT], (line & CHUNK_MASK) << 2);
+    }
+
+    @Override
+    public void setStamp(int line, int stamp) {
+        STAMPS.setRelease(stampChunks[line >>> CHUNK_SHIFT], (line & CHUNK_MASK) << 2, stamp);
+    }
+
+    @Override
+    public void clear() {
+        for (ByteBuffer chunk : wordChunks)
+            clear(chunk);
+        for (ByteBuffer chunk : stampChunks)
+            clear(chunk);
+        VarHandle.releaseFence();
+    }
+
+    /**
+     *  Zeroes {@param chunk}; a chunk of stamps may end with a half of a long.
+     */
+    private static void clear(ByteBuffer chunk) {
+        int i = 0;
+        for (int length = chunk.capacity(); i + Long.BYTES <= length; i += Long.BYTES)
+            chunk.putLong(i, 0L);
+        if (i < chunk.capacity())
+            chunk.putInt(i, 0);
+    }
+
+    @Override
+    public long countBits(int fromWord, int toWord) {
+        long count = 0;
+        for (int word = fromWord; word < toWord; ) {
+            LongBuffer view = wordViews[word >>> CHUNK_SHIFT];
+            int from = word & CHUNK_MASK;
+            int to = Math.min(view.capacity(), from + toWord - word);
+            for (int i = from; i < to; i++)
+                count += Long.bitCount(view.get(i));
+            word += to - from;
+        }
+        return count;
+    }
+
+    @Override
+    public void copyWordsTo(int fromWord, LongBuffer target) {
+        for (int word = fromWord, to = fromWord + target.remaining(); word < to; ) {
+            LongBuffer view = wordViews[word >>> CHUNK_SHIFT];
+            int from = word & CHUNK_MASK;
+            int count = Math.min(view.capacity() - from, to - word);
+            target.put(view.slice(from, count));
+            word += count;
+        }
+    }
+
+    @Override
+    public void copyWordsFrom(int fromWord, LongBuffer source) {
+        for (int word = fromWord, to = fromWord + source.remaining(); word < to; ) {
+            LongBuffer view = wordViews[word >>> CHUNK_SHIFT];
+            int from = word & CHUNK_MASK;
+            int count = Math.min(view.capacity() - from, to - word);
+            view.put(from, source, source.position(), count);
+            source.position(source.position() + count);
+            word += count;
+        }
+    }
+
+    /* Getters */
+    @Override
+    public int getNumOfWords() {
+        return words;
+    }
+
+    @Override
+    public int getNumOfLines() {
+        return lines;
+    }
+
+    @Override
+    public boolean isOffHeap() {
+        return true;
+    }
+}
@@ -0,0 +1,220 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Persistence;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Inhabitants.QuadrantPopulation;
+import Multithreading.ThreadsLearning.NaturalSelection.Map.FoodStorage;
+import Multithreading.ThreadsLearning.NaturalSelection.Map.Map;
+import Multithreading.ThreadsLearning.NaturalSelection.Utilities.StatisticsCollector;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ *  A binary checkpoint of the whole state of a simulation at a round boundary:
+ *  the food layer of the map, the population arrays, the state of the random
+ *  streams and the statistics.
+ *  <p>The random values are counter-based, so the state of the random streams is
+ *     just the seeds, the number of completed rounds and the number of fillings of
+ *     the map. A resumed simulation continues exactly as the saved one would.</p>
+ *  <p>The file is written and read through memory-mapped buffers in the native byte
+ *     order, so the arrays are copied in bulk without any parsing. Layout (each
+ *     section starts at an offset aligned to 8 bytes):</p>
+ *  <pre>
+ *      header       HEADER_BYTES: magic, version, byte order mark, the scalars
+ *                   of the map, the population and the length of the statistics;
+ *      food         a long per word of the food layer;
+ *      population   int columns: rows, columns, eaten, ids;
+ *      statistics   the history of the {@code StatisticsCollector};
+ *  </pre>
+ *  <p>A checkpoint is written to a temporary file which replaces the previous
+ *     checkpoint only when it is complete.</p>
+ */
+public final class Checkpoint {
+    private static final int MAGIC = 0x51534350; // "QSCP"
+    private static final int VERSION = 1;
+    private static final int BYTE_ORDER_MARK = 0x01020304;
+    private static final int HEADER_BYTES = 128;
+
+    // a max number of elements of an array which are mapped at once;
+    private static final int CHUNK = 1 << 27;
+
+    /**
+     *  The restored state of a simulation.
+     */
+    public record State(Map simulationMap, QuadrantPopulation population,
+                        StatisticsCollector statisticsCollector) {}
+
+    private Checkpoint() {}
+
+    /**
+     *  Writes the state of a simulation to {@param file}. The map of the
+     *  population can't be chunked.
+     *  Must be called at the round boundary when no creature steps.
+     */
+    public static void write(Path file, QuadrantPopulation population,
+                             StatisticsCollector statisticsCollector) throws IOException
+    {
+        Map map = population.getSimulationMap();
+        if (map.isChunked())
+            throw new IllegalArgumentException("A checkpoint of a chunked map isn't supported.");
+        int words = map.getNumOfFoodWords();
+        int size = population.size();
+        byte[] statistics = encode(statisticsCollector);
+
+        long foodOffset = HEADER_BYTES;
+        long populationOffset = align(foodOffset + (long) words * Long.BYTES);
+        long statisticsOffset = align(populationOffset + 4L * size * Integer.BYTES);
+        long length = statisticsOffset + statistics.length;
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                StandardOpenOption.WRITE))
+        {
+            ByteBuffer header = map(channel, FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(BYTE_ORDER_MARK)
+                  .putInt(map.getNumOfRows()).putInt(map.getNumOfColumns())
+                  .putLong(map.getSeed()).putDouble(map.getFoodRate())
+                  .putLong(map.getFillings()).putLong(map.getFoodPlaced()).putInt(words)
+                  .putLong(population.getSeed()).putInt(population.getReproduceThreshold())
+                  .putInt(size).putInt(population.getNextId()).putInt(population.getRound())
+                  .putInt(statistics.length);
+
+            for (int from = 0; from < words; from += CHUNK) {
+                int count = Math.min(CHUNK, words - from);
+                map.copyFoodWordsTo(from, map(channel, FileChannel.MapMode.READ_WRITE,
+                        foodOffset + (long) from * Long.BYTES, (long) count * Long.BYTES).asLongBuffer());
+            }
+
+            for (int from = 0; from < size; from += CHUNK) {
+                int count = Math.min(CHUNK, size - from);
+                population.copyColumnsTo(from,
+                        column(channel, FileChannel.MapMode.READ_WRITE, populationOffset, size, 0, from, count),
+                        column(channel, FileChannel.MapMode.READ_WRITE, populationOffset, size, 1, from, count),
+                        column(channel, FileChannel.MapMode.READ_WRITE, populationOffset, size, 2, from, count),
+                        column(channel, FileChannel.MapMode.READ_WRITE, populationOffset, size, 3, from, count));
+            }
+
+            if (statistics.length > 0)
+                map(channel, FileChannel.MapMode.READ_WRITE, statisticsOffset, statistics.length)
+                        .put(statistics);
+            if (channel.size() < length)
+                channel.truncate(length);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     *  Reads the state of a simulation from {@param file}.
+     *  @throws IOException if the file isn't a checkpoint of this version;
+     */
+    public static State read(Path file) throws IOException {
+        return read(file, FoodStorage.ON_HEAP);
+    }
+
+    /**
+     *  The same as {@code read}, but the food layer of the map is allocated
+     *  by {@param allocator}.
+     */
+    public static State read(Path file, FoodStorage.Allocator allocator) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES)
+                throw new IOException("Not a checkpoint: " + file);
+            ByteBuffer header = map(channel, FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION)
+                throw new IOException("Not a checkpoint of version " + VERSION + ": " + file);
+            if (header.getInt() != BYTE_ORDER_MARK)
+                throw new IOException("A checkpoint was written with another byte order: " + file);
+
+            int rows = header.getInt(), columns = header.getInt();
+            long mapSeed = header.getLong();
+            double foodRate = header.getDouble();
+            long fillings = header.getLong(), foodPlaced = header.getLong();
+            int words = header.getInt();
+            long populationSeed = header.getLong();
+            int reproduceThreshold = header.getInt();
+            int size = header.getInt(), nextId = header.getInt(), round = header.getInt();
+            int statisticsLength = header.getInt();
+
+            Map map = Map.restore(rows, columns, mapSeed, foodRate, fillings, foodPlaced, allocator);
+            if (map.getNumOfFoodWords() != words)
+                throw new IOException("A food layer of a checkpoint is damaged: " + file);
+
+            long foodOffset = HEADER_BYTES;
+            long populationOffset = align(foodOffset + (long) words * Long.BYTES);
+            long statisticsOffset = align(populationOffset + 4L * size * Integer.BYTES);
+            if (channel.size() < statisticsOffset + statisticsLength)
+                throw new IOException("A checkpoint is truncated: " + file);
+
+            for (int from = 0; from < words; from += CHUNK) {
+                int count = Math.min(CHUNK, words - from);
+                map.copyFoodWordsFrom(from, map(channel, FileChannel.MapMode.READ_ONLY,
+                        foodOffset + (long) from * Long.BYTES, (long) count * Long.BYTES).asLongBuffer());
+            }
+
+            QuadrantPopulation population = QuadrantPopulation.restore(map, populationSeed,
+                    reproduceThreshold, size, nextId, round);
+            for (int from = 0; from < size; from += CHUNK) {
+                int count = Math.min(CHUNK, size - from);
+                population.copyColumnsFrom(from,
+                        column(channel, FileChannel.MapMode.READ_ONLY, populationOffset, size, 0, from, count),
+                        column(channel, FileChannel.MapMode.READ_ONLY, populationOffset, size, 1, from, count),
+                        column(channel, FileChannel.MapMode.READ_ONLY, populationOffset, size, 2, from, count),
+                        column(channel, FileChannel.MapMode.READ_ONLY, populationOffset, size, 3, from, count));
+            }
+
+            byte[] statistics = new byte[statisticsLength];
+            if (statisticsLength > 0)
+                map(channel, FileChannel.MapMode.READ_ONLY, statisticsOffset, statisticsLength)
+                        .get(statistics);
+            StatisticsCollector statisticsCollector = StatisticsCollector.readHistory(
+                    new DataInputStream(new ByteArrayInputStream(statistics)));
+
+            return new State(map, population, statisticsCollector);
+        }
+    }
+
+    /**
+     *  @return a view of {@param count} elements starting from {@param from} of the
+     *  population column number {@param column}.
+     */
+    private static IntBuffer column(FileChannel channel, FileChannel.MapMode mode,
+                                             long populationOffset, int size, int column,
+                                             int from, int count) throws IOException
+    {
+        long offset = populationOffset + ((long) column * size + from) * Integer.BYTES;
+        return map(channel, mode, offset, (long) count * Integer.BYTES).asIntBuffer();
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode,
+                                        long offset, long length) throws IOException
+    {
+        MappedByteBuffer buffer = channel.map(mode, offset, length);
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    private static byte[] encode(StatisticsCollector statisticsCollector) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        statisticsCollector.writeHistory(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,248 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Persistence;
+
+import Multithreading.ThreadsLearning.NaturalSelection.Inhabitants.QuadrantPopulation;
+import Multithreading.ThreadsLearning.NaturalSelection.Map.Map;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ *  An append-only binary stream of the state of a simulation at each round boundary.
+ *  The stream is read by {@code EventLogReplay}.
+ *  <p>A frame of a round is encoded by the thread that finishes the round into one of
+ *     {@code BUFFERS} reusable buffers, and a background writer thread writes the
+ *     full buffers to the file channel in order. So the simulation only pays for
+ *     the encoding, and the file is written sequentially. If the writer falls behind,
+ *     the simulation waits for a free buffer.</p>
+ *  <p>The stream is a header followed by frames (big-endian):</p>
+ *  <pre>
+ *      header   magic "QSEV", version, rows, columns, map seed, population seed;
+ *      frame    a length of the rest of the frame, round, size, born, died,
+ *               a number of food units, then varints:
+ *                   for each creature in the order of ids: a delta of the id
+ *                   and a zigzag delta of its map unit (row * columns + column);
+ *                   for each food unit in ascending order: a delta of its map unit;
+ *  </pre>
+ *  <p>The frame of round "r" is the state after "r" rounds: the alive creatures
+ *     and the food placed for the next round. The frame of round zero is the initial state.</p>
+ */
+public class EventLog implements Closeable {
+    static final int MAGIC = 0x51534556; // "QSEV"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 4 * Integer.BYTES + 2 * Long.BYTES;
+
+    // the fixed part of a frame after its length: round, size, born, died, food units;
+    static final int FRAME_HEADER_BYTES = 5 * Integer.BYTES;
+
+    // a number of buffers shared by the simulation and the writer thread;
+    private static final int BUFFERS = 2;
+    private static final int INITIAL_BUFFER_BYTES = 1 << 16;
+
+    // the max length of a varint of a long value;
+    private static final int MAX_VARINT_BYTES = 10;
+
+    // a buffer which tells the writer thread to stop;
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final FileChannel channel;
+    private final int columns;
+
+    // empty buffers for the simulation and full buffers for the writer thread;
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(BUFFERS);
+    private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(BUFFERS + 1);
+
+    private final Thread writer;
+
+    // the first error of the writer thread;
+    private volatile IOException writeError;
+
+    private long bytesWritten;
+    private int framesAppended;
+    private boolean closed;
+
+    /**
+     *  Creates the file {@param file} (or truncates it) and writes the header
+     *  of the stream of {@param population}. The frames have the food layer
+     *  by words, so the map of the population can't be chunked.
+     */
+    public EventLog(Path file, QuadrantPopulation population) throws IOException {
+        Map simulationMap = population.getSimulationMap();
+        if (simulationMap.isChunked())
+            throw new IllegalArgumentException("An event log of a chunked map isn't supported.");
+        this.columns = simulationMap.getNumOfColumns();
+        this.channel = FileChannel.open(file, CREATE, TRUNCATE_EXISTING, WRITE);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION)
+              .putInt(simulationMap.getNumOfRows()).putInt(columns)
+              .putLong(simulationMap.getSeed()).putLong(population.getSeed())
+              .flip();
+        writeFully(header);
+
+        for (int i = 0; i < BUFFERS; i++)
+            free.add(ByteBuffer.allocateDirect(INITIAL_BUFFER_BYTES));
+
+        this.writer = new Thread(this::writeBuffers, "event-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     *  Appends the frame of the current state of {@param population}.
+     *  Must be called at the round boundary when no creature steps.
+     *  @param born a number of creatures born at the boundary;
+     *  @param died a number of creatures died at the boundary;
+     *  @throws UncheckedIOException if the writer thread failed to write a frame;
+     */
+    public void append(QuadrantPopulation population, int born, int died) {
+        if (closed)
+            throw new IllegalStateException("Event log is closed.");
+        checkWriteError();
+
+        Map simulationMap = population.getSimulationMap();
+        int size = population.size();
+        int words = simulationMap.getNumOfFoodWords();
+        int foodUnits = (int) simulationMap.countFood();
+
+        ByteBuffer buffer = takeFreeBuffer(Integer.BYTES + FRAME_HEADER_BYTES
+                + ((long) size * 2 + foodUnits) * MAX_VARINT_BYTES);
+        int lengthPosition = buffer.position();
+        buffer.putInt(0).putInt(population.getRound()).putInt(size)
+              .putInt(born).putInt(died).putInt(foodUnits);
+
+        int previousId = 0;
+        long previousUnit = 0;
+        for (int i = 0; i < size; i++) {
+            long unit = (long) population.getRow(i) * columns + population.getColumn(i);
+            putVarint(buffer, population.getId(i) - previousId);
+            putVarint(buffer, (unit - previousUnit) << 1 ^ (unit - previousUnit) >> 63);
+            previousId = population.getId(i);
+            previousUnit = unit;
+        }
+
+        previousUnit = 0;
+        for (int word = 0; word < words; word++) {
+            long bits = simulationMap.getFoodWord(word);
+            while (bits != 0) {
+                long unit = ((long) word << 6) + Long.numberOfTrailingZeros(bits);
+                putVarint(buffer, unit - previousUnit);
+                previousUnit = unit;
+                bits &= bits - 1;
+            }
+        }
+
+        buffer.putInt(lengthPosition, buffer.position() - lengthPosition - Integer.BYTES);
+        buffer.flip();
+        full.add(buffer);
+        framesAppended++;
+    }
+
+    /**
+     *  Waits until all the appended frames are written and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        full.add(END);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the event log.");
+        } finally {
+            channel.close();
+        }
+        if (writeError != null)
+            throw writeError;
+    }
+
+    /**
+     *  @return an empty buffer which can hold at least {@param bytes} bytes.
+     */
+    private ByteBuffer takeFreeBuffer(long bytes) {
+        if (bytes > Integer.MAX_VALUE)
+            throw new IllegalStateException("A frame of the event log is too large.");
+        ByteBuffer buffer;
+        try {
+            buffer = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the event log.", e);
+        }
+        if (buffer.capacity() < bytes)
+            buffer = ByteBuffer.allocateDirect((int) Math.max(bytes, 2L * buffer.capacity()));
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     *  The loop of the writer thread: writes the full buffers until {@code END}.
+     */
+    private void writeBuffers() {
+        while (true) {
+            ByteBuffer buffer;
+            try {
+                buffer = full.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (buffer == END)
+                return;
+            if (writeError == null) {
+                try {
+                    writeFully(buffer);
+                } catch (IOException e) {
+                    writeError = e;
+                }
+            }
+            free.add(buffer);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            bytesWritten += channel.write(buffer);
+    }
+
+    private void checkWriteError() {
+        if (writeError != null)
+            throw new UncheckedIOException(writeError);
+    }
+
+    /**
+     *  Writes {@param value} as an unsigned varint: 7 bits per byte,
+     *  the high bit is set if more bytes follow.
+     */
+    static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /* Getters */
+    public int getFramesAppended() {
+        return framesAppended;
+    }
+
+    /**
+     *  @return a number of bytes written to the file; it is exact after {@code close}.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+}
@@ -0,0 +1,234 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Persistence;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ *  Rebuilds the state of any round of a simulation from an {@code EventLog}
+ *  without re-simulating it.
+ *  <p>When the stream is opened, only the fixed parts of its frames are read to
+ *     index the offsets of the rounds; a frame is decoded when its round is requested.</p>
+ *  <p>Usage: {@code EventLogReplay <file> [round...]} prints a summary of each round
+ *     (of all rounds if none is given) and draws the map of a requested round
+ *     if it is small enough.</p>
+ */
+public class EventLogReplay implements Closeable {
+    // a map is drawn if it isn't wider or higher than this;
+    private static final int MAX_DRAWN_SIDE = 80;
+
+    /**
+     *  The state of a simulation after {@code round} rounds. The creatures are
+     *  ordered by ids, and the food units are the map units (row * columns + column)
+     *  which contain food for the next round.
+     */
+    public record RoundState(int round, int born, int died, int[] ids, int[] rows,
+                             int[] columns, long[] foodUnits)
+    {
+        public int size() {
+            return ids.length;
+        }
+    }
+
+    private final FileChannel channel;
+
+    // params of the stream
+    private final int rows;
+    private final int columns;
+    private final long mapSeed;
+    private final long populationSeed;
+
+    // rounds of the frames and offsets of their lengths in the file;
+    private int[] rounds = new int[16];
+    private long[] offsets = new long[16];
+    private int frames;
+
+    public EventLogReplay(Path file) throws IOException {
+        this.channel = FileChannel.open(file, READ);
+        try {
+            ByteBuffer header = read(0, EventLog.HEADER_BYTES);
+            if (header.getInt() != EventLog.MAGIC || header.getInt() != EventLog.VERSION)
+                throw new IOException("Not an event log of version " + EventLog.VERSION + ": " + file);
+            this.rows = header.getInt();
+            this.columns = header.getInt();
+            this.mapSeed = header.getLong();
+            this.populationSeed = header.getLong();
+            indexFrames();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     *  Reads the lengths and rounds of all the complete frames. A frame which
+     *  is cut by the end of the file (an interrupted run) is ignored.
+     */
+    private void indexFrames() throws IOException {
+        long offset = EventLog.HEADER_BYTES;
+        long fileSize = channel.size();
+        while (offset + 2 * Integer.BYTES <= fileSize) {
+            ByteBuffer fixed = read(offset, 2 * Integer.BYTES);
+            int length = fixed.getInt();
+            if (offset + Integer.BYTES + length > fileSize)
+                break;
+            if (frames == rounds.length) {
+                rounds = Arrays.copyOf(rounds, frames * 2);
+                offsets = Arrays.copyOf(offsets, frames * 2);
+            }
+            rounds[frames] = fixed.getInt();
+            offsets[frames] = offset;
+            frames++;
+            offset += Integer.BYTES + length;
+        }
+    }
+
+    /**
+     *  @return the state after {@param round} rounds;
+     *  @throws IllegalArgumentException if the stream has no such round;
+     */
+    public RoundState readRound(int round) throws IOException {
+        int frame = Arrays.binarySearch(rounds, 0, frames, round);
+        if (frame < 0)
+            throw new IllegalArgumentException("There is no round " + round + " in the event log.");
+
+        int length = read(offsets[frame], Integer.BYTES).getInt();
+        ByteBuffer buffer = read(offsets[frame] + Integer.BYTES, length);
+
+        int frameRound = buffer.getInt();
+        int size = buffer.getInt();
+        int born = buffer.getInt();
+        int died = buffer.getInt();
+        int foodCount = buffer.getInt();
+
+        int[] ids = new int[size];
+        int[] creatureRows = new int[size];
+        int[] creatureColumns = new int[size];
+        int id = 0;
+        long unit = 0;
+        for (int i = 0; i < size; i++) {
+            id += (int) getVarint(buffer);
+            long zigzag = getVarint(buffer);
+            unit += (zigzag >>> 1) ^ -(zigzag & 1);
+            ids[i] = id;
+            creatureRows[i] = (int) (unit / columns);
+            creatureColumns[i] = (int) (unit % columns);
+        }
+
+        long[] foodUnits = new long[foodCount];
+        unit = 0;
+        for (int i = 0; i < foodCount; i++) {
+            unit += getVarint(buffer);
+            foodUnits[i] = unit;
+        }
+        return new RoundState(frameRound, born, died, ids, creatureRows, creatureColumns, foodUnits);
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0)
+                throw new EOFException("The event log is truncated.");
+        }
+        return buffer.flip();
+    }
+
+    private static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /* Getters */
+    public int getNumOfRows() {
+        return rows;
+    }
+
+    public int getNumOfColumns() {
+        return columns;
+    }
+
+    public long getMapSeed() {
+        return mapSeed;
+    }
+
+    public long getPopulationSeed() {
+        return populationSeed;
+    }
+
+    /**
+     *  @return the rounds of the stream in ascending order.
+     */
+    public int[] getRounds() {
+        return Arrays.copyOf(rounds, frames);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: EventLogReplay <file> [round...]");
+            System.exit(2);
+        }
+
+        try (var replay = new EventLogReplay(Path.of(args[0]))) {
+            System.out.printf("(*) Map %dx%d, map seed %d, population seed %d, %d rounds%n",
+                    replay.getNumOfRows(), replay.getNumOfColumns(), replay.getMapSeed(),
+                    replay.getPopulationSeed(), replay.getRounds().length);
+
+            if (args.length == 1) {
+                for (int round : replay.getRounds())
+                    printSummary(replay.readRound(round));
+                return;
+            }
+            for (int i = 1; i < args.length; i++) {
+                RoundState state = replay.readRound(Integer.parseInt(args[i]));
+                printSummary(state);
+                if (replay.getNumOfRows() <= MAX_DRAWN_SIDE && replay.getNumOfColumns() <= MAX_DRAWN_SIDE)
+                    draw(state, replay.getNumOfRows(), replay.getNumOfColumns());
+            }
+        }
+    }
+
+    private static void printSummary(RoundState state) {
+        System.out.printf("Round %d: %d creatures, %d born, %d died, %d food units%n",
+                state.round(), state.size(), state.born(), state.died(), state.foodUnits().length);
+    }
+
+    /**
+     *  Draws the map: a digit is a number of creatures at a map unit ('+' if
+     *  there are more than nine), '*' is food and '.' is an empty unit.
+     */
+    private static void draw(RoundState state, int rows, int columns) {
+        char[][] cells = new char[rows][columns];
+        for (char[] row : cells)
+            Arrays.fill(row, '.');
+        for (long unit : state.foodUnits())
+            cells[(int) (unit / columns)][(int) (unit % columns)] = '*';
+
+        int[][] creatures = new int[rows][columns];
+        for (int i = 0; i < state.size(); i++)
+            creatures[state.rows()[i]][state.columns()[i]]++;
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int count = creatures[row][column];
+                if (count > 0)
+                    cells[row][column] = (count > 9) ? '+' : (char) ('0' + count);
+            }
+            System.out.println(new String(cells[row]));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Profiling;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  A histogram of latencies in nanoseconds with a fixed relative precision,
+ *  in the style of HdrHistogram.
+ *  <p>Values below {@code 2 * SUB_BUCKETS} are counted exactly. Larger values are
+ *     counted in buckets of a power of two, each split into {@code SUB_BUCKETS}
+ *     linear sub-buckets, so a reported value is within 1/{@code SUB_BUCKETS}
+ *     (about 1.6%) of a recorded one. Any non-negative long can be recorded
+ *     into {@code COUNTS} counters, and recording doesn't allocate.</p>
+ *  <p>Values can be recorded by multiple threads.</p>
+ */
+public class LatencyHistogram {
+    // a number of linear sub-buckets of a power-of-two bucket;
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // indexes [0, 2 * SUB_BUCKETS) are exact values; each of the next
+    // 63 - SUB_BUCKET_BITS buckets adds SUB_BUCKETS indexes;
+    private static final int COUNTS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(COUNTS);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalSum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     *  Records a value; a negative value is recorded as zero.
+     */
+    public void record(long value) {
+        value = Math.max(value, 0);
+        counts.getAndIncrement(indexOf(value));
+        totalCount.increment();
+        totalSum.add(value);
+        if (value > max.get())
+            max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     *  @return an index of the counter of {@param value}.
+     */
+    static int indexOf(long value) {
+        // a number of low bits that don't fit into the precision;
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS + 1));
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     *  @return the highest value which is counted by the counter number {@param index}.
+     */
+    static long highestValueOf(int index) {
+        int shift = Math.max(0, (index >>> SUB_BUCKET_BITS) - 1);
+        long subBucket = index - ((long) shift << SUB_BUCKET_BITS);
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     *  @return a value which is not less than {@param percentile} percent of the recorded
+     *  values (within the precision of the histogram) or zero if there are no values.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount.sum();
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < COUNTS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(highestValueOf(i), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     *  Sets all the counters to zero. Values recorded at the same time may be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < COUNTS; i++)
+            counts.set(i, 0);
+        totalCount.reset();
+        totalSum.reset();
+        max.set(0);
+    }
+
+    /* Getters */
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long count = totalCount.sum();
+        return (count == 0) ? 0 : (double) totalSum.sum() / count;
+    }
+}
@@ -0,0 +1,34 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ *  A JFR event of a phase of a round. It is committed by {@code RoundProfiler}
+ *  when a recording enables the event "naturalselection.Phase".
+ */
+@Name("naturalselection.Phase")
+@Label("Round Phase")
+@Category({"Natural Selection", "Rounds"})
+@Description("A phase of a round of the simulation")
+@StackTrace(false)
+final class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Round")
+    int round;
+
+    @Label("Creature")
+    @Description("An id of the creature or -1 if the phase isn't performed by a creature")
+    int creature;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+}
@@ -0,0 +1,217 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Profiling;
+
+import jdk.jfr.FlightRecorder;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  Instrumentation of the phases of a round: a latency histogram per phase and
+ *  JFR events of the phases and of the straggler creatures.
+ *  <p>A phase is measured as:</p>
+ *  <pre>
+ *      long start = RoundProfiler.start();
+ *      ... the phase ...
+ *      RoundProfiler.record(Phase.FOOD_RESET, start, round, -1);
+ *  </pre>
+ *  <p>Both parts can be switched on at runtime and cost a check of two flags when
+ *     they are off: the histograms by {@code setEnabled} (or the system property
+ *     "naturalselection.profile"), the JFR events by a recording which enables
+ *     "naturalselection.Phase" and "naturalselection.Straggler".</p>
+ */
+public final class RoundProfiler {
+    /**
+     *  A measured phase of a round.
+     */
+    public enum Phase {
+        // the steps of a creature, or of all the creatures of a worker or a round;
+        STEPPING,
+        // the eating of the creatures that stand on the same food;
+        EATING,
+        // the deaths and births of the creatures and the scheduling of the newborns;
+        BIRTHS,
+        // the clearing and filling of the food of the map;
+        FOOD_RESET,
+        // the collection of the round statistics;
+        STATISTICS,
+        // a time between the intended and the actual start of a creature's task;
+        SCHEDULING_LAG
+    }
+
+    /**
+     *  A creature is a straggler if it starts later than this number of milliseconds
+     *  after the start of its stepping window, or its steps end later than this
+     *  number of milliseconds after the end of the window.
+     */
+    public static final long STRAGGLER_THRESHOLD_MILLIS = 20;
+
+    // a value of {@code start} when the profiler is off;
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    private static final String PROFILE_PROPERTY = "naturalselection.profile";
+
+    private static volatile boolean enabled = Boolean.getBoolean(PROFILE_PROPERTY);
+
+    private static final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+    private static final LongAdder stragglers = new LongAdder();
+
+    // events which are never committed; they only tell whether their types are enabled
+    // by a recording. Each is created when JFR is initialized by a recording, because
+    // the first event registers all the JFR machinery, which takes hundreds of milliseconds;
+    private static volatile PhaseEvent phaseProbe;
+    private static volatile StragglerEvent stragglerProbe;
+
+    static {
+        for (int i = 0; i < histograms.length; i++)
+            histograms[i] = new LatencyHistogram();
+    }
+
+    private RoundProfiler() {}
+
+    /**
+     *  @return true if the phases have to be measured.
+     */
+    public static boolean isActive() {
+        return enabled || isPhaseEventEnabled();
+    }
+
+    /**
+     *  @return a start time of a phase to pass to {@code record}.
+     */
+    public static long start() {
+        return isActive() ? System.nanoTime() : NOT_STARTED;
+    }
+
+    /**
+     *  Records a phase which has started at {@param startNanos}.
+     *  @param round a round of the phase;
+     *  @param creature an id of the creature which has performed the phase or -1;
+     */
+    public static void record(Phase phase, long startNanos, int round, int creature) {
+        if (startNanos != NOT_STARTED)
+            recordElapsed(phase, System.nanoTime() - startNanos, round, creature);
+    }
+
+    /**
+     *  Records a phase which has lasted {@param elapsedNanos}.
+     */
+    public static void recordElapsed(Phase phase, long elapsedNanos, int round, int creature) {
+        if (enabled)
+            histograms[phase.ordinal()].record(elapsedNanos);
+        if (isPhaseEventEnabled()) {
+            PhaseEvent event = new PhaseEvent();
+            event.phase = phase.name();
+            event.round = round;
+            event.creature = creature;
+            event.elapsed = elapsedNanos;
+            event.commit();
+        }
+    }
+
+    /**
+     *  Checks whether a creature has started and finished its steps within its stepping window.
+     *  @param steps a number of steps performed by the creature;
+     *  @param startLagMillis a time between the start of the window and the start of the creature;
+     *  @param overshootMillis a time between the end of the window and the end of the steps;
+     */
+    public static void recordWindow(int round, int creature, int steps,
+                                    long startLagMillis, long overshootMillis)
+    {
+        if (startLagMillis <= STRAGGLER_THRESHOLD_MILLIS
+            && overshootMillis <= STRAGGLER_THRESHOLD_MILLIS)
+            return;
+        if (enabled)
+            stragglers.increment();
+        if (isStragglerEventEnabled()) {
+            StragglerEvent event = new StragglerEvent();
+            event.round = round;
+            event.creature = creature;
+            event.steps = steps;
+            event.startLag = startLagMillis;
+            event.overshoot = overshootMillis;
+            event.commit();
+        }
+    }
+
+    /**
+     *  @return true if a JFR recording enables the phase events.
+     */
+    private static boolean isPhaseEventEnabled() {
+        PhaseEvent probe = phaseProbe;
+        if (probe == null) {
+            if (!FlightRecorder.isInitialized())
+                return false;
+            // a benign race: several threads may create the probe;
+            phaseProbe = probe = new PhaseEvent();
+        }
+        return probe.isEnabled();
+    }
+
+    /**
+     *  @return true if a JFR recording enables the straggler events;
+     *  they can be enabled without the phase events.
+     */
+    private static boolean isStragglerEventEnabled() {
+        StragglerEvent probe = stragglerProbe;
+        if (probe == null) {
+            if (!FlightRecorder.isInitialized())
+                return false;
+            // a benign race: several threads may create the probe;
+            stragglerProbe = probe = new StragglerEvent();
+        }
+        return probe.isEnabled();
+    }
+
+    /**
+     *  Switches the histograms on or off.
+     */
+    public static void setEnabled(boolean enabled) {
+        RoundProfiler.enabled = enabled;
+    }
+
+    /**
+     *  Sets all the histograms to zero.
+     */
+    public static void reset() {
+        for (LatencyHistogram histogram : histograms)
+            histogram.reset();
+        stragglers.reset();
+    }
+
+    /**
+     *  @return a table of the percentiles of each phase in microseconds.
+     */
+    public static String report() {
+        var report = new StringBuilder(String.format(Locale.ROOT,
+                "%-15s %10s %10s %10s %10s %10s %10s %10s%n",
+                "phase (us)", "count", "mean", "p50", "p90", "p99", "p99.9", "max"));
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = histograms[phase.ordinal()];
+            if (histogram.getCount() == 0)
+                continue;
+            report.append(String.format(Locale.ROOT,
+                    "%-15s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    phase, histogram.getCount(), histogram.getMean() / 1e3,
+                    histogram.getValueAtPercentile(50) / 1e3,
+                    histogram.getValueAtPercentile(90) / 1e3,
+                    histogram.getValueAtPercentile(99) / 1e3,
+                    histogram.getValueAtPercentile(99.9) / 1e3,
+                    histogram.getMax() / 1e3));
+        }
+        report.append("Stragglers: ").append(stragglers.sum());
+        return report.toString();
+    }
+
+    /* Getters */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static LatencyHistogram getHistogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    public static long getStragglers() {
+        return stragglers.sum();
+    }
+}
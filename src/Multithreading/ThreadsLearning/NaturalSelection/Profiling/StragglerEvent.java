@@ -0,0 +1,39 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ *  A JFR event of a creature which has started its steps too late after the start
+ *  of the stepping window of a round, or finished them too late after its end.
+ */
+@Name("naturalselection.Straggler")
+@Label("Straggler Creature")
+@Category({"Natural Selection", "Rounds"})
+@Description("A creature which has started or finished its steps late")
+@StackTrace(false)
+final class StragglerEvent extends Event {
+    @Label("Round")
+    int round;
+
+    @Label("Creature")
+    int creature;
+
+    @Label("Steps")
+    int steps;
+
+    @Label("Start Lag")
+    @Description("A time between the start of the window and the start of the creature")
+    @Timespan(Timespan.MILLISECONDS)
+    long startLag;
+
+    @Label("Overshoot")
+    @Description("A time between the end of the window and the end of the creature's steps")
+    @Timespan(Timespan.MILLISECONDS)
+    long overshoot;
+}
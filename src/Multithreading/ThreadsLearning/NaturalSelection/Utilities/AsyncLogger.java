@@ -0,0 +1,347 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Utilities;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *  An asynchronous logger for the hot paths of the simulation.
+ *  <p>A logging thread only claims a slot of a bounded lock-free ring buffer and
+ *     writes the fields of an event to it: a level, a time, a round, an id of a
+ *     creature, an event name and a value. The slots are preallocated primitive
+ *     arrays, so logging doesn't allocate. A single background flusher thread
+ *     drains the buffer in batches, formats the events and writes them to the file.
+ *     An idle flusher is parked until a logging thread publishes an event.</p>
+ *  <p>If the buffer is full, the event is dropped and counted ({@code Policy.DROP}),
+ *     or the logging thread waits for a free slot ({@code Policy.BLOCK}).</p>
+ *  <p>A line of the file looks like:
+ *     {@code 2024-01-01T10:00:00.123Z DEBUG round=3 creature=17 died value=0};
+ *     a round or a creature is omitted if it is negative.</p>
+ *  <p>The global logger is configured by system properties:</p>
+ *  <ul>
+ *      <li>{@code naturalselection.log.file} - a path of the log file,
+ *          "natural-selection.log" in the user's home directory by default;</li>
+ *      <li>{@code naturalselection.log.level} - DEBUG, INFO, WARN or ERROR, INFO by default;</li>
+ *      <li>{@code naturalselection.log.policy} - DROP or BLOCK, DROP by default;</li>
+ *      <li>{@code naturalselection.log.capacity} - a number of slots of the buffer.</li>
+ *  </ul>
+ */
+public final class AsyncLogger implements Closeable {
+    /**
+     *  A level of an event.
+     */
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    /**
+     *  What a logging thread does if the buffer is full.
+     */
+    public enum Policy {
+        // the event is dropped and counted;
+        DROP,
+        // the thread waits for a free slot;
+        BLOCK
+    }
+
+    public static final int DEFAULT_CAPACITY = 1 << 13;
+
+    // names of the system properties of the global logger;
+    private static final String FILE_PROPERTY = "naturalselection.log.file";
+    private static final String LEVEL_PROPERTY = "naturalselection.log.level";
+    private static final String POLICY_PROPERTY = "naturalselection.log.policy";
+    private static final String CAPACITY_PROPERTY = "naturalselection.log.capacity";
+    private static final String DEFAULT_FILE_NAME = "natural-selection.log";
+
+    // a max number of events written by the flusher before it flushes the file;
+    private static final int BATCH = 1024;
+
+    // params of the logger
+    private final Policy policy;
+    private final int mask;
+    private volatile Level level;
+
+    // the slots of the buffer; the slot "i" can be written by the producer of the event
+    // number "n" (n % capacity == i) if sequences[i] == n and read if sequences[i] == n + 1;
+    private final AtomicLongArray sequences;
+    private final byte[] levels;
+    private final long[] times;
+    private final int[] rounds;
+    private final int[] creatures;
+    private final String[] events;
+    private final long[] values;
+
+    // a number of the next event claimed by a producer;
+    private final AtomicLong tail = new AtomicLong();
+    // a number of the next event read by the flusher; it is changed only by the flusher;
+    private volatile long head;
+
+    private final LongAdder dropped = new LongAdder();
+    private final Path file;
+    // the file is opened by the flusher when the first event is written;
+    private Writer writer;
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    // true while the flusher is parked or about to park; a producer unparks it;
+    private volatile boolean idle;
+
+    /**
+     *  @param file a path of the log file; events are appended to it, and
+     *              it is created when the first event is written;
+     *  @param level a min level of logged events;
+     *  @param policy what a logging thread does if the buffer is full;
+     *  @param capacity a number of slots of the buffer; it is rounded up to a power of two;
+     */
+    public AsyncLogger(Path file, Level level, Policy policy, int capacity) {
+        if (capacity < 2 || capacity > 1 << 30)
+            throw new IllegalArgumentException("Capacity has to be in [2, 2^30].");
+        int slots = Integer.highestOneBit(capacity - 1) << 1;
+
+        this.level = level;
+        this.policy = policy;
+        this.mask = slots - 1;
+        this.sequences = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++)
+            sequences.setPlain(i, i);
+        this.levels = new byte[slots];
+        this.times = new long[slots];
+        this.rounds = new int[slots];
+        this.creatures = new int[slots];
+        this.events = new String[slots];
+        this.values = new long[slots];
+
+        this.file = file;
+
+        this.flusher = new Thread(this::flushLoop, "async-logger-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     *  @return the global logger configured by the system properties. It is created
+     *  on the first call and closed (with all its events written) when the JVM exits.
+     */
+    public static AsyncLogger global() {
+        return GlobalHolder.INSTANCE;
+    }
+
+    private static final class GlobalHolder {
+        private static final AsyncLogger INSTANCE = createGlobal();
+
+        private static AsyncLogger createGlobal() {
+            Path file = Path.of(System.getProperty(FILE_PROPERTY,
+                    Path.of(System.getProperty("user.home"), DEFAULT_FILE_NAME).toString()));
+            Level level = Level.valueOf(System.getProperty(LEVEL_PROPERTY, Level.INFO.name()));
+            Policy policy = Policy.valueOf(System.getProperty(POLICY_PROPERTY, Policy.DROP.name()));
+            int capacity = Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY);
+            AsyncLogger logger = new AsyncLogger(file, level, policy, capacity);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    logger.close();
+                } catch (IOException ignored) {
+                    // nothing can be reported when the JVM exits;
+                }
+            }, "async-logger-shutdown"));
+            return logger;
+        }
+    }
+
+    /**
+     *  @return true if the events of {@param eventLevel} are logged. It should be
+     *  checked before computing the fields of an event on a hot path.
+     */
+    public boolean isEnabled(Level eventLevel) {
+        return eventLevel.compareTo(level) >= 0 && !closed;
+    }
+
+    /**
+     *  Logs an event.
+     *  @param round a round of the event or -1;
+     *  @param creature an id of a creature of the event or -1;
+     *  @param event a name of the event; it should be a constant, so logging doesn't allocate;
+     *  @param value a value of the event;
+     *  @return false if the event wasn't logged because it is below the level,
+     *  the buffer is full (with {@code Policy.DROP}) or the logger is closed;
+     */
+    public boolean log(Level eventLevel, int round, int creature, String event, long value) {
+        if (!isEnabled(eventLevel))
+            return false;
+
+        long position;
+        while (true) {
+            position = tail.get();
+            long difference = sequences.getAcquire((int) position & mask) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1))
+                    break;
+            } else if (difference < 0) {
+                // the buffer is full;
+                if (policy == Policy.DROP || closed) {
+                    dropped.increment();
+                    return false;
+                }
+                Thread.yield();
+            }
+        }
+
+        int slot = (int) position & mask;
+        levels[slot] = (byte) eventLevel.ordinal();
+        times[slot] = System.currentTimeMillis();
+        rounds[slot] = round;
+        creatures[slot] = creature;
+        events[slot] = event;
+        values[slot] = value;
+        // publish the fields to the flusher; the write is volatile, so either
+        // the flusher sees the event before it parks or the producer sees it idle;
+        sequences.set(slot, position + 1);
+        if (idle)
+            LockSupport.unpark(flusher);
+        return true;
+    }
+
+    /**
+     *  The loop of the flusher thread: writes the events in batches until the logger
+     *  is closed and all the published events are written.
+     */
+    private void flushLoop() {
+        var line = new StringBuilder(128);
+        var timestamp = new Timestamp();
+        Level[] levelValues = Level.values();
+        try {
+            while (true) {
+                int written = 0;
+                long position = head;
+                if (writer == null && sequences.getAcquire((int) position & mask) == position + 1)
+                    writer = openFile();
+                while (written < BATCH
+                       && sequences.getAcquire((int) position & mask) == position + 1) {
+                    int slot = (int) position & mask;
+                    format(line, timestamp, levelValues[levels[slot]], times[slot], rounds[slot],
+                           creatures[slot], events[slot], values[slot]);
+                    events[slot] = null;
+                    // give the slot back to the producers;
+                    sequences.setRelease(slot, position + mask + 1);
+                    position++;
+                    written++;
+                    writer.append(line);
+                }
+                head = position;
+
+                if (written > 0) {
+                    writer.flush();
+                } else if (closed && tail.get() == position) {
+                    return;
+                } else {
+                    idle = true;
+                    if (sequences.get((int) position & mask) != position + 1 && !closed)
+                        LockSupport.park(this);
+                    idle = false;
+                }
+            }
+        } catch (IOException e) {
+            // the file can't be written anymore, so the events are dropped;
+            closed = true;
+            e.printStackTrace();
+        }
+    }
+
+    private Writer openFile() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+        return new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE));
+    }
+
+    private static void format(StringBuilder line, Timestamp timestamp, Level eventLevel, long time,
+                               int round, int creature, String event, long value)
+    {
+        line.setLength(0);
+        timestamp.append(line, time);
+        line.append(' ').append(eventLevel);
+        if (round >= 0)
+            line.append(" round=").append(round);
+        if (creature >= 0)
+            line.append(" creature=").append(creature);
+        line.append(' ').append(event).append(" value=").append(value).append('\n');
+    }
+
+    /**
+     *  Formats the times of events as ISO-8601 instants with milliseconds. The events
+     *  of the same second share the formatted prefix, so the flusher doesn't format
+     *  a date per event.
+     */
+    private static final class Timestamp {
+        private long second = Long.MIN_VALUE;
+        // the formatted second without the "Z" suffix, for ex. "2024-01-01T10:00:00";
+        private String prefix;
+
+        void append(StringBuilder line, long millis) {
+            long currentSecond = Math.floorDiv(millis, 1000);
+            if (currentSecond != second) {
+                second = currentSecond;
+                String formatted = Instant.ofEpochSecond(currentSecond).toString();
+                prefix = formatted.substring(0, formatted.length() - 1);
+            }
+            int milli = Math.floorMod(millis, 1000);
+            line.append(prefix).append('.')
+                .append((char) ('0' + milli / 100))
+                .append((char) ('0' + milli / 10 % 10))
+                .append((char) ('0' + milli % 10))
+                .append('Z');
+        }
+    }
+
+    /**
+     *  Stops accepting events, waits until the flusher writes all
+     *  the published events and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed && !flusher.isAlive())
+            return;
+        closed = true;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer != null)
+            writer.close();
+    }
+
+    /**
+     *  Sets a min level of logged events.
+     */
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    /* Getters */
+    public Level getLevel() {
+        return level;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     *  @return a number of events dropped because the buffer was full.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+}
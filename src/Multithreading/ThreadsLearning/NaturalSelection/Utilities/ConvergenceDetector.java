@@ -0,0 +1,138 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Utilities;
+
+/**
+ *  This class detects when the population of a simulation has settled.
+ *  <p>The population of the last {@code window} rounds is kept in a ring buffer.
+ *     The population is in equilibrium when the window is full, its coefficient
+ *     of variation (standard deviation / mean) is not greater than {@code tolerance}
+ *     and it has no trend: a change of the least-squares line over the window is
+ *     not greater than {@code tolerance} of the mean. Extinction is detected as
+ *     soon as no creature is alive.</p>
+ *  <p>Once a state is detected it doesn't change anymore.</p>
+ */
+public class ConvergenceDetector {
+    /**
+     *  A state of the population.
+     */
+    public enum State {
+        // the population is still changing;
+        RUNNING,
+        // the population fluctuates around a stable mean;
+        EQUILIBRIUM,
+        // all the creatures have died;
+        EXTINCTION
+    }
+
+    public static final int DEFAULT_WINDOW = 10;
+    public static final double DEFAULT_TOLERANCE = 0.15;
+
+    // params of detection
+    private final int window;
+    private final double tolerance;
+
+    // the population of the last rounds; the round "r" is stored at index r % window;
+    private final int[] alive;
+    private int rounds;
+
+    private State state = State.RUNNING;
+    private int detectedRound;
+    private double equilibriumMean;
+
+    public ConvergenceDetector() {
+        this(DEFAULT_WINDOW, DEFAULT_TOLERANCE);
+    }
+
+    public ConvergenceDetector(int window, double tolerance) {
+        if (window < 2 || tolerance <= 0)
+            throw new IllegalArgumentException("Window has to contain at least two rounds " +
+                    "and tolerance has to be positive.");
+        this.window = window;
+        this.tolerance = tolerance;
+        this.alive = new int[window];
+    }
+
+    /**
+     *  Adds the population of the next round.
+     *  @return the state of the population after this round;
+     */
+    public State addRound(int aliveAtRound) {
+        if (state != State.RUNNING)
+            return state;
+
+        alive[rounds % window] = aliveAtRound;
+        rounds++;
+
+        if (aliveAtRound == 0) {
+            detect(State.EXTINCTION, 0);
+        } else if (rounds >= window) {
+            // the mean and the slope of the population over the window; x = 0 .. window - 1;
+            double meanX = (window - 1) / 2.0;
+            double sum = 0;
+            for (int i = 0; i < window; i++)
+                sum += valueAt(i);
+            double mean = sum / window;
+
+            double squares = 0, covariance = 0, varianceX = 0;
+            for (int i = 0; i < window; i++) {
+                double deviation = valueAt(i) - mean;
+                squares += deviation * deviation;
+                covariance += (i - meanX) * deviation;
+                varianceX += (i - meanX) * (i - meanX);
+            }
+            double standardDeviation = Math.sqrt(squares / (window - 1));
+            double drift = Math.abs(covariance / varianceX) * (window - 1);
+
+            if (standardDeviation <= tolerance * mean && drift <= tolerance * mean)
+                detect(State.EQUILIBRIUM, mean);
+        }
+        return state;
+    }
+
+    /**
+     *  @return the population of the round number {@param i} of the window,
+     *  starting from the oldest one.
+     */
+    private int valueAt(int i) {
+        return alive[(rounds - window + i) % window];
+    }
+
+    private void detect(State detectedState, double mean) {
+        state = detectedState;
+        detectedRound = rounds;
+        equilibriumMean = mean;
+    }
+
+    /* Getters */
+    public State getState() {
+        return state;
+    }
+
+    public boolean isConverged() {
+        return state != State.RUNNING;
+    }
+
+    /**
+     *  @return a number of the round (starting from one) when
+     *  the state was detected, or zero if it is still running.
+     */
+    public int getDetectedRound() {
+        return detectedRound;
+    }
+
+    /**
+     *  @return the mean population of the window when the equilibrium was detected.
+     */
+    public double getEquilibriumMean() {
+        return equilibriumMean;
+    }
+
+    @Override
+    public String toString() {
+        return switch (state) {
+            case RUNNING -> "No convergence detected";
+            case EQUILIBRIUM -> String.format("Equilibrium at round %d (mean population %.1f)",
+                    detectedRound, equilibriumMean);
+            case EXTINCTION -> "Extinction at round " + detectedRound;
+        };
+    }
+}
@@ -0,0 +1,189 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Utilities;
+
+import java.util.Arrays;
+
+/**
+ *  A concurrent map from positive int ids of creatures to values.
+ *  <p>The table is split into {@code STRIPES} stripes, each of them is an
+ *     open-addressing table with linear probing guarded by its own lock. An id
+ *     is stored as a primitive int, so the keys are neither boxed nor hashed
+ *     through {@code hashCode}, and a put or a remove doesn't allocate unless
+ *     the stripe grows. Removal shifts the following entries back, so there
+ *     are no tombstones.</p>
+ *  @param <V> a type of values;
+ */
+public class CreatureRegistry<V> {
+    private static final int STRIPES = 16;
+    private static final int STRIPE_SHIFT = 28;
+    private static final int INITIAL_STRIPE_CAPACITY = 16;
+
+    private final Stripe<V>[] stripes;
+
+    @SuppressWarnings("unchecked")
+    public CreatureRegistry() {
+        stripes = (Stripe<V>[]) new Stripe<?>[STRIPES];
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new Stripe<>();
+    }
+
+    /**
+     *  @return a mixed hash of {@param id}; the high bits choose a stripe
+     *  and the low bits choose a slot.
+     */
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Stripe<V> stripeOf(int hash) {
+        return stripes[hash >>> STRIPE_SHIFT];
+    }
+
+    /**
+     *  Associates {@param value} with {@param id}.
+     *  @return the previous value of the id or null;
+     */
+    public V put(int id, V value) {
+        checkId(id);
+        if (value == null)
+            throw new NullPointerException("Value can't be null.");
+        int hash = hash(id);
+        Stripe<V> stripe = stripeOf(hash);
+        synchronized (stripe) {
+            return stripe.put(id, hash, value);
+        }
+    }
+
+    /**
+     *  @return a value of {@param id} or null if there is no such id.
+     */
+    public V get(int id) {
+        checkId(id);
+        int hash = hash(id);
+        Stripe<V> stripe = stripeOf(hash);
+        synchronized (stripe) {
+            int slot = stripe.find(id, hash);
+            return (slot < 0) ? null : stripe.values[slot];
+        }
+    }
+
+    /**
+     *  Removes {@param id} from the registry.
+     *  @return the removed value or null if there was no such id;
+     */
+    public V remove(int id) {
+        checkId(id);
+        int hash = hash(id);
+        Stripe<V> stripe = stripeOf(hash);
+        synchronized (stripe) {
+            return stripe.remove(id, hash);
+        }
+    }
+
+    /**
+     *  @return a number of ids in the registry.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe<V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    private static void checkId(int id) {
+        if (id <= 0)
+            throw new IllegalArgumentException("Id has to be positive: " + id);
+    }
+
+    /**
+     *  An open-addressing table; zero is an empty key.
+     */
+    private static final class Stripe<V> {
+        private int[] keys = new int[INITIAL_STRIPE_CAPACITY];
+        private V[] values = newValues(INITIAL_STRIPE_CAPACITY);
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        private static <V> V[] newValues(int capacity) {
+            return (V[]) new Object[capacity];
+        }
+
+        /**
+         *  @return a slot of {@param id} or -1 if there is no such id.
+         */
+        int find(int id, int hash) {
+            int mask = keys.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                int key = keys[slot];
+                if (key == id)
+                    return slot;
+                if (key == 0)
+                    return -1;
+            }
+        }
+
+        V put(int id, int hash, V value) {
+            // the load factor is kept under 1/2;
+            if (2 * (size + 1) > keys.length)
+                resize(keys.length * 2);
+            int mask = keys.length - 1;
+            int slot = hash & mask;
+            while (keys[slot] != 0 && keys[slot] != id)
+                slot = (slot + 1) & mask;
+
+            V previous = values[slot];
+            if (keys[slot] == 0) {
+                keys[slot] = id;
+                size++;
+            }
+            values[slot] = value;
+            return previous;
+        }
+
+        V remove(int id, int hash) {
+            int slot = find(id, hash);
+            if (slot < 0)
+                return null;
+            V removed = values[slot];
+
+            // shift back the entries whose probe sequences pass the free slot;
+            int mask = keys.length - 1;
+            int free = slot;
+            for (int next = (free + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+                int home = hash(keys[next]) & mask;
+                // the entry at "next" can move to "free" if its home slot
+                // isn't in the cyclic range (free, next];
+                if (((next - home) & mask) >= ((next - free) & mask)) {
+                    keys[free] = keys[next];
+                    values[free] = values[next];
+                    free = next;
+                }
+            }
+            keys[free] = 0;
+            values[free] = null;
+            size--;
+            return removed;
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            V[] oldValues = values;
+            keys = new int[capacity];
+            values = newValues(capacity);
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == 0)
+                    continue;
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != 0)
+                    slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+            Arrays.fill(oldValues, null);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Utilities;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  A thread-safe allocator of unique positive int ids.
+ *  <p>Each thread takes a block of {@code blockSize} consecutive ids from a shared
+ *     counter and then allocates ids from its block without any synchronization.
+ *     So the ids are unique, but they aren't dense and aren't ordered by the time
+ *     of allocation across threads.</p>
+ *  <p>Virtual threads take their ids one by one from the shared counter: a virtual
+ *     thread usually lives for one creature, so a block would be lost with it and
+ *     the ids would run out after {@code 2^31 / blockSize} threads.</p>
+ */
+public class IdAllocator {
+    public static final int DEFAULT_BLOCK_SIZE = 64;
+
+    // the first id of the next free block;
+    private final AtomicInteger nextBlock;
+    private final int blockSize;
+
+    // the block of each thread: {the next id, the end of the block (exclusive)};
+    private final ThreadLocal<int[]> blocks = ThreadLocal.withInitial(() -> new int[2]);
+
+    public IdAllocator() {
+        this(1, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     *  @param firstId the least allocated id;
+     *  @param blockSize a number of ids taken by a thread at once;
+     */
+    public IdAllocator(int firstId, int blockSize) {
+        if (firstId < 1 || blockSize < 1)
+            throw new IllegalArgumentException("First id and block size have to be positive.");
+        this.nextBlock = new AtomicInteger(firstId);
+        this.blockSize = blockSize;
+    }
+
+    /**
+     *  @return a new id which has never been returned by this allocator;
+     *  @throws IllegalStateException if all the int ids are allocated;
+     */
+    public int nextId() {
+        if (Thread.currentThread().isVirtual())
+            return takeIds(1);
+        int[] block = blocks.get();
+        if (block[0] == block[1]) {
+            block[0] = takeIds(blockSize);
+            block[1] = block[0] + blockSize;
+        }
+        return block[0]++;
+    }
+
+    /**
+     *  @return the first of {@param count} consecutive ids taken from the shared counter;
+     *  @throws IllegalStateException if all the int ids are allocated;
+     */
+    private int takeIds(int count) {
+        int start = nextBlock.getAndAdd(count);
+        if (start <= 0 || start > Integer.MAX_VALUE - count) {
+            nextBlock.set(Integer.MIN_VALUE);
+            throw new IllegalStateException("All the ids are allocated.");
+        }
+        return start;
+    }
+}
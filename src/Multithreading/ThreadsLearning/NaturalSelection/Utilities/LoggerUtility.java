@@ -1,6 +1,15 @@
 package Multithreading.ThreadsLearning.NaturalSelection.Utilities;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
 
 /**
  *  A logging class.
@@ -12,6 +21,12 @@ public class LoggerUtility {
      */
     private final Logger logger;
 
+    // a configuration of the file logger; it is a resource next to this class;
+    private static final String CONFIGURATION = "logging.properties";
+
+    // it is true when the configuration has been read;
+    private static boolean configured;
+
     /**
      *  There are two different types of loggers:
      *      1) Logger that writes logs in console;
@@ -27,14 +42,70 @@ public class LoggerUtility {
     }
 
     public LoggerUtility(String loggerName, LoggerType loggerType) {
-        if (loggerType == LoggerType.FILE_LOGGER)  {
-            System.setProperty("java.util.logging.config.file",
-                                "D:/IT/Java/src/Multithreading/ThreadsLearning/" +
-                                "NaturalSelection/Utilities/logging.properties");
-        }
+        if (loggerType == LoggerType.FILE_LOGGER)
+            configure();
         this.logger = Logger.getLogger(loggerName);
     }
 
+    /**
+     *  Reads {@code CONFIGURATION} from the classpath, unless a configuration file
+     *  is given by the "java.util.logging.config.file" system property. The file
+     *  handler of the configuration is {@code AsyncHandler}, so logging doesn't
+     *  block on the file.
+     */
+    private static synchronized void configure() {
+        if (configured || System.getProperty("java.util.logging.config.file") != null)
+            return;
+        try (InputStream configuration = LoggerUtility.class.getResourceAsStream(CONFIGURATION)) {
+            if (configuration != null)
+                LogManager.getLogManager().readConfiguration(configuration);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        configured = true;
+    }
+
+    /**
+     *  A handler of {@code java.util.logging} which passes the records to
+     *  the global {@code AsyncLogger}, so the file is written by its flusher thread.
+     *  The level of the handler is set by the ".level" property of the configuration.
+     *  <p>The messages of {@code java.util.logging} aren't constants: a record is formatted
+     *     with its parameters into the event "logger: message" with a value 0, so unlike
+     *     the hot paths that log to {@code AsyncLogger} directly, this bridge allocates.</p>
+     */
+    public static final class AsyncHandler extends Handler {
+        private final AsyncLogger asyncLogger = AsyncLogger.global();
+
+        public AsyncHandler() {
+            String level = LogManager.getLogManager().getProperty(getClass().getName() + ".level");
+            if (level != null)
+                setLevel(Level.parse(level.trim()));
+            setFormatter(new SimpleFormatter());
+        }
+
+        @Override
+        public void publish(LogRecord record) {
+            if (!isLoggable(record))
+                return;
+            int value = record.getLevel().intValue();
+            AsyncLogger.Level level = (value >= Level.SEVERE.intValue()) ? AsyncLogger.Level.ERROR
+                    : (value >= Level.WARNING.intValue()) ? AsyncLogger.Level.WARN
+                    : (value >= Level.CONFIG.intValue()) ? AsyncLogger.Level.INFO
+                    : AsyncLogger.Level.DEBUG;
+            if (!asyncLogger.isEnabled(level))
+                return;
+            Formatter formatter = getFormatter();
+            String message = (formatter != null) ? formatter.formatMessage(record) : record.getMessage();
+            asyncLogger.log(level, -1, -1, record.getLoggerName() + ": " + message, 0);
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    }
+
     /* Getter */
     public Logger logger() {
         return this.logger;
@@ -0,0 +1,57 @@
+package Multithreading.ThreadsLearning.NaturalSelection.Utilities;
+
+/**
+ *  Helper methods of the SplitMix64 random generator. The state of the generator
+ *  is a single {@code long}, so a kernel can keep it in a local variable and
+ *  produce random values without allocating any {@code Random} objects.
+ *  <pre>
+ *      long state = seed;
+ *      state += SplitMix.GAMMA;
+ *      long random = SplitMix.mix64(state);
+ *  </pre>
+ *  <p>The n-th value of a stream can be computed directly as
+ *     {@code mix64(seed + n * GAMMA)}, so the generator is also used as a
+ *     counter-based one: the random values of a creature in a step are derived
+ *     from a master seed, a round, a step and an id of the creature. Such values
+ *     don't depend on the threads which compute them.</p>
+ */
+public final class SplitMix {
+    /**
+     *  The increment of the state of the generator (the golden ratio).
+     */
+    public static final long GAMMA = 0x9e3779b97f4a7c15L;
+
+    private SplitMix() {}
+
+    /**
+     *  @return a well-mixed 64 bit value for the state {@param z}.
+     */
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     *  @return a seed of a sub-stream {@param key} of a stream with seed {@param seed}.
+     *  For example: {@code hash(hash(masterSeed, round), step)}.
+     */
+    public static long hash(long seed, long key) {
+        return mix64(mix64(seed) + key * GAMMA);
+    }
+
+    /**
+     *  @return the {@param counter}-th random value of a stream with seed {@param seed}.
+     */
+    public static long random(long seed, long counter) {
+        return mix64(seed + counter * GAMMA);
+    }
+
+    /**
+     *  @return a value in a range [0, bound) made from 32 random bits;
+     *  it uses a multiplication instead of a division.
+     */
+    public static int bounded(int random32, int bound) {
+        return (int) (((random32 & 0xFFFFFFFFL) * bound) >>> 32);
+    }
+}
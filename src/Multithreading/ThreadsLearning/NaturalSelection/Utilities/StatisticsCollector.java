@@ -1,46 +1,224 @@
 package Multithreading.ThreadsLearning.NaturalSelection.Utilities;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
-import java.util.ArrayList;
 
 /**
  *  This class is used to collect statistics about creatures;
+ *  <p>During a round the values are gathered by striped counters ({@code LongAdder}),
+ *     so creatures of different threads don't contend for one atomic variable.
+ *     The executors which run creatures by ranges accumulate the values locally
+ *     and add them once per range. At the end of a round the counters are moved
+ *     to primitive columns, one element per round.</p>
+ *  <p>Population density is counted by regions: the map is split into
+ *     {@code REGION_GRID} x {@code REGION_GRID} equal parts.</p>
  */
 public class StatisticsCollector {
     /**
-     *  This list contains a number of eaten food at each day.
+     *  A number of regions along each side of the map.
+     */
+    public static final int REGION_GRID = 4;
+
+    /**
+     *  A number of regions of the map.
+     */
+    public static final int REGIONS = REGION_GRID * REGION_GRID;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // a header of the binary form of the history;
+    private static final int HISTORY_MAGIC = 0x51534331; // "QSC1"
+
+    /**
+     *  These columns contain values of each day.
      *  An index is (a day number + 1). For ex. index 0 is a first day,
      *  index 1 is seconds day...
      */
-    private final ArrayList<Integer> statistics = new ArrayList<>();
+    private int[] alive = new int[DEFAULT_CAPACITY];
+    private int[] births = new int[DEFAULT_CAPACITY];
+    private int[] deaths = new int[DEFAULT_CAPACITY];
+    private long[] foodPlaced = new long[DEFAULT_CAPACITY];
+    private long[] foodEaten = new long[DEFAULT_CAPACITY];
+    private long[] contestedMisses = new long[DEFAULT_CAPACITY];
+    private long[] steps = new long[DEFAULT_CAPACITY];
+
+    // creatures in each region; the regions of day "d" are in a range [d * REGIONS, (d + 1) * REGIONS);
+    private int[] regions = new int[DEFAULT_CAPACITY * REGIONS];
+
+    // a number of collected days;
+    private volatile int roundsCollected;
+
+    // an optional detector of the equilibrium or extinction of the population;
+    private volatile ConvergenceDetector convergenceDetector;
 
     /**
-     *  Atomic integer field that will be modified by multiple threads.
-     *  This field reflects a number of creatures that are alive at this round.
+     *  Counters of the current round that are modified by multiple threads.
+     *  {@code numOfAlive} reflects a number of creatures that are alive at this round.
      */
-    private final AtomicInteger numOfAlive = new AtomicInteger(0);
+    private final LongAdder numOfAlive = new LongAdder();
+    private final LongAdder numOfBirths = new LongAdder();
+    private final LongAdder numOfDeaths = new LongAdder();
+    private final LongAdder numOfFoodPlaced = new LongAdder();
+    private final LongAdder numOfFoodEaten = new LongAdder();
+    private final LongAdder numOfContestedMisses = new LongAdder();
+    private final LongAdder numOfSteps = new LongAdder();
+    private final LongAdder[] numInRegions = new LongAdder[REGIONS];
+
+    public StatisticsCollector() {
+        for (int i = 0; i < REGIONS; i++)
+            numInRegions[i] = new LongAdder();
+    }
 
     /**
-     * This method adds a new day to {@code statistics} list and set a current
-     * value of {@code numOfAlive} to zero.
+     * This method adds a new day to the columns and sets
+     * the counters of the current round to zero.
+     * Must be called by one thread at a time.
      */
-    public void performStatsCollection() {
-        statistics.add(numOfAlive.getAndSet(0));
+    public synchronized void performStatsCollection() {
+        int day = roundsCollected;
+        ensureCapacity(day + 1);
+
+        alive[day] = (int) numOfAlive.sumThenReset();
+        births[day] = (int) numOfBirths.sumThenReset();
+        deaths[day] = (int) numOfDeaths.sumThenReset();
+        foodPlaced[day] = numOfFoodPlaced.sumThenReset();
+        foodEaten[day] = numOfFoodEaten.sumThenReset();
+        contestedMisses[day] = numOfContestedMisses.sumThenReset();
+        steps[day] = numOfSteps.sumThenReset();
+        for (int i = 0; i < REGIONS; i++)
+            regions[day * REGIONS + i] = (int) numInRegions[i].sumThenReset();
+
+        roundsCollected = day + 1;
+
+        if (convergenceDetector != null)
+            convergenceDetector.addRound(alive[day]);
+    }
+
+    /**
+     * Sets a detector which receives the population of each collected day.
+     * The executors stop the simulation when the detector has converged.
+     */
+    public void setConvergenceDetector(ConvergenceDetector convergenceDetector) {
+        this.convergenceDetector = convergenceDetector;
+    }
+
+    public ConvergenceDetector getConvergenceDetector() {
+        return convergenceDetector;
+    }
+
+    /**
+     * @return true if there is a detector and it has detected
+     * the equilibrium or extinction of the population.
+     */
+    public boolean isConverged() {
+        ConvergenceDetector detector = convergenceDetector;
+        return detector != null && detector.isConverged();
     }
 
     /**
      * This method increases a number of alive creatures at the current round.
      */
     public void increaseNumOfAlive() {
-        numOfAlive.incrementAndGet();
+        numOfAlive.increment();
+    }
+
+    /**
+     * This method increases a number of alive creatures at the current round
+     * by {@param count} at once.
+     */
+    public void increaseNumOfAlive(int count) {
+        numOfAlive.add(count);
+    }
+
+    /**
+     * This method adds the results of one creature at the end of a round.
+     * @param eaten a number of eaten food-units;
+     * @param steps a number of performed steps;
+     * @param contested a number of food-units which were taken by another creature;
+     * @param died true if the creature has died;
+     * @param born true if the creature has given a descendant;
+     * @param region a region of the map where the creature is;
+     */
+    public void addCreatureRound(int eaten, int steps, int contested,
+                                 boolean died, boolean born, int region)
+    {
+        if (eaten != 0)
+            numOfFoodEaten.add(eaten);
+        if (contested != 0)
+            numOfContestedMisses.add(contested);
+        numOfSteps.add(steps);
+        if (died)
+            numOfDeaths.increment();
+        if (born)
+            numOfBirths.increment();
+        numInRegions[region].increment();
+    }
+
+    /**
+     * This method adds the results of a range of creatures at once.
+     */
+    public void addRangeRound(long eaten, long steps, long contested, int died, int born) {
+        numOfFoodEaten.add(eaten);
+        numOfSteps.add(steps);
+        numOfContestedMisses.add(contested);
+        numOfDeaths.add(died);
+        numOfBirths.add(born);
+    }
+
+    /**
+     * This method adds {@param counts} of creatures of each region at once.
+     */
+    public void addRegionCounts(int[] counts) {
+        for (int i = 0; i < REGIONS; i++) {
+            if (counts[i] != 0)
+                numInRegions[i].add(counts[i]);
+        }
+    }
+
+    /**
+     * This method increases a number of food-units which
+     * were placed on the map for the current round.
+     */
+    public void addFoodPlaced(long count) {
+        numOfFoodPlaced.add(count);
+    }
+
+    /**
+     * @return a region of a map unit with coordinates {@param row} and {@param column}
+     * on a map of {@param rows} x {@param columns} units.
+     */
+    public static int regionOf(int row, int column, int rows, int columns) {
+        return (int) ((long) row * REGION_GRID / rows) * REGION_GRID
+             + (int) ((long) column * REGION_GRID / columns);
+    }
+
+    /**
+     * Grows the columns to hold at least {@param capacity} days.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= alive.length)
+            return;
+        int newCapacity = Math.max(capacity, alive.length + (alive.length >> 1));
+        alive = Arrays.copyOf(alive, newCapacity);
+        births = Arrays.copyOf(births, newCapacity);
+        deaths = Arrays.copyOf(deaths, newCapacity);
+        foodPlaced = Arrays.copyOf(foodPlaced, newCapacity);
+        foodEaten = Arrays.copyOf(foodEaten, newCapacity);
+        contestedMisses = Arrays.copyOf(contestedMisses, newCapacity);
+        steps = Arrays.copyOf(steps, newCapacity);
+        regions = Arrays.copyOf(regions, newCapacity * REGIONS);
     }
 
     /**
      * @return number of rounds collected by this {@code StatisticsCollector}.
      */
     public int getRoundsCollected() {
-        return statistics.size();
+        return roundsCollected;
     }
 
     /**
@@ -50,7 +228,7 @@ public class StatisticsCollector {
      * @param predicate the condition to check;
      */
     public synchronized void waitUntilRounds(Predicate<Integer> predicate) {
-        while (predicate.test(statistics.size())) {
+        while (predicate.test(roundsCollected)) {
             try {
                 this.wait();
             } catch (InterruptedException e) {
@@ -68,17 +246,119 @@ public class StatisticsCollector {
         this.notify();
     }
 
+    /* Getters of a day number {@param day}, starting from zero */
+    public synchronized int getAlive(int day) {
+        return alive[Objects.checkIndex(day, roundsCollected)];
+    }
+
+    public synchronized int getBirths(int day) {
+        return births[Objects.checkIndex(day, roundsCollected)];
+    }
+
+    public synchronized int getDeaths(int day) {
+        return deaths[Objects.checkIndex(day, roundsCollected)];
+    }
+
+    public synchronized long getFoodPlaced(int day) {
+        return foodPlaced[Objects.checkIndex(day, roundsCollected)];
+    }
+
+    public synchronized long getFoodEaten(int day) {
+        return foodEaten[Objects.checkIndex(day, roundsCollected)];
+    }
+
+    public synchronized long getContestedMisses(int day) {
+        return contestedMisses[Objects.checkIndex(day, roundsCollected)];
+    }
+
+    /**
+     * @return a mean number of steps performed by a creature which was alive at the day.
+     */
+    public synchronized double getMeanSteps(int day) {
+        int aliveAtDay = alive[Objects.checkIndex(day, roundsCollected)];
+        return (aliveAtDay == 0) ? 0 : (double) steps[day] / aliveAtDay;
+    }
+
+    /**
+     * @return a number of creatures in a region {@param region} (see {@code regionOf}).
+     */
+    public synchronized int getRegionCount(int day, int region) {
+        return regions[Objects.checkIndex(day, roundsCollected) * REGIONS
+                       + Objects.checkIndex(region, REGIONS)];
+    }
+
+    /**
+     * Writes all the collected days in a compact binary form:
+     * a header, a number of days and then the columns one after another.
+     * The counters of the current round aren't written.
+     */
+    public synchronized void writeHistory(DataOutput out) throws IOException {
+        int days = roundsCollected;
+        out.writeInt(HISTORY_MAGIC);
+        out.writeInt(REGIONS);
+        out.writeInt(days);
+        for (int day = 0; day < days; day++) out.writeInt(alive[day]);
+        for (int day = 0; day < days; day++) out.writeInt(births[day]);
+        for (int day = 0; day < days; day++) out.writeInt(deaths[day]);
+        for (int day = 0; day < days; day++) out.writeLong(foodPlaced[day]);
+        for (int day = 0; day < days; day++) out.writeLong(foodEaten[day]);
+        for (int day = 0; day < days; day++) out.writeLong(contestedMisses[day]);
+        for (int day = 0; day < days; day++) out.writeLong(steps[day]);
+        for (int i = 0; i < days * REGIONS; i++) out.writeInt(regions[i]);
+    }
+
+    /**
+     * Reads a history written by {@code writeHistory}.
+     * @return a new collector that contains the read days;
+     * @throws IOException if the data isn't a history of a collector;
+     */
+    public static StatisticsCollector readHistory(DataInput in) throws IOException {
+        if (in.readInt() != HISTORY_MAGIC || in.readInt() != REGIONS)
+            throw new IOException("Not a history of a statistics collector.");
+        int days = in.readInt();
+        if (days < 0)
+            throw new IOException("Wrong number of days: " + days);
+
+        var collector = new StatisticsCollector();
+        collector.ensureCapacity(days);
+        for (int day = 0; day < days; day++) collector.alive[day] = in.readInt();
+        for (int day = 0; day < days; day++) collector.births[day] = in.readInt();
+        for (int day = 0; day < days; day++) collector.deaths[day] = in.readInt();
+        for (int day = 0; day < days; day++) collector.foodPlaced[day] = in.readLong();
+        for (int day = 0; day < days; day++) collector.foodEaten[day] = in.readLong();
+        for (int day = 0; day < days; day++) collector.contestedMisses[day] = in.readLong();
+        for (int day = 0; day < days; day++) collector.steps[day] = in.readLong();
+        for (int i = 0; i < days * REGIONS; i++) collector.regions[i] = in.readInt();
+        collector.roundsCollected = days;
+        return collector;
+    }
+
+    /**
+     * @return a table of all the collected values; one line per day.
+     */
+    public synchronized String toMetricsString() {
+        var sb = new StringBuilder("day alive births deaths placed eaten contested steps regions\n");
+        for (int day = 0; day < roundsCollected; day++) {
+            sb.append(day + 1).append(' ').append(alive[day])
+              .append(' ').append(births[day]).append(' ').append(deaths[day])
+              .append(' ').append(foodPlaced[day]).append(' ').append(foodEaten[day])
+              .append(' ').append(contestedMisses[day])
+              .append(' ').append(String.format("%.1f", getMeanSteps(day)))
+              .append(' ').append(Arrays.toString(Arrays.copyOfRange(regions,
+                      day * REGIONS, (day + 1) * REGIONS)))
+              .append('\n');
+        }
+        return sb.toString();
+    }
+
     /**
      * Returns a string representation of the object.
      */
     @Override
-    public String toString() {
+    public synchronized String toString() {
         var sb = new StringBuilder();
-        int round = 1;
-        for (int value : statistics) {
-            if (round != statistics.size())
-                sb.append(round++).append(") день: ").append(value).append(" существ.\n");
-        }
+        for (int day = 0; day < roundsCollected - 1; day++)
+            sb.append(day + 1).append(") день: ").append(alive[day]).append(" существ.\n");
         return new String(sb);
     }
 }